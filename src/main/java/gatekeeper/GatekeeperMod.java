@@ -3,32 +3,53 @@ package gatekeeper;
 /**
  * GateKeeper mod entry point.
  * <p>
- * Registers the whitelist manager, server command, and connection listener
- * during init.
+ * Registers the whitelist manager, server command, connection listener,
+ * world warm-up listener and server-stop flush listener during init.
  */
 
 import gatekeeper.core.WhitelistCommand;
 import gatekeeper.core.WhitelistManager;
+import gatekeeper.core.events.ServerStopFlushListener;
 import gatekeeper.core.events.WhitelistConnectionListener;
+import gatekeeper.core.events.WorldWarmUpListener;
 import necesse.engine.GameEvents;
 import necesse.engine.commands.CommandsManager;
 import necesse.engine.modLoader.annotations.ModEntry;
 
+import java.io.File;
+
 @ModEntry
 public class GatekeeperMod {
 
     public static final String MOD_ID = "gatekeeper";
     public static final String MOD_NAME = "GateKeeper";
+    /** System property naming a folder whose whitelist.shared is shared with other servers. */
+    public static final String SHARED_DIR_PROPERTY = "gatekeeper.sharedDir";
+    /** System property; {@code false} turns off metrics (/whitelist stats and gatekeeper.prom). */
+    public static final String METRICS_PROPERTY = "gatekeeper.metrics";
 
     private static WhitelistManager whitelistManager;
 
     // Called first - register content and commands
-    /** Register command and listener; load per-world config on first use. */
+    /** Register command and listeners; per-world config loads in the background at server start. */
     public void init() {
         System.out.println(MOD_NAME + " is loading...");
 
-        // Initialize whitelist manager (per-world config will load on first use)
-        whitelistManager = new WhitelistManager();
+        // Initialize whitelist manager (per-world config is warmed up at server start, else loaded on first use)
+        // Metrics are on unless -Dgatekeeper.metrics=false
+        boolean metrics = !"false".equalsIgnoreCase(System.getProperty(METRICS_PROPERTY, "true").trim());
+        whitelistManager = new WhitelistManager(metrics);
+
+        // Servers on one host can share a whitelist: -Dgatekeeper.sharedDir=/path/to/folder
+        String sharedDir = System.getProperty(SHARED_DIR_PROPERTY);
+        if (sharedDir != null && !sharedDir.trim().isEmpty()) {
+            whitelistManager.setSharedDirectory(new File(sharedDir.trim()));
+            System.out.println(MOD_NAME + ": Sharing the whitelist through " + sharedDir.trim());
+        }
+
+        // Whitelist writes are write-behind: pending state is flushed when the server stops
+        // (below); the shutdown hook is a backstop for exits that skip the stop event
+        Runtime.getRuntime().addShutdownHook(new Thread(whitelistManager::flush, "GateKeeper-shutdown-flush"));
 
         // Register server command: /whitelist
         CommandsManager.registerServerCommand(new WhitelistCommand(whitelistManager));
@@ -37,6 +58,14 @@ public class GatekeeperMod {
         GameEvents.addListener(necesse.engine.events.ServerClientConnectedEvent.class,
                 new WhitelistConnectionListener(whitelistManager));
 
+        // Preload the world's whitelist off-thread before the first player connects
+        GameEvents.addListener(necesse.engine.events.ServerStartEvent.class,
+                new WorldWarmUpListener(whitelistManager));
+
+        // Land pending whitelist, name cache and log writes as the world unloads
+        GameEvents.addListener(necesse.engine.events.ServerStopEvent.class,
+                new ServerStopFlushListener(whitelistManager));
+
         System.out.println(MOD_NAME + " loaded successfully!");
     }
 
@@ -0,0 +1,198 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring-buffer appender for GateKeeper's text logs (denied_log.txt, admin_log.txt).
+ * <p>
+ * Producers enqueue {@code (file, line)} pairs into fixed arrays and return; one
+ * daemon thread drains everything queued, groups consecutive lines per file and
+ * writes each group with a single channel write. When the ring is full,
+ * {@link #offer} drops the line (counted in {@link #droppedLines()}) and
+ * {@link #put} waits for space. Files are rotated by size to
+ * {@code name.1 .. name.N}.
+ */
+class AsyncLogAppender {
+    private final File[] targets;
+    private final String[] lines;
+    private final File[] batchTargets;
+    private final String[] batchLines;
+    private int head;
+    private int count;
+    private long enqueued;
+    private long written;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final String threadName;
+    private final long maxBytes;
+    private final int retention;
+    private Thread drainer;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * @param threadName name of the drain thread (started on first append)
+     * @param capacity ring size in lines
+     * @param maxBytes rotate a file once it would grow past this size
+     * @param retention number of rotated files to keep per log
+     */
+    AsyncLogAppender(String threadName, int capacity, long maxBytes, int retention) {
+        this.threadName = threadName;
+        this.targets = new File[capacity];
+        this.lines = new String[capacity];
+        this.batchTargets = new File[capacity];
+        this.batchLines = new String[capacity];
+        this.maxBytes = maxBytes;
+        this.retention = retention;
+    }
+
+    /** Enqueue a line (newline appended on write). @return false if the ring was full and the line was dropped. */
+    boolean offer(File target, String line) {
+        lock.lock();
+        try {
+            if (count == lines.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            enqueue(target, line);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Enqueue a line, waiting for space if the ring is full. */
+    void put(File target, String line) {
+        lock.lock();
+        try {
+            while (count == lines.length) notFull.awaitUninterruptibly();
+            enqueue(target, line);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(File target, String line) {
+        int tail = (head + count) % lines.length;
+        targets[tail] = target;
+        lines[tail] = line;
+        count++;
+        enqueued++;
+        if (drainer == null) {
+            drainer = new Thread(this::drainLoop, threadName);
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+        notEmpty.signal();
+    }
+
+    /** Wait until every line enqueued before this call has been written. */
+    void flush() {
+        lock.lock();
+        try {
+            long target = enqueued;
+            while (written < target) drained.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return number of lines dropped by {@link #offer} because the ring was full. */
+    long droppedLines() { return dropped.get(); }
+
+    private void drainLoop() {
+        for (;;) {
+            int n;
+            lock.lock();
+            try {
+                while (count == 0) notEmpty.awaitUninterruptibly();
+                n = count;
+                for (int i = 0; i < n; i++) {
+                    int idx = (head + i) % lines.length;
+                    batchTargets[i] = targets[idx];
+                    batchLines[i] = lines[idx];
+                    targets[idx] = null;
+                    lines[idx] = null;
+                }
+                head = (head + n) % lines.length;
+                count = 0;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            writeBatch(n);
+            lock.lock();
+            try {
+                written += n;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Write batch entries [0, n), one channel write per run of lines for the same file. */
+    private void writeBatch(int n) {
+        int start = 0;
+        while (start < n) {
+            File target = batchTargets[start];
+            buffer.clear();
+            int end = start;
+            while (end < n && batchTargets[end].equals(target)) {
+                byte[] bytes = (batchLines[end] + "\n").getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < bytes.length) {
+                    ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes.length));
+                    buffer.flip();
+                    grown.put(buffer);
+                    buffer = grown;
+                }
+                buffer.put(bytes);
+                batchLines[end] = null;
+                batchTargets[end] = null;
+                end++;
+            }
+            buffer.flip();
+            try {
+                append(target, buffer);
+            } catch (IOException ignore) {
+                // Logs are best-effort; never let I/O errors stop the drain thread
+            }
+            start = end;
+        }
+    }
+
+    /** Append one run of lines to {@code target}, rotating first if due. Runs on the drain thread; tests override it to stall. */
+    void append(File target, ByteBuffer data) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        if (maxBytes > 0 && target.length() > 0 && target.length() + data.remaining() > maxBytes) rotate(target);
+        try (FileChannel ch = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (data.hasRemaining()) ch.write(data);
+        }
+    }
+
+    /** Shift name.(i) to name.(i+1), dropping the oldest, then move the live file to name.1. */
+    private void rotate(File target) {
+        File oldest = new File(target.getPath() + "." + retention);
+        if (oldest.exists()) oldest.delete();
+        for (int i = retention - 1; i >= 1; i--) {
+            File f = new File(target.getPath() + "." + i);
+            if (f.exists()) f.renameTo(new File(target.getPath() + "." + (i + 1)));
+        }
+        if (retention > 0) target.renameTo(new File(target.getPath() + ".1"));
+        else target.delete();
+    }
+}
@@ -0,0 +1,470 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact, queryable history of denied connection attempts for one world.
+ * <p>
+ * audit.dat holds fixed 24-byte records {@code [time:8][auth:8][nameRef:4][addrRef:4]}
+ * in non-decreasing time order, so a time range is found by binary search.
+ * Names and addresses are stored once per session in audit_strings.dat as
+ * {@code [len:2][utf8]}; a ref is the entry's byte offset (-1 for none).
+ * <p>
+ * The per-auth index (record numbers per SteamID) is checkpointed to audit.idx
+ * ({@code [magic:4][records:8][auths:4]}, per auth {@code [auth:8][n:4][record:4]*n},
+ * then {@code [crc32:4]}) as the history grows. The first query of a session
+ * loads the checkpoint and reads only the records appended after it; without a
+ * usable checkpoint it falls back to one sequential pass. The index only ever
+ * holds records that are on disk.
+ * <p>
+ * Appends only touch memory, under a lock of their own that queries and file
+ * I/O never hold, so recording a denial never waits on a query. {@link #sync()}
+ * writes them and runs on the background writer; queries sync first so they see
+ * every append. Queries and syncs synchronize on this store.
+ */
+final class AuditStore {
+    static final int RECORD_BYTES = 24;
+    static final String INDEX_FILE_NAME = "audit.idx";
+    private static final int NO_REF = -1;
+    private static final int INTERN_MAX = 16_384;
+    private static final int SCAN_CHUNK_RECORDS = 4_096;
+    private static final byte[] INDEX_MAGIC = {'G', 'K', 'A', '1'};
+    // A checkpoint is rewritten once the records since the last one reach this, or a quarter of it
+    private static final long INDEX_CHECKPOINT_MIN_RECORDS = 4_096;
+
+    private final File dataFile;
+    private final File stringsFile;
+    private final File indexFile;
+
+    // Guards everything up to the interning map; held only for O(1) work, never for I/O on a query
+    private final Object pendingLock = new Object();
+    private boolean opened;
+    private long recordCount;   // persisted + pending
+    private long stringsEnd;    // persisted + pending
+    private long lastTime;
+    private ByteBuffer pendingRecords = ByteBuffer.allocate(RECORD_BYTES * 64);
+    private ByteBuffer pendingStrings = ByteBuffer.allocate(1_024);
+    // Session-local interning; names repeat heavily during a reconnect storm
+    private final Map<String, Integer> interned = new HashMap<>();
+
+    // Guarded by this store
+    private long persistedRecords;
+    private long persistedStringsEnd;
+    private Map<Long, Postings> byAuth; // null until the first query
+    private long checkpointedRecords;   // records covered by audit.idx
+
+    /** Growable list of record numbers for one auth, ascending. */
+    private static final class Postings {
+        int[] ids;
+        int size;
+        Postings() { ids = new int[4]; }
+        Postings(int[] ids) { this.ids = ids; this.size = ids.length; }
+        void add(int id) {
+            if (size == ids.length) ids = java.util.Arrays.copyOf(ids, Math.max(4, size * 2));
+            ids[size++] = id;
+        }
+    }
+
+    AuditStore(File dir) {
+        this.dataFile = new File(dir, "audit.dat");
+        this.stringsFile = new File(dir, "audit_strings.dat");
+        this.indexFile = new File(dir, INDEX_FILE_NAME);
+    }
+
+    /** Queue a denied attempt. O(1), no I/O after the first call. */
+    void append(long timeMs, long auth, String name, String address) {
+        synchronized (pendingLock) {
+            open();
+            long t = Math.max(timeMs, lastTime); // keep the file sorted across clock steps
+            lastTime = t;
+            int nameRef = intern(name);
+            int addrRef = intern(address);
+            if (pendingRecords.remaining() < RECORD_BYTES) pendingRecords = grow(pendingRecords, RECORD_BYTES);
+            pendingRecords.putLong(t).putLong(auth).putInt(nameRef).putInt(addrRef);
+            recordCount++;
+        }
+    }
+
+    /**
+     * Write queued strings, then the records that reference them, then index
+     * those records. A batch that fails to write goes back in front of the queue
+     * and is written again, at the same offsets, by the next sync.
+     */
+    synchronized void sync() throws IOException {
+        ByteBuffer strings;
+        ByteBuffer records;
+        synchronized (pendingLock) {
+            if (!opened) return;
+            strings = pendingStrings;
+            records = pendingRecords;
+            if (strings.position() == 0 && records.position() == 0) return;
+            pendingStrings = ByteBuffer.allocate(1_024);
+            pendingRecords = ByteBuffer.allocate(RECORD_BYTES * 64);
+        }
+        strings.flip();
+        records.flip();
+        try {
+            writeAt(stringsFile, strings, persistedStringsEnd);
+        } catch (IOException e) {
+            requeue(strings, records);
+            throw e;
+        }
+        persistedStringsEnd += strings.limit();
+        try {
+            writeAt(dataFile, records, persistedRecords * RECORD_BYTES);
+        } catch (IOException e) {
+            requeue(null, records);
+            throw e;
+        }
+        int n = records.limit() / RECORD_BYTES;
+        if (byAuth != null) {
+            for (int i = 0; i < n && persistedRecords + i < Integer.MAX_VALUE; i++) {
+                byAuth.computeIfAbsent(records.getLong(i * RECORD_BYTES + 8), k -> new Postings()).add((int) (persistedRecords + i));
+            }
+        }
+        persistedRecords += n;
+        if (byAuth != null && persistedRecords - checkpointedRecords >= Math.max(INDEX_CHECKPOINT_MIN_RECORDS, checkpointedRecords / 4)) {
+            checkpointIndex();
+        }
+    }
+
+    /** Put a batch that failed to write back in front of what was queued since. */
+    private void requeue(ByteBuffer strings, ByteBuffer records) {
+        synchronized (pendingLock) {
+            if (strings != null) pendingStrings = prepend(strings, pendingStrings);
+            pendingRecords = prepend(records, pendingRecords);
+        }
+    }
+
+    /** @return total attempts recorded (including ones not yet synced). */
+    long size() {
+        synchronized (pendingLock) {
+            open();
+            return recordCount;
+        }
+    }
+
+    /** @return number of attempts by {@code auth} at or after {@code sinceMs}. */
+    synchronized int count(long auth, long sinceMs) throws IOException {
+        Postings p = postings(auth);
+        if (p == null) return 0;
+        try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            return p.size - firstAtOrAfter(ch, p, sinceMs);
+        }
+    }
+
+    /** @return up to {@code limit} most recent attempts by {@code auth} at or after {@code sinceMs}, oldest first. */
+    synchronized List<WhitelistManager.Attempt> history(long auth, long sinceMs, int limit) throws IOException {
+        Postings p = postings(auth);
+        if (p == null) return Collections.emptyList();
+        List<WhitelistManager.Attempt> out = new ArrayList<>();
+        try (FileChannel data = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+             FileChannel strings = openStrings()) {
+            int from = Math.max(firstAtOrAfter(data, p, sinceMs), p.size - limit);
+            ByteBuffer rec = ByteBuffer.allocate(RECORD_BYTES);
+            for (int i = from; i < p.size; i++) {
+                readRecord(data, p.ids[i], rec);
+                out.add(new WhitelistManager.Attempt(rec.getLong(0), rec.getLong(8),
+                        readString(strings, rec.getInt(16)), readString(strings, rec.getInt(20))));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return the {@code n} auths with the most attempts at or after {@code sinceMs}, most first.
+     * Without a since bound this reads only the index; with one it scans just that time range.
+     */
+    synchronized List<WhitelistManager.Offender> top(int n, long sinceMs) throws IOException {
+        ensureIndex();
+        if (persistedRecords == 0) return Collections.emptyList();
+        Map<Long, int[]> counts = new HashMap<>(); // auth -> {count, firstRecord, lastRecord}
+        try (FileChannel data = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+             FileChannel strings = openStrings()) {
+            if (sinceMs <= 0) {
+                for (Map.Entry<Long, Postings> e : byAuth.entrySet()) {
+                    Postings p = e.getValue();
+                    counts.put(e.getKey(), new int[]{p.size, p.ids[0], p.ids[p.size - 1]});
+                }
+            } else {
+                long first = firstRecordAtOrAfter(data, sinceMs);
+                ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * SCAN_CHUNK_RECORDS);
+                for (long r = first; r < persistedRecords; ) {
+                    chunk.clear();
+                    int want = (int) Math.min(SCAN_CHUNK_RECORDS, persistedRecords - r);
+                    chunk.limit(want * RECORD_BYTES);
+                    readFully(data, chunk, r * RECORD_BYTES);
+                    for (int i = 0; i < want; i++) {
+                        long auth = chunk.getLong(i * RECORD_BYTES + 8);
+                        int rec = (int) (r + i);
+                        int[] c = counts.computeIfAbsent(auth, k -> new int[]{0, rec, rec});
+                        c[0]++;
+                        c[2] = rec;
+                    }
+                    r += want;
+                }
+            }
+            List<Map.Entry<Long, int[]>> sorted = new ArrayList<>(counts.entrySet());
+            sorted.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+            List<WhitelistManager.Offender> out = new ArrayList<>();
+            ByteBuffer rec = ByteBuffer.allocate(RECORD_BYTES);
+            ByteBuffer time = ByteBuffer.allocate(8);
+            for (int i = 0; i < Math.min(n, sorted.size()); i++) {
+                Map.Entry<Long, int[]> e = sorted.get(i);
+                int[] c = e.getValue();
+                long firstMs = readTime(data, c[1], time);
+                readRecord(data, c[2], rec);
+                out.add(new WhitelistManager.Offender(e.getKey(), readString(strings, rec.getInt(16)),
+                        readString(strings, rec.getInt(20)), firstMs, rec.getLong(0), c[0]));
+            }
+            return out;
+        }
+    }
+
+    // --- Internals ----------------------------------------------------------
+
+    /** Caller holds pendingLock; only the first call does I/O. */
+    private void open() {
+        if (opened) return;
+        opened = true;
+        long len = dataFile.length();
+        long torn = len % RECORD_BYTES;
+        if (torn != 0) {
+            // Crash mid-append: drop the partial record
+            try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+                ch.truncate(len - torn);
+            } catch (IOException ignore) {}
+            len -= torn;
+        }
+        long records = len / RECORD_BYTES;
+        recordCount = records;
+        stringsEnd = stringsFile.length();
+        // Read by sync and queries only after they have seen opened under pendingLock
+        persistedRecords = records;
+        persistedStringsEnd = stringsEnd;
+        if (records > 0) {
+            try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer rec = ByteBuffer.allocate(RECORD_BYTES);
+                readRecord(ch, records - 1, rec);
+                lastTime = rec.getLong(0);
+            } catch (IOException ignore) {}
+        }
+    }
+
+    private int intern(String s) {
+        if (s == null || s.isEmpty()) return NO_REF;
+        Integer ref = interned.get(s);
+        if (ref != null) return ref;
+        if (stringsEnd > Integer.MAX_VALUE) return NO_REF;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(bytes.length, 0xFFFF);
+        if (pendingStrings.remaining() < 2 + len) pendingStrings = grow(pendingStrings, 2 + len);
+        pendingStrings.putShort((short) len).put(bytes, 0, len);
+        int newRef = (int) stringsEnd;
+        stringsEnd += 2 + len;
+        if (interned.size() >= INTERN_MAX) interned.clear();
+        interned.put(s, newRef);
+        return newRef;
+    }
+
+    private Postings postings(long auth) throws IOException {
+        ensureIndex();
+        return byAuth.get(auth);
+    }
+
+    /**
+     * Load the per-auth index from audit.idx and index the records appended
+     * after that checkpoint, or, without a usable checkpoint, with one
+     * sequential pass over audit.dat. Caller holds this store's lock.
+     */
+    private void ensureIndex() throws IOException {
+        synchronized (pendingLock) {
+            open();
+        }
+        sync();
+        if (byAuth != null) return;
+        Map<Long, Postings> index = new HashMap<>();
+        long from = readCheckpoint(index);
+        if (from < 0) {
+            index.clear();
+            from = 0;
+        }
+        checkpointedRecords = from;
+        if (persistedRecords > from) {
+            try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * SCAN_CHUNK_RECORDS);
+                for (long r = from; r < persistedRecords && r < Integer.MAX_VALUE; ) {
+                    chunk.clear();
+                    int want = (int) Math.min(SCAN_CHUNK_RECORDS, persistedRecords - r);
+                    chunk.limit(want * RECORD_BYTES);
+                    readFully(ch, chunk, r * RECORD_BYTES);
+                    for (int i = 0; i < want; i++) {
+                        index.computeIfAbsent(chunk.getLong(i * RECORD_BYTES + 8), k -> new Postings()).add((int) (r + i));
+                    }
+                    r += want;
+                }
+            }
+        }
+        byAuth = index;
+        if (persistedRecords - checkpointedRecords >= INDEX_CHECKPOINT_MIN_RECORDS) checkpointIndex();
+    }
+
+    /**
+     * Read audit.idx into {@code index}.
+     * @return the number of records it covers, or -1 if it is missing, corrupt or ahead of audit.dat
+     */
+    private long readCheckpoint(Map<Long, Postings> index) {
+        if (!indexFile.exists() || indexFile.length() > Integer.MAX_VALUE) return -1;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+            if (buf.remaining() < 20) return -1;
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), 0, buf.limit() - 4);
+            if ((int) crc.getValue() != buf.getInt(buf.limit() - 4)) return -1;
+            for (byte b : INDEX_MAGIC) if (buf.get() != b) return -1;
+            long covered = buf.getLong();
+            int auths = buf.getInt();
+            if (covered < 0 || covered > persistedRecords || auths < 0) return -1;
+            buf.limit(buf.limit() - 4);
+            for (int a = 0; a < auths; a++) {
+                if (buf.remaining() < 12) return -1;
+                long auth = buf.getLong();
+                int n = buf.getInt();
+                if (n <= 0 || n > buf.remaining() / 4) return -1;
+                int[] ids = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = buf.getInt();
+                    if (ids[i] < 0 || ids[i] >= covered) return -1;
+                }
+                index.put(auth, new Postings(ids));
+            }
+            return buf.hasRemaining() ? -1 : covered;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** Write the whole index to audit.idx, atomically. Caller holds this store's lock. */
+    private void checkpointIndex() {
+        long bytes = 4 + 8 + 4 + 4;
+        for (Postings p : byAuth.values()) bytes += 12 + 4L * p.size;
+        if (bytes > Integer.MAX_VALUE) return;
+        ByteBuffer buf = ByteBuffer.allocate((int) bytes);
+        buf.put(INDEX_MAGIC).putLong(persistedRecords).putInt(byAuth.size());
+        for (Map.Entry<Long, Postings> e : byAuth.entrySet()) {
+            Postings p = e.getValue();
+            buf.putLong(e.getKey()).putInt(p.size);
+            for (int i = 0; i < p.size; i++) buf.putInt(p.ids[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        try {
+            WriteBehind.writeAtomically(indexFile, buf.array());
+            checkpointedRecords = persistedRecords;
+        } catch (IOException ignore) {
+            // Best-effort: the next session indexes the records past the older checkpoint
+        }
+    }
+
+    /** @return first index into {@code p} whose record time is at or after {@code sinceMs}. */
+    private int firstAtOrAfter(FileChannel ch, Postings p, long sinceMs) throws IOException {
+        if (sinceMs <= 0) return 0;
+        ByteBuffer time = ByteBuffer.allocate(8);
+        int lo = 0, hi = p.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readTime(ch, p.ids[mid], time) < sinceMs) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** @return first record number whose time is at or after {@code sinceMs}. */
+    private long firstRecordAtOrAfter(FileChannel ch, long sinceMs) throws IOException {
+        ByteBuffer time = ByteBuffer.allocate(8);
+        long lo = 0, hi = persistedRecords;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (readTime(ch, mid, time) < sinceMs) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long readTime(FileChannel ch, long record, ByteBuffer time) throws IOException {
+        time.clear();
+        readFully(ch, time, record * RECORD_BYTES);
+        return time.getLong(0);
+    }
+
+    private static void readRecord(FileChannel ch, long record, ByteBuffer rec) throws IOException {
+        rec.clear();
+        readFully(ch, rec, record * RECORD_BYTES);
+    }
+
+    private FileChannel openStrings() throws IOException {
+        if (!stringsFile.exists()) return null;
+        return FileChannel.open(stringsFile.toPath(), StandardOpenOption.READ);
+    }
+
+    private static String readString(FileChannel ch, int ref) throws IOException {
+        if (ref == NO_REF || ch == null || ref + 2L > ch.size()) return null;
+        ByteBuffer len = ByteBuffer.allocate(2);
+        readFully(ch, len, ref);
+        int n = len.getShort(0) & 0xFFFF;
+        ByteBuffer bytes = ByteBuffer.allocate(n);
+        readFully(ch, bytes, ref + 2L);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        long pos = position;
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos);
+            if (n < 0) throw new IOException("unexpected end of audit file");
+            pos += n;
+        }
+    }
+
+    /**
+     * Write a flipped buffer at {@code position}, the file's persisted length;
+     * bytes left past it by an earlier failed write are overwritten.
+     */
+    private static void writeAt(File file, ByteBuffer data, long position) throws IOException {
+        if (!data.hasRemaining()) return;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        ByteBuffer view = data.duplicate();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long pos = position;
+            while (view.hasRemaining()) pos += ch.write(view, pos);
+        }
+    }
+
+    /** @return {@code first}'s contents (flipped) followed by {@code then}'s (being filled), ready to fill. */
+    private static ByteBuffer prepend(ByteBuffer first, ByteBuffer then) {
+        ByteBuffer joined = ByteBuffer.allocate(Math.max(then.capacity(), first.limit() + then.position() + RECORD_BYTES * 64));
+        joined.put(first.duplicate().rewind());
+        then.flip();
+        joined.put(then);
+        return joined;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, int need) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + need));
+        buf.flip();
+        grown.put(buf);
+        return grown;
+    }
+}
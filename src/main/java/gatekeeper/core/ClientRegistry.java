@@ -0,0 +1,169 @@
+package gatekeeper.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import necesse.engine.commands.PermissionLevel;
+import necesse.engine.network.server.Server;
+import necesse.engine.network.server.ServerClient;
+
+/**
+ * Connected clients indexed by slot, by SteamID, by normalized name and by admin permission.
+ * <p>
+ * Maintained incrementally from connect events, so admin fan-out and
+ * kick-on-remove only touch the clients involved instead of every slot.
+ * There is no disconnect or permission-change hook, so entries are checked
+ * when they are used (the slot must still hold the same client) and the
+ * whole index is rebuilt from the server's slots every
+ * {@link #RESCAN_INTERVAL_MS} to pick up promotions and missed connects.
+ * <p>
+ * Thread-safe.
+ */
+public final class ClientRegistry {
+    static final long RESCAN_INTERVAL_MS = 30_000L;
+
+    private Server server;
+    private ServerClient[] bySlot = new ServerClient[0];
+    private String[] nameBySlot = new String[0]; // normalized name as indexed
+    private final Map<Long, Integer> slotByAuth = new HashMap<>();
+    private final Map<String, Integer> slotByName = new HashMap<>();
+    private final BitSet adminSlots = new BitSet();
+    private long lastRescanMs; // 0 = never
+
+    /** Index a client that has been allowed to stay connected. */
+    public synchronized void onConnected(ServerClient c) {
+        if (c == null) return;
+        bind(c.getServer());
+        put(c);
+    }
+
+    /** Drop a client we disconnected ourselves. */
+    public synchronized void onDisconnected(ServerClient c) {
+        if (c == null || c.slot < 0 || c.slot >= bySlot.length || bySlot[c.slot] != c) return;
+        clear(c.slot);
+    }
+
+    /** @return connected clients with ADMIN or higher permission. */
+    public synchronized List<ServerClient> admins(Server server) {
+        refresh(server);
+        List<ServerClient> out = new ArrayList<>();
+        for (int slot = adminSlots.nextSetBit(0); slot >= 0; slot = adminSlots.nextSetBit(slot + 1)) {
+            ServerClient c = live(slot);
+            if (c == null) continue;
+            if (isAdmin(c)) out.add(c);
+            else adminSlots.clear(slot); // demoted since it was indexed
+        }
+        return out;
+    }
+
+    /** @return the connected client with this SteamID, or null. */
+    public synchronized ServerClient byAuth(Server server, long auth) {
+        refresh(server);
+        Integer slot = slotByAuth.get(auth);
+        if (slot == null) return null;
+        ServerClient c = live(slot);
+        return c != null && c.authentication == auth ? c : null;
+    }
+
+    /** @return the connected client currently using this name (case-insensitive), or null. */
+    public synchronized ServerClient byName(Server server, String name) {
+        refresh(server);
+        if (name == null) return null;
+        Integer slot = slotByName.get(NameIndex.normalize(name));
+        if (slot == null) return null;
+        ServerClient c = live(slot);
+        return c != null && c.getName() != null && c.getName().equalsIgnoreCase(name) ? c : null;
+    }
+
+    /** @return all connected clients, in slot order. */
+    public synchronized List<ServerClient> online(Server server) {
+        refresh(server);
+        List<ServerClient> out = new ArrayList<>(slotByAuth.size());
+        for (int slot = 0; slot < bySlot.length; slot++) {
+            if (bySlot[slot] != null && live(slot) != null) out.add(bySlot[slot]);
+        }
+        return out;
+    }
+
+    /** Rebuild from the server's slots if this is a different server or the last rebuild is too old. */
+    private void refresh(Server server) {
+        long now = System.currentTimeMillis();
+        if (server == null) return;
+        if (server == this.server && now - lastRescanMs < RESCAN_INTERVAL_MS) return;
+        bind(server);
+        rescan();
+        lastRescanMs = now;
+    }
+
+    /** Forget everything indexed for a previous server. */
+    private void bind(Server server) {
+        if (server == null || server == this.server) return;
+        this.server = server;
+        bySlot = new ServerClient[0];
+        nameBySlot = new String[0];
+        slotByAuth.clear();
+        slotByName.clear();
+        adminSlots.clear();
+        lastRescanMs = 0L;
+    }
+
+    private void rescan() {
+        int slots = server.getSlots();
+        for (int slot = 0; slot < Math.max(slots, bySlot.length); slot++) {
+            ServerClient c = slot < slots ? server.getClient(slot) : null;
+            if (c == null) {
+                if (slot < bySlot.length && bySlot[slot] != null) clear(slot);
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    /** @return the indexed client in this slot if the server still has it there; drops it otherwise. */
+    private ServerClient live(int slot) {
+        ServerClient c = slot < bySlot.length ? bySlot[slot] : null;
+        if (c == null) return null;
+        if (server != null && server.getClient(slot) != c) {
+            clear(slot);
+            return null;
+        }
+        return c;
+    }
+
+    private void put(ServerClient c) {
+        int slot = c.slot;
+        if (slot < 0) return;
+        if (slot >= bySlot.length) {
+            ServerClient[] grown = new ServerClient[Math.max(slot + 1, bySlot.length * 2)];
+            System.arraycopy(bySlot, 0, grown, 0, bySlot.length);
+            bySlot = grown;
+            String[] grownNames = new String[grown.length];
+            System.arraycopy(nameBySlot, 0, grownNames, 0, nameBySlot.length);
+            nameBySlot = grownNames;
+        }
+        String name = c.getName() == null || c.getName().isEmpty() ? null : NameIndex.normalize(c.getName());
+        if (bySlot[slot] != null && (bySlot[slot] != c || !Objects.equals(nameBySlot[slot], name))) clear(slot);
+        bySlot[slot] = c;
+        nameBySlot[slot] = name;
+        slotByAuth.put(c.authentication, slot);
+        if (name != null) slotByName.put(name, slot);
+        if (isAdmin(c)) adminSlots.set(slot); else adminSlots.clear(slot);
+    }
+
+    private void clear(int slot) {
+        ServerClient old = bySlot[slot];
+        bySlot[slot] = null;
+        adminSlots.clear(slot);
+        if (old != null) slotByAuth.remove(old.authentication, slot);
+        if (nameBySlot[slot] != null) slotByName.remove(nameBySlot[slot], slot);
+        nameBySlot[slot] = null;
+    }
+
+    private static boolean isAdmin(ServerClient c) {
+        PermissionLevel level = c.getPermissionLevel();
+        return level != null && level.getLevel() >= PermissionLevel.ADMIN.getLevel();
+    }
+}
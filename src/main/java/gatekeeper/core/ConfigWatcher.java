@@ -0,0 +1,144 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches GateKeeper folders for edits to one file name and reports each burst
+ * of changes once, after it has been quiet for a debounce delay.
+ * <p>
+ * One {@link WatchService} and one daemon thread are shared by every manager in
+ * the JVM ({@link #shared()}); callbacks run on a separate daemon thread so a
+ * slow callback never delays event collection. Editors that save through a
+ * temp file and rename show up as a create of the watched name, so both
+ * creates and modifications count.
+ */
+final class ConfigWatcher {
+    static final long DEBOUNCE_MS = 500L;
+    private static ConfigWatcher shared;
+
+    /** A registered folder; {@link #cancel()} stops its callbacks. */
+    final class Registration {
+        private final String fileName;
+        private final Runnable onChange;
+        private WatchKey key;
+        private ScheduledFuture<?> pending;
+        private volatile boolean cancelled;
+
+        private Registration(String fileName, Runnable onChange) {
+            this.fileName = fileName; this.onChange = onChange;
+        }
+
+        void cancel() {
+            cancelled = true;
+            synchronized (ConfigWatcher.this) {
+                if (pending != null) pending.cancel(false);
+                Map<Registration, Boolean> regs = byKey.get(key);
+                if (regs != null) {
+                    regs.remove(this);
+                    if (regs.isEmpty()) {
+                        byKey.remove(key);
+                        key.cancel();
+                    }
+                }
+            }
+        }
+    }
+
+    private final WatchService service;
+    private final long debounceMs;
+    private final Map<WatchKey, Map<Registration, Boolean>> byKey = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService callbacks = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-hot-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    ConfigWatcher(long debounceMs) throws IOException {
+        this.debounceMs = debounceMs;
+        this.service = FileSystems.getDefault().newWatchService();
+        Thread t = new Thread(this::poll, "GateKeeper-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** @return the JVM-wide watcher, or null if the file system cannot watch folders. */
+    static synchronized ConfigWatcher shared() {
+        if (shared == null) {
+            try {
+                shared = new ConfigWatcher(DEBOUNCE_MS);
+            } catch (IOException | UnsupportedOperationException e) {
+                System.err.println("GateKeeper: File watching unavailable; use /whitelist reload after editing. " + e);
+                return null;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Call {@code onChange} once things have settled after {@code fileName} in
+     * {@code dir} is created or modified.
+     * @return the registration, or null if the folder could not be watched
+     */
+    synchronized Registration watch(File dir, String fileName, Runnable onChange) {
+        Path path = dir.toPath();
+        Registration reg = new Registration(fileName, onChange);
+        try {
+            reg.key = path.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | ClosedWatchServiceException e) {
+            return null;
+        }
+        byKey.computeIfAbsent(reg.key, k -> new ConcurrentHashMap<>()).put(reg, Boolean.TRUE);
+        return reg;
+    }
+
+    private void poll() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changed(key, null); // lost events; recheck everything in this folder
+                } else {
+                    changed(key, ((Path) event.context()).getFileName().toString());
+                }
+            }
+            key.reset();
+        }
+    }
+
+    /** Restart the debounce for registrations on {@code key} watching {@code name} (null: all). */
+    private synchronized void changed(WatchKey key, String name) {
+        Map<Registration, Boolean> regs = byKey.get(key);
+        if (regs == null) return;
+        for (Registration reg : regs.keySet()) {
+            if (name != null && !name.equals(reg.fileName)) continue;
+            if (reg.pending != null) reg.pending.cancel(false);
+            reg.pending = callbacks.schedule(() -> {
+                if (reg.cancelled) return;
+                try {
+                    reg.onChange.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
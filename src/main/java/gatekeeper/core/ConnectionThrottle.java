@@ -0,0 +1,142 @@
+package gatekeeper.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket flood limiter for denied connections, keyed by SteamID and by address.
+ * <p>
+ * Each key kind has a fixed, direct-mapped table of buckets guarded by striped
+ * locks, so memory is bounded however many distinct keys show up and
+ * {@link #tryAcquire} never allocates. A key that collides with a different one
+ * simply takes over the slot with a full bucket: the limiter fails open and
+ * never throttles a key that has not been flooding.
+ * <p>
+ * Thread-safe.
+ */
+public final class ConnectionThrottle {
+    private static final int STRIPES = 64;
+    private static final int SLOTS = 4_096; // per key kind, power of two
+
+    /** Why {@link #tryAcquire} refused, or {@link #ALLOWED}. */
+    public static final int ALLOWED = 0;
+    public static final int THROTTLED_AUTH = 1;
+    public static final int THROTTLED_ADDRESS = 2;
+
+    private final Buckets byAuth;
+    private final Buckets byAddress;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttledAuth = new LongAdder();
+    private final LongAdder throttledAddress = new LongAdder();
+
+    /** Defaults: 5 attempts burst then 1 per 10 s per SteamID; 10 burst then 1 per 5 s per address. */
+    public ConnectionThrottle() {
+        this(5, 10_000L, 10, 5_000L);
+    }
+
+    /**
+     * @param authBurst bucket size per SteamID
+     * @param authRefillMs time to regain one token per SteamID
+     * @param addressBurst bucket size per address (shared by everyone behind it)
+     * @param addressRefillMs time to regain one token per address
+     */
+    ConnectionThrottle(int authBurst, long authRefillMs, int addressBurst, long addressRefillMs) {
+        this.byAuth = new Buckets(authBurst, authRefillMs);
+        this.byAddress = new Buckets(addressBurst, addressRefillMs);
+    }
+
+    /**
+     * Take one token for a denied connection from both the SteamID and address buckets.
+     * @param address display address, may be null (then only the SteamID is limited)
+     * @return {@link #ALLOWED}, {@link #THROTTLED_AUTH} or {@link #THROTTLED_ADDRESS}
+     */
+    public int tryAcquire(long auth, String address) {
+        return tryAcquire(auth, address, System.nanoTime() / 1_000_000L);
+    }
+
+    int tryAcquire(long auth, String address, long nowMs) {
+        if (!byAuth.take(auth, nowMs)) {
+            throttledAuth.increment();
+            return THROTTLED_AUTH;
+        }
+        if (address != null && !byAddress.take(addressKey(address), nowMs)) {
+            throttledAddress.increment();
+            return THROTTLED_ADDRESS;
+        }
+        allowed.increment();
+        return ALLOWED;
+    }
+
+    /** @return denied connections that went through the full deny path. */
+    public long allowedCount() { return allowed.sum(); }
+    /** @return connections cut short because their SteamID was flooding. */
+    public long throttledByAuth() { return throttledAuth.sum(); }
+    /** @return connections cut short because their address was flooding. */
+    public long throttledByAddress() { return throttledAddress.sum(); }
+
+    /** @return buckets currently below full, i.e. keys that are being limited or recovering. */
+    public int activeBuckets() {
+        long nowMs = System.nanoTime() / 1_000_000L;
+        return byAuth.active(nowMs) + byAddress.active(nowMs);
+    }
+
+    /**
+     * 64-bit FNV-1a over the host part of the address, without allocating.
+     * A trailing {@code :port} is ignored for IPv4-style {@code host:port}.
+     */
+    static long addressKey(String address) {
+        int end = address.length();
+        int colon = address.lastIndexOf(':');
+        if (colon > 0 && address.indexOf(':') == colon) end = colon;
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < end; i++) {
+            h ^= address.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static final class Buckets {
+        private final Object[] locks = new Object[STRIPES];
+        private final boolean[] used = new boolean[SLOTS];
+        private final long[] keys = new long[SLOTS];
+        private final double[] tokens = new double[SLOTS];
+        private final long[] refilledMs = new long[SLOTS];
+        private final int burst;
+        private final double tokensPerMs;
+
+        Buckets(int burst, long refillMs) {
+            for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+            this.burst = burst;
+            this.tokensPerMs = 1.0 / refillMs;
+        }
+
+        boolean take(long key, long nowMs) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & (SLOTS - 1);
+            synchronized (locks[slot & (STRIPES - 1)]) {
+                if (!used[slot] || keys[slot] != key) {
+                    used[slot] = true;
+                    keys[slot] = key;
+                    tokens[slot] = burst;
+                } else {
+                    tokens[slot] = Math.min(burst, tokens[slot] + (nowMs - refilledMs[slot]) * tokensPerMs);
+                }
+                refilledMs[slot] = nowMs;
+                if (tokens[slot] < 1.0) return false;
+                tokens[slot] -= 1.0;
+                return true;
+            }
+        }
+
+        int active(long nowMs) {
+            int n = 0;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                synchronized (locks[slot & (STRIPES - 1)]) {
+                    if (used[slot] && tokens[slot] + (nowMs - refilledMs[slot]) * tokensPerMs < burst) n++;
+                }
+            }
+            return n;
+        }
+    }
+}
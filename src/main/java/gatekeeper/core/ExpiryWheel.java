@@ -0,0 +1,199 @@
+package gatekeeper.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timing wheel for whitelist entries that expire.
+ * <p>
+ * Time advances in ticks of {@value #TICK_MS} ms. Level 0 has one slot per
+ * tick for the next {@value #SLOTS} ticks; each higher level has
+ * {@value #SLOTS} slots spanning {@value #SLOTS} times the previous level's
+ * range, so {@value #LEVELS} levels cover about 194 days. Entries further out
+ * sit in the top level and are placed again when it comes round. When a
+ * level's slot comes due, its entries cascade to lower levels by their exact
+ * deadline. Each tick touches one level-0 slot plus a cascade every
+ * {@value #SLOTS} ticks, so expiry never scans all entries and scheduling or
+ * cancelling is O(1).
+ * <p>
+ * Not thread-safe; {@link WhitelistManager} uses it under its monitor.
+ */
+final class ExpiryWheel {
+    static final long TICK_MS = 1_000L;
+    static final int SLOTS = 64;
+    static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final long MAX_SPAN_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    private static final class Entry {
+        final long key;
+        final long deadlineMs;
+        final long tick;
+        Entry prev, next;
+        int level, slot;
+        Entry(long key, long deadlineMs, long tick) { this.key = key; this.deadlineMs = deadlineMs; this.tick = tick; }
+    }
+
+    // Sentinel-headed circular lists, one per slot
+    private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+    private final Map<Long, Entry> byKey = new HashMap<>();
+    private long currentTick;
+
+    /** @param nowMs the wall-clock time the wheel starts at */
+    ExpiryWheel(long nowMs) {
+        currentTick = nowMs / TICK_MS;
+        for (Entry[] level : wheel) {
+            for (int s = 0; s < SLOTS; s++) {
+                Entry head = new Entry(0L, 0L, 0L);
+                head.prev = head.next = head;
+                level[s] = head;
+            }
+        }
+    }
+
+    int size() { return byKey.size(); }
+
+    /** @return the deadline of {@code key}, or 0 if it has none. */
+    long deadlineOf(long key) {
+        Entry e = byKey.get(key);
+        return e == null ? 0L : e.deadlineMs;
+    }
+
+    /** Expire {@code key} at {@code deadlineMs}, replacing any earlier deadline. A deadline already past fires on the next tick. */
+    void schedule(long key, long deadlineMs) {
+        cancel(key);
+        Entry e = new Entry(key, deadlineMs, ceilDiv(deadlineMs, TICK_MS));
+        byKey.put(key, e);
+        place(e);
+    }
+
+    /** @return true if {@code key} had a deadline, which is now dropped. */
+    boolean cancel(long key) {
+        Entry e = byKey.remove(key);
+        if (e == null) return false;
+        unlink(e);
+        return true;
+    }
+
+    void clear() {
+        for (Entry e : byKey.values()) unlink(e);
+        byKey.clear();
+    }
+
+    /** @return every key with its deadline, as a new map. */
+    Map<Long, Long> toMap() {
+        Map<Long, Long> out = new HashMap<>(Math.max(16, byKey.size() * 4 / 3 + 1));
+        for (Entry e : byKey.values()) out.put(e.key, e.deadlineMs);
+        return out;
+    }
+
+    /**
+     * Move the wheel forward to {@code nowMs}, handing each key whose deadline
+     * tick has been reached to {@code expired} (after dropping it from the
+     * wheel). Keys fire at most one tick after their deadline; see
+     * {@link #expireOverdue} for the rest of the current tick.
+     * @return number of keys expired
+     */
+    int advance(long nowMs, LongConsumer expired) {
+        long target = nowMs / TICK_MS;
+        if (byKey.isEmpty()) {
+            currentTick = Math.max(currentTick, target);
+            return 0;
+        }
+        int n = 0;
+        while (currentTick < target) {
+            currentTick++;
+            // Higher levels first, so entries due this tick reach level 0 in time
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) cascade(level, slotAt(currentTick, level), currentTick);
+            }
+            Entry head = wheel[0][(int) (currentTick & (SLOTS - 1))];
+            while (head.next != head) {
+                Entry e = head.next;
+                unlink(e);
+                if (e.tick > currentTick) { // a further-out entry parked here; not yet due
+                    place(e, currentTick + 1);
+                    continue;
+                }
+                byKey.remove(e.key);
+                expired.accept(e.key);
+                n++;
+            }
+            if (byKey.isEmpty()) currentTick = target;
+        }
+        return n;
+    }
+
+    /**
+     * Expire keys whose deadline has passed but whose tick has not been reached
+     * yet: ones scheduled already overdue, or due earlier within the current
+     * tick. They all wait in the next level-0 slot.
+     * @return number of keys expired
+     */
+    int expireOverdue(long nowMs, LongConsumer expired) {
+        Entry head = wheel[0][slotAt(currentTick + 1, 0)];
+        int n = 0;
+        for (Entry e = head.next; e != head; ) {
+            Entry next = e.next;
+            if (e.deadlineMs <= nowMs) {
+                unlink(e);
+                byKey.remove(e.key);
+                expired.accept(e.key);
+                n++;
+            }
+            e = next;
+        }
+        return n;
+    }
+
+    /** Re-place a higher-level slot's entries; those due this tick go to level-0 slot {@code dueTick}, drained next. */
+    private void cascade(int level, int slot, long dueTick) {
+        Entry head = wheel[level][slot];
+        Entry e = head.next;
+        head.prev = head.next = head;
+        while (e != head) {
+            Entry next = e.next;
+            place(e, dueTick);
+            e = next;
+        }
+    }
+
+    private void place(Entry e) { place(e, currentTick + 1); }
+
+    /** Put an entry in the lowest level whose range covers its deadline, or in level-0 slot {@code overdueTick} if due. */
+    private void place(Entry e, long overdueTick) {
+        long delta = e.tick - currentTick;
+        if (delta <= 0) {
+            link(e, 0, slotAt(overdueTick, 0));
+            return;
+        }
+        long at = delta >= MAX_SPAN_TICKS ? currentTick + MAX_SPAN_TICKS - 1 : e.tick;
+        int level = 0;
+        while (level < LEVELS - 1 && at - currentTick >= 1L << (SLOT_BITS * (level + 1))) level++;
+        link(e, level, slotAt(at, level));
+    }
+
+    private static int slotAt(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    private void link(Entry e, int level, int slot) {
+        Entry head = wheel[level][slot];
+        e.level = level;
+        e.slot = slot;
+        e.prev = head.prev;
+        e.next = head;
+        head.prev.next = e;
+        head.prev = e;
+    }
+
+    private static void unlink(Entry e) {
+        if (e.prev == null) return;
+        e.prev.next = e.next;
+        e.next.prev = e.prev;
+        e.prev = e.next = null;
+    }
+
+    private static long ceilDiv(long a, long b) { return -Math.floorDiv(-a, b); }
+}
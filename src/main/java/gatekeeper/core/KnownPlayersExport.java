@@ -0,0 +1,190 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * A point-in-time copy of the known players (saved players plus the name cache)
+ * and the whitelist, written to a file off the command thread.
+ * <p>
+ * {@link #capture} only copies references into arrays; {@link #writeTo} does the
+ * formatting and I/O, streaming rows through one large buffer into a
+ * {@link FileChannel} on a temp file that then replaces the target, so readers
+ * never see a partial export.
+ */
+public final class KnownPlayersExport {
+    /** Output formats; TXT is the original {@code auth,name} list. */
+    public enum Format {
+        TXT("txt"), CSV("csv"), JSONL("jsonl");
+        final String extension;
+        Format(String extension) { this.extension = extension; }
+        /** @return the format for a user-supplied name, or null if unknown. */
+        public static Format parse(String s) {
+            for (Format f : values()) if (f.extension.equalsIgnoreCase(s) || f.name().equalsIgnoreCase(s)) return f;
+            return s.equalsIgnoreCase("json") ? JSONL : null;
+        }
+    }
+
+    /** Which players to include, by current whitelist membership. */
+    public enum Filter {
+        ALL, WHITELISTED, NOT_WHITELISTED;
+        /** @return the filter for a user-supplied name, or null if unknown. */
+        public static Filter parse(String s) {
+            switch (s.toLowerCase(Locale.ENGLISH)) {
+                case "all": return ALL;
+                case "whitelisted": case "allowed": return WHITELISTED;
+                case "not-whitelisted": case "unlisted": case "denied": return NOT_WHITELISTED;
+                default: return null;
+            }
+        }
+    }
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final long[] auths;
+    private final String[] names;
+    private final boolean[] saved;
+    private final int size;
+    private final LongPredicate whitelist; // membership in a published snapshot, which never changes
+
+    private KnownPlayersExport(long[] auths, String[] names, boolean[] saved, int size, LongPredicate whitelist) {
+        this.auths = auths; this.names = names; this.saved = saved; this.size = size; this.whitelist = whitelist;
+    }
+
+    /**
+     * Copy the known players. {@code savedPlayers} is the game's map and must be
+     * read on the thread that owns it; {@code cachedNames} may be concurrent.
+     */
+    static KnownPlayersExport capture(Map<Long, String> savedPlayers, Map<Long, String> cachedNames, LongPredicate whitelist) {
+        int cap = (savedPlayers == null ? 0 : savedPlayers.size()) + cachedNames.size();
+        long[] auths = new long[Math.max(cap, 1)];
+        String[] names = new String[auths.length];
+        boolean[] saved = new boolean[auths.length];
+        LongHashSet seen = new LongHashSet();
+        int n = 0;
+        if (savedPlayers != null) {
+            for (Map.Entry<Long, String> e : savedPlayers.entrySet()) {
+                if (e.getKey() == null || e.getValue() == null || !seen.add(e.getKey())) continue;
+                auths[n] = e.getKey(); names[n] = e.getValue(); saved[n] = true; n++;
+            }
+        }
+        for (Map.Entry<Long, String> e : cachedNames.entrySet()) {
+            if (n == auths.length) { // the concurrent map grew while we copied
+                auths = Arrays.copyOf(auths, n * 2); names = Arrays.copyOf(names, n * 2); saved = Arrays.copyOf(saved, n * 2);
+            }
+            if (!seen.add(e.getKey())) continue;
+            auths[n] = e.getKey(); names[n] = e.getValue(); n++;
+        }
+        return new KnownPlayersExport(auths, names, saved, n, whitelist);
+    }
+
+    /** @return players captured, before filtering. */
+    int size() { return size; }
+
+    /**
+     * Write the rows matching {@code filter} to {@code target}.
+     * @return number of rows written
+     */
+    int writeTo(File target, Format format, Filter filter) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, target.getName() + ".tmp");
+        CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        StringBuilder row = new StringBuilder(128);
+        int written = 0;
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (format == Format.TXT) row.append("# auth,name\n");
+            else if (format == Format.CSV) row.append("steamid,name,whitelisted,source\n");
+            for (int i = 0; i < size; i++) {
+                boolean listed = whitelist.test(auths[i]);
+                if (filter == Filter.WHITELISTED && !listed || filter == Filter.NOT_WHITELISTED && listed) continue;
+                appendRow(row, format, auths[i], names[i], listed, saved[i]);
+                written++;
+                if (row.length() >= 8 * 1024) encode(utf8, row, buf, ch);
+            }
+            encode(utf8, row, buf, ch);
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(false);
+        }
+        WriteBehind.replace(tmp, target);
+        return written;
+    }
+
+    private static void appendRow(StringBuilder row, Format format, long auth, String name, boolean listed, boolean saved) {
+        switch (format) {
+            case CSV:
+                row.append(auth).append(',');
+                appendCsv(row, name);
+                row.append(',').append(listed).append(',').append(saved ? "saved" : "cache").append('\n');
+                break;
+            case JSONL:
+                row.append("{\"steamid\":\"").append(auth).append("\",\"name\":");
+                appendJson(row, name);
+                row.append(",\"whitelisted\":").append(listed)
+                        .append(",\"source\":\"").append(saved ? "saved" : "cache").append("\"}\n");
+                break;
+            default:
+                row.append(auth).append(',').append(name).append('\n');
+        }
+    }
+
+    /** Encode {@code row} into {@code buf}, draining it to the channel whenever it fills; clears {@code row}. */
+    private static void encode(CharsetEncoder utf8, StringBuilder row, ByteBuffer buf, FileChannel ch) throws IOException {
+        CharBuffer in = CharBuffer.wrap(row);
+        utf8.reset();
+        while (true) {
+            CoderResult r = utf8.encode(in, buf, true);
+            if (r.isOverflow()) {
+                buf.flip();
+                while (buf.hasRemaining()) ch.write(buf);
+                buf.clear();
+            } else if (r.isUnderflow()) {
+                break;
+            } else {
+                r.throwException();
+            }
+        }
+        row.setLength(0);
+    }
+
+    private static void appendCsv(StringBuilder sb, String s) {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) { sb.append(s); return; }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static void appendJson(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,178 @@
+package gatekeeper.core;
+
+/**
+ * Open-addressing hash set of primitive longs (SteamID64s).
+ * <p>
+ * Linear probing over a power-of-two table with backward-shift deletion, so
+ * there are no tombstones and membership checks never allocate. Key 0 marks an
+ * empty slot and is tracked out of band.
+ * <p>
+ * Not thread-safe. Sets published through {@link WhitelistManager.Snapshot}
+ * are copies (or small overlays on a shared copy) and are never mutated after
+ * publication.
+ */
+final class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    // Keep probe sequences short; SteamIDs are dense so mixing matters more than fill
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] table;
+    private int mask;
+    private int resizeAt;
+    private int size; // excludes the zero key
+    private boolean hasZero;
+
+    LongHashSet() { this(MIN_CAPACITY); }
+
+    /** @param expected number of keys to hold without resizing */
+    LongHashSet(int expected) { allocate(capacityFor(expected)); }
+
+    /** Copy constructor; the copy shares no state with {@code other}. */
+    LongHashSet(LongHashSet other) {
+        this.table = other.table.clone();
+        this.mask = other.mask;
+        this.resizeAt = other.resizeAt;
+        this.size = other.size;
+        this.hasZero = other.hasZero;
+    }
+
+    private static int capacityFor(int expected) {
+        long need = (long) Math.ceil(Math.max(expected, 1) / (double) LOAD_FACTOR);
+        int cap = MIN_CAPACITY;
+        while (cap < need && cap < MAX_CAPACITY) cap <<= 1;
+        return cap;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) Math.min((long) (capacity * LOAD_FACTOR), capacity - 1L);
+    }
+
+    /** Murmur3 finalizer; spreads the low-entropy high bits of SteamID64s. */
+    private static int slot(long key, int mask) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    /** @return true if the key is present. Allocation-free. */
+    boolean contains(long key) {
+        if (key == 0L) return hasZero;
+        final long[] t = table;
+        final int m = mask;
+        int i = slot(key, m);
+        for (;;) {
+            long k = t[i];
+            if (k == key) return true;
+            if (k == 0L) return false;
+            i = (i + 1) & m;
+        }
+    }
+
+    /** @return true if the key was not present and has been added. */
+    boolean add(long key) {
+        if (key == 0L) {
+            if (hasZero) return false;
+            hasZero = true;
+            return true;
+        }
+        int i = slot(key, mask);
+        for (;;) {
+            long k = table[i];
+            if (k == key) return false;
+            if (k == 0L) break;
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        if (++size > resizeAt) rehash(table.length << 1);
+        return true;
+    }
+
+    /** @return true if the key was present and has been removed. */
+    boolean remove(long key) {
+        if (key == 0L) {
+            boolean had = hasZero;
+            hasZero = false;
+            return had;
+        }
+        final long[] t = table;
+        final int m = mask;
+        int i = slot(key, m);
+        for (;;) {
+            long k = t[i];
+            if (k == 0L) return false;
+            if (k == key) break;
+            i = (i + 1) & m;
+        }
+        // Backward-shift: pull later entries of the probe run into the hole
+        int j = i;
+        for (;;) {
+            j = (j + 1) & m;
+            long k = t[j];
+            if (k == 0L) break;
+            int home = slot(k, m);
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                t[i] = k;
+                i = j;
+            }
+        }
+        t[i] = 0L;
+        size--;
+        return true;
+    }
+
+    int size() { return size + (hasZero ? 1 : 0); }
+
+    /** Grow the table up front so {@code expected} keys fit without rehashing. */
+    void ensureCapacity(int expected) {
+        int cap = capacityFor(expected);
+        if (cap > table.length) rehash(cap);
+    }
+
+    boolean isEmpty() { return size() == 0; }
+
+    void clear() {
+        java.util.Arrays.fill(table, 0L);
+        size = 0;
+        hasZero = false;
+    }
+
+    /** Pass every key, in table order, to {@code action}. */
+    void forEach(java.util.function.LongConsumer action) {
+        if (hasZero) action.accept(0L);
+        for (long k : table) if (k != 0L) action.accept(k);
+    }
+
+    /** @return all keys in ascending order. */
+    long[] toSortedArray() {
+        long[] out = new long[size()];
+        int n = 0;
+        if (hasZero) out[n++] = 0L;
+        for (long k : table) if (k != 0L) out[n++] = k;
+        java.util.Arrays.sort(out);
+        return out;
+    }
+
+    /** @return approximate retained heap size in bytes (table plus object headers). */
+    long footprintBytes() { return 16L + 16L + 8L * table.length; }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        allocate(capacity);
+        final long[] t = table;
+        final int m = mask;
+        for (long k : old) {
+            if (k == 0L) continue;
+            int i = slot(k, m);
+            while (t[i] != 0L) i = (i + 1) & m;
+            t[i] = k;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package gatekeeper.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GateKeeper's own counters and latency histograms, for {@code /whitelist stats}
+ * and the Prometheus text file.
+ * <p>
+ * Counters are {@link LongAdder}s and histograms have fixed buckets (one
+ * adder each plus a sum), so recording is a few uncontended increments with no
+ * locking or allocation. A disabled instance keeps every metric at zero:
+ * {@link Timer#start()} then skips the clock and {@link Timer#stop} and
+ * {@link Counter#inc()} return after one final-field check.
+ * <p>
+ * Thread-safe.
+ */
+public final class Metrics {
+    /** Histogram bucket upper bounds in microseconds; a last, unbounded bucket follows. */
+    static final long[] BUCKET_BOUNDS_US = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 50_000, 250_000, 1_000_000};
+
+    private final boolean enabled;
+    private final List<Counter> counters = new ArrayList<>();
+    private final List<Timer> timers = new ArrayList<>();
+
+    // Outcome of each connection the listener sees
+    public final Counter connectsAllowed;
+    public final Counter connectsPrivileged;
+    public final Counter connectsDenied;
+    public final Counter connectsThrottled;
+    public final Counter connectsBlockedNetwork;
+    public final Counter notifications;
+    public final Counter digests;
+    final Counter compactions;
+    final Counter nameCacheSaves;
+
+    final Timer isWhitelisted;
+    public final Timer connect;
+    final Timer recordDenied;
+    final Timer nameLookup;
+    final Timer save;
+    final Timer nameCacheWrite;
+
+    /** @param enabled false to record nothing, at near-zero cost */
+    public Metrics(boolean enabled) {
+        this.enabled = enabled;
+        connectsAllowed = counter("gatekeeper_connections_total", "result=\"allowed\"", "Client connections by outcome.");
+        connectsPrivileged = counter("gatekeeper_connections_total", "result=\"privileged\"", null);
+        connectsDenied = counter("gatekeeper_connections_total", "result=\"denied\"", null);
+        connectsThrottled = counter("gatekeeper_connections_total", "result=\"throttled\"", null);
+        connectsBlockedNetwork = counter("gatekeeper_connections_total", "result=\"blocked_network\"", null);
+        notifications = counter("gatekeeper_admin_notifications_total", "kind=\"denial\"", "Messages sent to admins about denied connections.");
+        digests = counter("gatekeeper_admin_notifications_total", "kind=\"digest\"", null);
+        compactions = counter("gatekeeper_compactions_total", null, "Journal compactions into the snapshot file.");
+        nameCacheSaves = counter("gatekeeper_name_cache_save_requests_total", null, "Name cache changes that queued a (debounced) rewrite.");
+
+        isWhitelisted = timer("gatekeeper_is_whitelisted_seconds", "isWhitelisted", "Time to answer an access check.");
+        connect = timer("gatekeeper_connect_seconds", "onEvent", "Time the connection listener spends per client.");
+        recordDenied = timer("gatekeeper_record_denied_seconds", "recordDeniedAttempt", "Time to record a denied attempt.");
+        nameLookup = timer("gatekeeper_name_lookup_seconds", "name lookups", "Time to resolve a name or SteamID through the name index.");
+        save = timer("gatekeeper_save_seconds", "saves", "Time to append journal records and compact, on the writer thread.");
+        nameCacheWrite = timer("gatekeeper_name_cache_write_seconds", "name cache writes", "Time to rewrite name_cache.json, on the writer thread.");
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    private Counter counter(String name, String labels, String help) {
+        Counter c = new Counter(enabled, name, labels, help);
+        counters.add(c);
+        return c;
+    }
+
+    private Timer timer(String name, String label, String help) {
+        Timer t = new Timer(enabled, name, label, help);
+        timers.add(t);
+        return t;
+    }
+
+    List<Timer> timers() { return timers; }
+
+    /** A monotonically increasing count. */
+    public static final class Counter {
+        private final boolean enabled;
+        final String name;
+        final String labels; // Prometheus label set without braces, or null
+        final String help;   // null for further label sets of the same metric
+        private final LongAdder value = new LongAdder();
+
+        private Counter(boolean enabled, String name, String labels, String help) {
+            this.enabled = enabled; this.name = name; this.labels = labels; this.help = help;
+        }
+
+        public void inc() {
+            if (enabled) value.increment();
+        }
+
+        public long get() { return value.sum(); }
+    }
+
+    /** A latency histogram over {@link #BUCKET_BOUNDS_US}. */
+    public static final class Timer {
+        private final boolean enabled;
+        final String name;
+        final String label; // for /whitelist stats
+        final String help;
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_US.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Timer(boolean enabled, String name, String label, String help) {
+            this.enabled = enabled; this.name = name; this.label = label; this.help = help;
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        /** @return a start time for {@link #stop}, or 0 without reading the clock when disabled */
+        public long start() { return enabled ? System.nanoTime() : 0L; }
+
+        /** Record the time since {@code startNanos} from {@link #start()}. */
+        public void stop(long startNanos) {
+            if (enabled) record(System.nanoTime() - startNanos);
+        }
+
+        void record(long nanos) {
+            long us = nanos / 1_000L;
+            int b = 0;
+            while (b < BUCKET_BOUNDS_US.length && us >= BUCKET_BOUNDS_US[b]) b++;
+            buckets[b].increment();
+            sumNanos.add(nanos);
+        }
+
+        /** @return per-bucket counts (not cumulative); the last is the unbounded bucket */
+        long[] counts() {
+            long[] out = new long[buckets.length];
+            for (int i = 0; i < out.length; i++) out[i] = buckets[i].sum();
+            return out;
+        }
+
+        long sumNanos() { return sumNanos.sum(); }
+
+        /**
+         * @return upper bound (µs) of the bucket holding quantile {@code q} of
+         *         {@code counts}, -1 if that is the unbounded bucket, 0 if empty
+         */
+        static long quantileBoundUs(long[] counts, double q) {
+            long total = 0;
+            for (long c : counts) total += c;
+            if (total == 0) return 0L;
+            long need = (long) Math.ceil(q * total), seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= need) return i < BUCKET_BOUNDS_US.length ? BUCKET_BOUNDS_US[i] : -1L;
+            }
+            return -1L;
+        }
+    }
+
+    /** Append all counters and histograms in the Prometheus text exposition format. */
+    void appendPrometheus(StringBuilder sb) {
+        for (Counter c : counters) {
+            if (c.help != null) {
+                sb.append("# HELP ").append(c.name).append(' ').append(c.help).append('\n');
+                sb.append("# TYPE ").append(c.name).append(" counter\n");
+            }
+            sb.append(c.name);
+            if (c.labels != null) sb.append('{').append(c.labels).append('}');
+            sb.append(' ').append(c.get()).append('\n');
+        }
+        for (Timer t : timers) {
+            sb.append("# HELP ").append(t.name).append(' ').append(t.help).append('\n');
+            sb.append("# TYPE ").append(t.name).append(" histogram\n");
+            long[] counts = t.counts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String le = i < BUCKET_BOUNDS_US.length ? seconds(BUCKET_BOUNDS_US[i] * 1_000L) : "+Inf";
+                sb.append(t.name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append(t.name).append("_sum ").append(seconds(t.sumNanos())).append('\n');
+            sb.append(t.name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+
+    /** Append one gauge in the Prometheus text exposition format. */
+    static void appendGauge(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9).replaceAll("0+$", "").replaceAll("\\.$", "");
+    }
+}
@@ -0,0 +1,145 @@
+package gatekeeper.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import necesse.engine.network.server.Server;
+import necesse.engine.network.server.ServerClient;
+
+/**
+ * Name &lt;-&gt; SteamID resolution over every source GateKeeper knows, for one world.
+ * <p>
+ * Sources, in lookup order:
+ * <ul>
+ *   <li>{@link WhitelistManager.NameSource#ONLINE}: connected clients, via the
+ *       {@link ClientRegistry} name/auth index;</li>
+ *   <li>{@link WhitelistManager.NameSource#SAVED}: the world's saved players
+ *       ({@code getUsedPlayerNames}), reverse-indexed by normalized name;</li>
+ *   <li>{@link WhitelistManager.NameSource#CACHE}: GateKeeper's own
+ *       {@code name_cache.json} mapping, updated by {@link #remember}.</li>
+ * </ul>
+ * Auth-to-name lookups prefer the cache over saved players, because the cache
+ * holds the name last seen at connect time. Every lookup is a hash probe.
+ * All names from all sources also feed a {@link NameSearch} for prefix and
+ * fuzzy queries.
+ * <p>
+ * Not thread-safe for writers ({@link WhitelistManager} holds its monitor);
+ * the cache maps are concurrent so the writer thread can serialize them.
+ */
+final class NameIndex {
+    // name_cache.json contents: auth -> name, normalized name -> auth
+    final Map<Long, String> cachedNames = new ConcurrentHashMap<>();
+    final Map<String, Long> cachedAuths = new ConcurrentHashMap<>();
+
+    // Reverse index of the world's saved players, rebuilt when that map changes size
+    private final Map<String, Long> savedAuths = new HashMap<>();
+    private int savedSize = -1;
+
+    private final NameSearch search = new NameSearch();
+
+    /** Case-folding used for every name key. */
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /** Forget everything; called when the manager switches worlds. */
+    void clear() {
+        cachedNames.clear();
+        cachedAuths.clear();
+        savedAuths.clear();
+        savedSize = -1;
+        search.clear();
+    }
+
+    /** Replace the cache with what was read from name_cache.json. */
+    void loadCache(Map<Long, String> authNames, Map<String, Long> nameAuths) {
+        cachedNames.clear();
+        cachedAuths.clear();
+        if (authNames != null) {
+            for (Map.Entry<Long, String> e : authNames.entrySet()) {
+                if (e.getKey() == null || e.getValue() == null) continue;
+                cachedNames.put(e.getKey(), e.getValue());
+                search.add(e.getValue(), e.getKey(), WhitelistManager.NameSource.CACHE);
+            }
+        }
+        if (nameAuths != null) {
+            for (Map.Entry<String, Long> e : nameAuths.entrySet()) {
+                if (e.getKey() != null && e.getValue() != null) cachedAuths.put(normalize(e.getKey()), e.getValue());
+            }
+        }
+    }
+
+    /** @return true if the cache changed (and so needs persisting). */
+    boolean remember(long auth, String name) {
+        String prevName = cachedNames.put(auth, name);
+        Long prevAuth = cachedAuths.put(normalize(name), auth);
+        search.add(name, auth, WhitelistManager.NameSource.CACHE);
+        return !name.equals(prevName) || prevAuth == null || prevAuth != auth;
+    }
+
+    /** Resolve a name, case-insensitively, to the first source that knows it. */
+    WhitelistManager.NameMatch find(Server server, ClientRegistry clients, String name) {
+        ServerClient online = clients.byName(server, name);
+        if (online != null) {
+            return new WhitelistManager.NameMatch(online.authentication, online.getName(), WhitelistManager.NameSource.ONLINE);
+        }
+        String key = normalize(name);
+        Map<Long, String> used = saved(server);
+        Long auth = savedAuths.get(key);
+        if (auth != null) return new WhitelistManager.NameMatch(auth, used.get(auth), WhitelistManager.NameSource.SAVED);
+        auth = cachedAuths.get(key);
+        if (auth != null) {
+            String cached = cachedNames.get(auth);
+            return new WhitelistManager.NameMatch(auth, cached != null ? cached : name, WhitelistManager.NameSource.CACHE);
+        }
+        return null;
+    }
+
+    /** Resolve a SteamID to its best-known name. */
+    WhitelistManager.NameMatch nameOf(Server server, ClientRegistry clients, long auth) {
+        ServerClient online = clients.byAuth(server, auth);
+        if (online != null) return new WhitelistManager.NameMatch(auth, online.getName(), WhitelistManager.NameSource.ONLINE);
+        String cached = cachedNames.get(auth);
+        if (cached != null) return new WhitelistManager.NameMatch(auth, cached, WhitelistManager.NameSource.CACHE);
+        String saved = saved(server).get(auth);
+        if (saved != null) return new WhitelistManager.NameMatch(auth, saved, WhitelistManager.NameSource.SAVED);
+        return null;
+    }
+
+    /**
+     * Prefix, substring and fuzzy candidates for a name fragment, best first.
+     * Candidates that are connected right now are reported as {@code ONLINE}.
+     */
+    List<WhitelistManager.NameMatch> search(Server server, ClientRegistry clients, String fragment, int limit) {
+        saved(server);
+        for (ServerClient c : clients.online(server)) {
+            String name = c.getName();
+            if (name != null && !name.isEmpty()) search.add(name, c.authentication, WhitelistManager.NameSource.ONLINE);
+        }
+        List<WhitelistManager.NameMatch> out = new ArrayList<>();
+        for (NameSearch.Hit h : search.search(fragment, limit)) {
+            WhitelistManager.NameSource source = clients.byAuth(server, h.auth) != null ? WhitelistManager.NameSource.ONLINE : h.source;
+            out.add(new WhitelistManager.NameMatch(h.auth, h.name, source));
+        }
+        return out;
+    }
+
+    /** @return the world's saved-player map, refreshing the reverse index if it grew or shrank. */
+    private Map<Long, String> saved(Server server) {
+        Map<Long, String> used = server.world == null ? null : server.world.getUsedPlayerNames();
+        if (used == null) used = new HashMap<>();
+        if (used.size() != savedSize) {
+            savedAuths.clear();
+            for (Map.Entry<Long, String> e : used.entrySet()) {
+                if (e.getKey() == null || e.getValue() == null) continue;
+                savedAuths.putIfAbsent(normalize(e.getValue()), e.getKey());
+                search.add(e.getValue(), e.getKey(), WhitelistManager.NameSource.SAVED);
+            }
+            savedSize = used.size();
+        }
+        return used;
+    }
+}
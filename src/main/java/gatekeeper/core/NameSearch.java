@@ -0,0 +1,188 @@
+package gatekeeper.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prefix and fuzzy search over known player names.
+ * <p>
+ * Names are kept in a {@link TreeMap} by normalized name (prefix queries are a
+ * sub-map walk) and in a trigram index (postings of entry ids per 3-character
+ * window, with the name padded by two boundary marks on each side so short
+ * names still have trigrams left after a typo). A fuzzy query counts trigram
+ * hits per entry, keeps entries sharing enough trigrams with the query and
+ * ranks them by a bounded edit distance.
+ * Entries are only ever added, matching the name cache, which also keeps
+ * old names.
+ * <p>
+ * Not thread-safe; owned by {@link NameIndex}.
+ */
+final class NameSearch {
+    /** Match kinds in rank order. */
+    static final int EXACT = 0, PREFIX = 1, SUBSTRING = 2, FUZZY = 3;
+    private static final String PAD = "\u0001\u0001";
+
+    static final class Hit {
+        final String name;
+        final long auth;
+        final WhitelistManager.NameSource source;
+        final int kind;
+        final int distance;
+        Hit(String name, long auth, WhitelistManager.NameSource source, int kind, int distance) {
+            this.name = name; this.auth = auth; this.source = source; this.kind = kind; this.distance = distance;
+        }
+    }
+
+    private final TreeMap<String, Integer> byKey = new TreeMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private long[] auths = new long[64];
+    private WhitelistManager.NameSource[] sources = new WhitelistManager.NameSource[64];
+    private final Map<Long, int[]> postings = new HashMap<>(); // trigram -> [size, id, id, ...]
+
+    // Per-query scratch, reused so queries don't allocate per entry
+    private int[] hits = new int[64];
+    private int[] touched = new int[64];
+    private int[] prevRow = new int[32];
+    private int[] curRow = new int[32];
+
+    int size() { return keys.size(); }
+
+    void clear() {
+        byKey.clear();
+        keys.clear();
+        names.clear();
+        postings.clear();
+    }
+
+    /** Index a name; a name already indexed keeps its first SteamID and source. */
+    void add(String name, long auth, WhitelistManager.NameSource source) {
+        String key = NameIndex.normalize(name);
+        if (byKey.containsKey(key)) return;
+        int id = keys.size();
+        byKey.put(key, id);
+        keys.add(key);
+        names.add(name);
+        if (id == auths.length) {
+            auths = Arrays.copyOf(auths, id * 2);
+            sources = Arrays.copyOf(sources, id * 2);
+        }
+        auths[id] = auth;
+        sources[id] = source;
+        String padded = pad(key);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            long tri = trigram(padded, i);
+            int[] p = postings.get(tri);
+            if (p == null) {
+                p = new int[4];
+            } else if (p[0] > 0 && p[p[0]] == id) {
+                continue; // repeated trigram within this name
+            }
+            if (p[0] + 1 == p.length) p = Arrays.copyOf(p, p.length * 2);
+            p[++p[0]] = id;
+            postings.put(tri, p);
+        }
+    }
+
+    /**
+     * Ranked candidates for a fragment: exact, then prefix, then substring, then
+     * names within a small edit distance, each group shortest names first.
+     */
+    List<Hit> search(String fragment, int limit) {
+        String q = NameIndex.normalize(fragment);
+        List<Hit> out = new ArrayList<>();
+        if (q.isEmpty() || limit <= 0) return out;
+
+        // Prefix (includes exact), in key order; take a few extra so shorter names can rank first
+        int prefixBudget = limit * 4;
+        for (Map.Entry<String, Integer> e : byKey.tailMap(q, true).entrySet()) {
+            if (!e.getKey().startsWith(q) || prefixBudget-- == 0) break;
+            int id = e.getValue();
+            out.add(hit(id, e.getKey().length() == q.length() ? EXACT : PREFIX, 0));
+        }
+
+        if (q.length() >= 3) fuzzy(q, out);
+        out.sort((a, b) -> a.kind != b.kind ? Integer.compare(a.kind, b.kind)
+                : a.distance != b.distance ? Integer.compare(a.distance, b.distance)
+                : Integer.compare(a.name.length(), b.name.length()));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    /** Substring and edit-distance candidates from trigram overlap. */
+    private void fuzzy(String q, List<Hit> out) {
+        int n = keys.size();
+        if (hits.length < n) {
+            hits = new int[Math.max(n, hits.length * 2)];
+            touched = new int[hits.length];
+        }
+        String padded = pad(q);
+        int queryTrigrams = padded.length() - 2;
+        int maxEdits = q.length() <= 4 ? 1 : 2;
+        // A typo destroys at most 3 trigrams; a substring match keeps every unpadded one
+        int required = Math.max(1, Math.min(queryTrigrams - 3 * maxEdits, queryTrigrams - 4));
+        int touchedCount = 0;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int[] p = postings.get(trigram(padded, i));
+            if (p == null) continue;
+            for (int k = 1; k <= p[0]; k++) {
+                int id = p[k];
+                if (hits[id]++ == 0) touched[touchedCount++] = id;
+            }
+        }
+        for (int t = 0; t < touchedCount; t++) {
+            int id = touched[t];
+            int count = hits[id];
+            hits[id] = 0;
+            if (count < required) continue;
+            String key = keys.get(id);
+            if (key.startsWith(q)) continue; // already listed as prefix
+            if (count >= queryTrigrams - 4 && key.contains(q)) {
+                out.add(hit(id, SUBSTRING, key.length() - q.length()));
+                continue;
+            }
+            if (Math.abs(key.length() - q.length()) > maxEdits) continue;
+            int d = boundedDistance(q, key, maxEdits);
+            if (d <= maxEdits) out.add(hit(id, FUZZY, d));
+        }
+    }
+
+    private Hit hit(int id, int kind, int distance) {
+        return new Hit(names.get(id), auths[id], sources[id], kind, distance);
+    }
+
+    private static String pad(String key) {
+        return PAD + key + PAD;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /** Levenshtein distance, giving up (returning max + 1) once every path exceeds {@code max}. */
+    private int boundedDistance(String a, String b, int max) {
+        int m = b.length();
+        if (prevRow.length <= m) {
+            prevRow = new int[m + 1];
+            curRow = new int[m + 1];
+        }
+        int[] prev = prevRow, cur = curRow;
+        for (int j = 0; j <= m; j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                if (cur[j] < rowMin) rowMin = cur[j];
+            }
+            if (rowMin > max) return max + 1;
+            int[] tmp = prev; prev = cur; cur = tmp;
+        }
+        return prev[m];
+    }
+}
@@ -0,0 +1,355 @@
+package gatekeeper.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Blocked IPv4 and IPv6 networks (CIDR prefixes), matched against connecting
+ * addresses by longest prefix in a binary radix trie.
+ * <p>
+ * The trie is a set of parallel int arrays (one node per prefix bit, two
+ * roots for the two address families), so a lookup parses the address in
+ * place, walks at most 32 or 128 nodes and allocates nothing. Each prefix has
+ * a hit counter. IPv4-mapped IPv6 addresses ({@code ::ffff:a.b.c.d}) match
+ * IPv4 prefixes.
+ * <p>
+ * Immutable apart from the counters: {@link #with} and {@link #without}
+ * return a rebuilt list that keeps the counters of the prefixes it retains.
+ * Published through {@link WhitelistManager.Snapshot}, so lookups need no lock.
+ */
+final class NetBlocklist {
+    static final NetBlocklist EMPTY = new NetBlocklist(new String[0], new LongAdder[0]);
+
+    private static final int ROOT_V4 = 0;
+    private static final int ROOT_V6 = 1;
+    // Per-thread parse buffer, so lookups don't allocate: [high 64 bits, low 64 bits]
+    private static final ThreadLocal<long[]> SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final String[] cidrs; // canonical, in the order they were added
+    private final LongAdder[] hits;
+    // Trie nodes: child per bit value, or -1; the prefix ending at a node, or -1
+    private final int[] zero;
+    private final int[] one;
+    private final int[] prefixAt;
+
+    private NetBlocklist(String[] cidrs, LongAdder[] hits) {
+        this.cidrs = cidrs;
+        this.hits = hits;
+        int nodes = 2;
+        long[] addr = new long[2];
+        int[] lengths = new int[cidrs.length];
+        long[][] values = new long[cidrs.length][];
+        for (int i = 0; i < cidrs.length; i++) {
+            int slash = cidrs[i].indexOf('/');
+            int bits = parseAddress(cidrs[i], 0, slash, addr);
+            lengths[i] = Integer.parseInt(cidrs[i].substring(slash + 1));
+            values[i] = new long[]{addr[0], addr[1], bits};
+            nodes += lengths[i];
+        }
+        zero = new int[nodes];
+        one = new int[nodes];
+        prefixAt = new int[nodes];
+        Arrays.fill(zero, -1);
+        Arrays.fill(one, -1);
+        Arrays.fill(prefixAt, -1);
+        int used = 2;
+        for (int i = 0; i < cidrs.length; i++) {
+            int node = values[i][2] == 32 ? ROOT_V4 : ROOT_V6;
+            for (int b = 0; b < lengths[i]; b++) {
+                int[] next = bitAt(values[i][0], values[i][1], b) == 0 ? zero : one;
+                if (next[node] < 0) next[node] = used++;
+                node = next[node];
+            }
+            prefixAt[node] = i;
+        }
+    }
+
+    /** @return a list of the given networks, built in one go; invalid and repeated ones are skipped. */
+    static NetBlocklist of(Collection<String> networks) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String cidr : networks) {
+            String c = canonical(cidr);
+            if (c != null) unique.add(c);
+        }
+        if (unique.isEmpty()) return EMPTY;
+        LongAdder[] hs = new LongAdder[unique.size()];
+        for (int i = 0; i < hs.length; i++) hs[i] = new LongAdder();
+        return new NetBlocklist(unique.toArray(new String[0]), hs);
+    }
+
+    int size() { return cidrs.length; }
+
+    /** @return the {@code i}-th prefix, in canonical form. */
+    String cidr(int i) { return cidrs[i]; }
+
+    /** @return connections matched to the {@code i}-th prefix since the list was loaded. */
+    long hits(int i) { return hits[i].sum(); }
+
+    long totalHits() {
+        long n = 0;
+        for (LongAdder h : hits) n += h.sum();
+        return n;
+    }
+
+    /** @return true if {@code cidr} (any form {@link #canonical} accepts) is on the list. */
+    boolean contains(String cidr) { return indexOf(canonical(cidr)) >= 0; }
+
+    /**
+     * @param cidr a network such as {@code 203.0.113.0/24} or {@code 2001:db8::/32}
+     * @return a list that also blocks {@code cidr}, or this one if it already does
+     * @throws IllegalArgumentException if {@code cidr} is not a valid network
+     */
+    NetBlocklist with(String cidr) {
+        String c = canonical(cidr);
+        if (c == null) throw new IllegalArgumentException("not a network: " + cidr);
+        if (indexOf(c) >= 0) return this;
+        String[] cs = Arrays.copyOf(cidrs, cidrs.length + 1);
+        LongAdder[] hs = Arrays.copyOf(hits, hits.length + 1);
+        cs[cidrs.length] = c;
+        hs[hits.length] = new LongAdder();
+        return new NetBlocklist(cs, hs);
+    }
+
+    /** @return a list without {@code cidr}, or this one if it isn't on it. */
+    NetBlocklist without(String cidr) {
+        int at = indexOf(canonical(cidr));
+        if (at < 0) return this;
+        if (cidrs.length == 1) return EMPTY;
+        String[] cs = new String[cidrs.length - 1];
+        LongAdder[] hs = new LongAdder[hits.length - 1];
+        for (int i = 0, j = 0; i < cidrs.length; i++) {
+            if (i == at) continue;
+            cs[j] = cidrs[i];
+            hs[j++] = hits[i];
+        }
+        return new NetBlocklist(cs, hs);
+    }
+
+    private int indexOf(String canonical) {
+        if (canonical == null) return -1;
+        for (int i = 0; i < cidrs.length; i++) if (cidrs[i].equals(canonical)) return i;
+        return -1;
+    }
+
+    /**
+     * Match a connecting address and count the hit on the most specific
+     * blocked prefix. Accepts a bare address or the forms socket addresses
+     * print as: {@code host/1.2.3.4:port}, {@code [2001:db8::1]:port}, and
+     * IPv6 with a {@code %zone}. Allocation-free.
+     * @return true if the address is in a blocked network; false if not, or if it doesn't parse
+     */
+    boolean hit(String address) {
+        if (cidrs.length == 0 || address == null) return false;
+        int at = match(address);
+        if (at < 0) return false;
+        hits[at].increment();
+        return true;
+    }
+
+    /** @return index of the most specific prefix containing {@code address}, or -1. Does not count. */
+    int match(String address) {
+        int from = address.lastIndexOf('/') + 1;
+        int to = address.length();
+        if (from < to && address.charAt(from) == '[') {
+            to = address.indexOf(']', from);
+            if (to < 0) return -1;
+            from++;
+        } else {
+            // A single colon is an IPv4 port; IPv6 has at least two
+            int colon = address.indexOf(':', from);
+            if (colon >= 0 && address.indexOf(':', colon + 1) < 0) to = colon;
+        }
+        int zone = address.indexOf('%', from);
+        if (zone >= 0 && zone < to) to = zone;
+        long[] addr = SCRATCH.get();
+        int bits = parseAddress(address, from, to, addr);
+        if (bits == 0) return -1;
+        long hi = addr[0], lo = addr[1];
+        if (bits == 128 && hi == 0L && (lo >>> 32) == 0xFFFFL) { // IPv4-mapped
+            bits = 32;
+            hi = lo << 32;
+            lo = 0L;
+        }
+        int node = bits == 32 ? ROOT_V4 : ROOT_V6;
+        int best = prefixAt[node];
+        for (int b = 0; b < bits; b++) {
+            node = bitAt(hi, lo, b) == 0 ? zero[node] : one[node];
+            if (node < 0) break;
+            if (prefixAt[node] >= 0) best = prefixAt[node];
+        }
+        return best;
+    }
+
+    private static int bitAt(long hi, long lo, int b) {
+        return (int) ((b < 64 ? hi >>> (63 - b) : lo >>> (127 - b)) & 1L);
+    }
+
+    /**
+     * Normalize a network: host bits cleared, IPv6 in RFC 5952 form, and a
+     * missing length taken as a single address. IPv4-mapped IPv6 prefixes of
+     * at least /96 become IPv4 ones.
+     * @return e.g. {@code 203.0.113.0/24}, or null if {@code cidr} is not a valid network
+     */
+    static String canonical(String cidr) {
+        if (cidr == null) return null;
+        cidr = cidr.trim();
+        int slash = cidr.indexOf('/');
+        int end = slash < 0 ? cidr.length() : slash;
+        long[] addr = new long[2];
+        int bits = parseAddress(cidr, 0, end, addr);
+        if (bits == 0) return null;
+        int len = bits;
+        if (slash >= 0) {
+            String digits = cidr.substring(slash + 1);
+            if (digits.isEmpty() || digits.length() > 3 || !digits.chars().allMatch(Character::isDigit)) return null;
+            len = Integer.parseInt(digits);
+            if (len > bits) return null;
+        }
+        if (bits == 128 && addr[0] == 0L && (addr[1] >>> 32) == 0xFFFFL && len >= 96) {
+            bits = 32;
+            addr[0] = addr[1] << 32;
+            addr[1] = 0L;
+            len -= 96;
+        }
+        long hi = len == 0 ? 0L : len >= 64 ? addr[0] : addr[0] & (-1L << (64 - len));
+        long lo = len <= 64 ? 0L : len == 128 ? addr[1] : addr[1] & (-1L << (128 - len));
+        return (bits == 32 ? formatV4(hi >>> 32) : formatV6(hi, lo)) + "/" + len;
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 address in {@code s[from, to)} into {@code out}:
+     * the high 64 bits in out[0], the low ones in out[1]; IPv4 fills the top
+     * 32 bits of out[0].
+     * @return 32 for IPv4, 128 for IPv6, or 0 if malformed
+     */
+    static int parseAddress(CharSequence s, int from, int to, long[] out) {
+        if (from >= to) return 0;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == ':') return parseV6(s, from, to, out) ? 128 : 0;
+        }
+        long v4 = parseV4(s, from, to);
+        if (v4 < 0) return 0;
+        out[0] = v4 << 32;
+        out[1] = 0L;
+        return 32;
+    }
+
+    /** @return the dotted-quad IPv4 address in {@code s[from, to)} as an unsigned value, or -1 if malformed. */
+    private static long parseV4(CharSequence s, int from, int to) {
+        long v = 0L;
+        int octets = 0;
+        int i = from;
+        while (true) {
+            int start = i, octet = 0;
+            while (i < to && i - start < 3) {
+                char ch = s.charAt(i);
+                if (ch < '0' || ch > '9') break;
+                octet = octet * 10 + (ch - '0');
+                i++;
+            }
+            if (i == start || octet > 255) return -1L;
+            v = (v << 8) | octet;
+            octets++;
+            if (i == to) break;
+            if (s.charAt(i) != '.' || octets == 4) return -1L;
+            i++;
+        }
+        return octets == 4 ? v : -1L;
+    }
+
+    /**
+     * Parse IPv6 text (hex groups, at most one {@code ::}, optionally a dotted
+     * IPv4 tail). Groups before the {@code ::} and after it are accumulated
+     * separately, then the head is shifted up past the zeros it stands for.
+     */
+    private static boolean parseV6(CharSequence s, int from, int to, long[] out) {
+        long headHi = 0L, headLo = 0L, tailHi = 0L, tailLo = 0L;
+        int groups = 0, headGroups = 0;
+        boolean gap = false;
+        int i = from;
+        if (s.charAt(i) == ':') {
+            if (to - i < 2 || s.charAt(i + 1) != ':') return false;
+            gap = true;
+            i += 2;
+        }
+        while (i < to) {
+            int start = i, g = 0;
+            while (i < to && i - start < 4) {
+                int d = Character.digit(s.charAt(i), 16);
+                if (d < 0) break;
+                g = (g << 4) | d;
+                i++;
+            }
+            int take = 1;
+            long value = g;
+            if (i < to && s.charAt(i) == '.') { // dotted IPv4 tail: two groups, and the end
+                value = parseV4(s, start, to);
+                if (value < 0) return false;
+                take = 2;
+                i = to;
+            } else if (i == start) {
+                return false;
+            }
+            if (groups + take > 8) return false;
+            groups += take;
+            if (gap) {
+                tailHi = (tailHi << (16 * take)) | (tailLo >>> (64 - 16 * take));
+                tailLo = (tailLo << (16 * take)) | value;
+            } else {
+                headHi = (headHi << (16 * take)) | (headLo >>> (64 - 16 * take));
+                headLo = (headLo << (16 * take)) | value;
+                headGroups = groups;
+            }
+            if (i == to) break;
+            if (s.charAt(i) != ':') return false;
+            i++;
+            if (i < to && s.charAt(i) == ':') {
+                if (gap) return false;
+                gap = true;
+                i++;
+            } else if (i == to) {
+                return false;
+            }
+        }
+        if (gap ? groups > 7 : groups != 8) return false;
+        for (int k = headGroups; k < 8; k++) {
+            headHi = (headHi << 16) | (headLo >>> 48);
+            headLo <<= 16;
+        }
+        out[0] = headHi | tailHi;
+        out[1] = headLo | tailLo;
+        return true;
+    }
+
+    private static String formatV4(long v) {
+        return ((v >>> 24) & 0xFF) + "." + ((v >>> 16) & 0xFF) + "." + ((v >>> 8) & 0xFF) + "." + (v & 0xFF);
+    }
+
+    /** RFC 5952: lower-case hex, no leading zeros, the longest run of two or more zero groups as {@code ::}. */
+    private static String formatV6(long hi, long lo) {
+        int[] g = new int[8];
+        for (int k = 0; k < 8; k++) g[k] = (int) (((k < 4 ? hi : lo) >>> (48 - 16 * (k & 3))) & 0xFFFF);
+        int bestAt = -1, bestLen = 1;
+        for (int k = 0; k < 8; ) {
+            if (g[k] != 0) { k++; continue; }
+            int run = k;
+            while (run < 8 && g[run] == 0) run++;
+            if (run - k > bestLen) { bestAt = k; bestLen = run - k; }
+            k = run;
+        }
+        StringBuilder sb = new StringBuilder(39);
+        for (int k = 0; k < 8; k++) {
+            if (k == bestAt) {
+                sb.append("::");
+                k += bestLen - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') sb.append(':');
+            sb.append(Integer.toHexString(g[k]));
+        }
+        return sb.toString();
+    }
+}
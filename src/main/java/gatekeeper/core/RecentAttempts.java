@@ -0,0 +1,174 @@
+package gatekeeper.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-capacity memory of recent denied attempts.
+ * <p>
+ * Two views, both preallocated so {@link #record} allocates nothing:
+ * <ul>
+ *   <li>a ring of the last N raw attempts (time, auth, name, address);</li>
+ *   <li>a bounded per-auth aggregation table (first/last seen, count, latest
+ *       name and address). When the table is full the least recently seen
+ *       auth is evicted, so one spamming client occupies one row instead of
+ *       pushing everyone else out.</li>
+ * </ul>
+ * Not thread-safe; {@link WhitelistManager} guards it with its monitor.
+ */
+final class RecentAttempts {
+    // --- ring of raw attempts
+    private final long[] times;
+    private final long[] auths;
+    private final String[] names;
+    private final String[] addresses;
+    private int head;  // index of the oldest attempt
+    private int count;
+
+    // --- per-auth aggregation (open addressing, linear probing)
+    private final int maxOffenders;
+    private final boolean[] used;
+    private final long[] keys;
+    private final long[] firstSeen;
+    private final long[] lastSeen;
+    private final int[] counts;
+    private final String[] lastNames;
+    private final String[] lastAddresses;
+    private final int mask;
+    private int offenders;
+
+    /**
+     * @param capacity number of raw attempts to keep
+     * @param maxOffenders number of distinct auths to aggregate
+     */
+    RecentAttempts(int capacity, int maxOffenders) {
+        times = new long[capacity];
+        auths = new long[capacity];
+        names = new String[capacity];
+        addresses = new String[capacity];
+        this.maxOffenders = maxOffenders;
+        int tableSize = Integer.highestOneBit(Math.max(2, maxOffenders) * 2 - 1) << 1; // >= 2x, power of two
+        used = new boolean[tableSize];
+        keys = new long[tableSize];
+        firstSeen = new long[tableSize];
+        lastSeen = new long[tableSize];
+        counts = new int[tableSize];
+        lastNames = new String[tableSize];
+        lastAddresses = new String[tableSize];
+        mask = tableSize - 1;
+    }
+
+    /** Record a denied attempt. Allocation-free. */
+    void record(long timeMs, long auth, String name, String address) {
+        int slot = (head + count) % times.length;
+        if (count == times.length) head = (head + 1) % times.length; else count++;
+        times[slot] = timeMs;
+        auths[slot] = auth;
+        names[slot] = name;
+        addresses[slot] = address;
+
+        int i = find(auth);
+        if (i < 0) {
+            if (offenders == maxOffenders) evictLeastRecent();
+            i = insertionSlot(auth);
+            used[i] = true;
+            keys[i] = auth;
+            firstSeen[i] = timeMs;
+            counts[i] = 0;
+            offenders++;
+        }
+        lastSeen[i] = timeMs;
+        if (counts[i] < Integer.MAX_VALUE) counts[i]++;
+        if (name != null && !name.isEmpty()) lastNames[i] = name;
+        if (address != null) lastAddresses[i] = address;
+    }
+
+    int size() { return count; }
+
+    /** @return true and the latest auth via {@code out[0]}, or false if empty. */
+    boolean lastAuth(long[] out) {
+        if (count == 0) return false;
+        out[0] = auths[(head + count - 1) % times.length];
+        return true;
+    }
+
+    /** @return copy of the raw attempts, oldest first. */
+    List<WhitelistManager.Attempt> attempts() {
+        List<WhitelistManager.Attempt> out = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            int i = (head + k) % times.length;
+            out.add(new WhitelistManager.Attempt(times[i], auths[i], names[i], addresses[i]));
+        }
+        return out;
+    }
+
+    /** @return aggregated offenders ordered by last attempt, most recent last. */
+    List<WhitelistManager.Offender> offenders() {
+        List<WhitelistManager.Offender> out = new ArrayList<>(offenders);
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                out.add(new WhitelistManager.Offender(keys[i], lastNames[i], lastAddresses[i], firstSeen[i], lastSeen[i], counts[i]));
+            }
+        }
+        out.sort((a, b) -> Long.compare(a.lastMs, b.lastMs));
+        return out;
+    }
+
+    private static int home(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int find(long auth) {
+        int i = home(auth, mask);
+        while (used[i]) {
+            if (keys[i] == auth) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insertionSlot(long auth) {
+        int i = home(auth, mask);
+        while (used[i]) i = (i + 1) & mask;
+        return i;
+    }
+
+    /** O(table) scan; the table is small and this only runs once it is full. */
+    private void evictLeastRecent() {
+        int victim = -1;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i] && (victim < 0 || lastSeen[i] < lastSeen[victim])) victim = i;
+        }
+        if (victim >= 0) delete(victim);
+    }
+
+    /** Backward-shift deletion keeps probe runs intact without tombstones. */
+    private void delete(int i) {
+        int j = i;
+        for (;;) {
+            j = (j + 1) & mask;
+            if (!used[j]) break;
+            int h = home(keys[j], mask);
+            boolean stays = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+            if (!stays) {
+                move(j, i);
+                i = j;
+            }
+        }
+        used[i] = false;
+        lastNames[i] = null;
+        lastAddresses[i] = null;
+        offenders--;
+    }
+
+    private void move(int from, int to) {
+        used[to] = true;
+        keys[to] = keys[from];
+        firstSeen[to] = firstSeen[from];
+        lastSeen[to] = lastSeen[from];
+        counts[to] = counts[from];
+        lastNames[to] = lastNames[from];
+        lastAddresses[to] = lastAddresses[from];
+    }
+}
@@ -0,0 +1,325 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A whitelist shared by several GateKeeper servers on one host, stored as
+ * {@code whitelist.shared} in a common folder.
+ * <p>
+ * Layout (big-endian): a 32-byte header of magic {@code GKS1}, 4 reserved
+ * bytes, {@code version:8}, {@code baseVersion:8}, {@code baseCount:4} and
+ * {@code crc32(base):4}; then the base, {@code baseCount} ascending SteamIDs
+ * as of {@code baseVersion}; then one 13-byte record per change since, in the
+ * journal's format ({@code [op:1][auth:8][crc32(op+auth):4]}). The version
+ * counts every change ever made and only grows. Change {@code v} sits at a
+ * fixed offset, so an instance that has seen version {@code v} checks the
+ * header and reads just the records after it instead of re-parsing the file.
+ * Records are written before the header's version is bumped; a crash between
+ * the two leaves a torn tail that the next writer overwrites.
+ * <p>
+ * All file access holds an exclusive {@link FileLock} on the sibling
+ * {@code whitelist.shared.lock}, plus a JVM-wide lock per file because file
+ * locks belong to the whole process. Every {@value #COMPACT_AFTER_RECORDS}
+ * records the file is rewritten with everything folded into the base, via a
+ * temp file and move; the version is unchanged.
+ * <p>
+ * Methods are synchronized; {@link WhitelistManager} drives each instance from
+ * one thread.
+ */
+final class SharedWhitelistStore {
+    static final String FILE_NAME = "whitelist.shared";
+    static final int COMPACT_AFTER_RECORDS = 4_096;
+
+    private static final byte[] MAGIC = {'G', 'K', 'S', '1'};
+    private static final int HEADER_BYTES = 32;
+    private static final int VERSION_OFFSET = 8;
+    private static final int RECORD_BYTES = 13;
+    private static final ConcurrentHashMap<String, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    /** The shared set at one version. */
+    static final class State {
+        final long version;
+        final long[] sorted;
+        State(long version, long[] sorted) { this.version = version; this.sorted = sorted; }
+    }
+
+    private static final class Header {
+        long version;
+        long baseVersion;
+        int baseCount;
+        int baseCrc;
+        boolean created; // nothing on disk yet
+
+        long recordsOffset() { return HEADER_BYTES + baseCount * 8L; }
+    }
+
+    private final File dir;
+    private final File file;
+    private final File lockFile;
+    private final ReentrantLock jvmLock;
+    private final CRC32 crc = new CRC32();
+    // The shared set as of version `seen`, which is -1 before the first exchange
+    private LongHashSet ids = new LongHashSet();
+    private long seen = -1L;
+
+    SharedWhitelistStore(File dir) {
+        this.dir = dir;
+        this.file = new File(dir, FILE_NAME);
+        this.lockFile = new File(dir, FILE_NAME + ".lock");
+        String key;
+        try {
+            key = lockFile.getCanonicalPath();
+        } catch (IOException e) {
+            key = lockFile.getAbsolutePath();
+        }
+        this.jvmLock = JVM_LOCKS.computeIfAbsent(key, k -> new ReentrantLock());
+    }
+
+    File dir() { return dir; }
+
+    /** @return the version the last exchange caught up to, or -1 before the first. */
+    synchronized long seenVersion() { return seen; }
+
+    /** @return the shared set as of the last exchange, without touching the file. */
+    synchronized State mirror() { return new State(seen, ids.toSortedArray()); }
+
+    /**
+     * Read the whole shared set, first seeding an empty store with
+     * {@code seed} (ascending) so the first server to share keeps its list.
+     * Does not advance this instance's {@link #seenVersion()}.
+     */
+    synchronized State attach(long[] seed) throws IOException {
+        jvmLock.lock();
+        try (FileChannel lc = openLock()) {
+            FileLock lock = lc.lock();
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                Header h = readHeader(ch);
+                if (h.version == 0 && seed.length > 0) {
+                    byte[] ops = new byte[seed.length];
+                    Arrays.fill(ops, WhitelistJournal.OP_ADD);
+                    append(ch, h, ops, seed, seed.length);
+                }
+                LongHashSet all = readAll(ch, h);
+                return new State(h.version, all.toSortedArray());
+            } finally {
+                lock.release();
+            }
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+
+    /**
+     * Append {@code ops[0, n)} ({@link WhitelistJournal#OP_ADD} or
+     * {@link WhitelistJournal#OP_REMOVE}) after catching up with changes from
+     * other instances, in one lock hold. With nothing to append and no newer
+     * version this reads only the header.
+     * @return how the shared set changed since the previous exchange, these ops
+     *         included; null on the first exchange, when there is nothing to
+     *         compare with and callers should take the whole set from {@link #mirror()}
+     */
+    synchronized WhitelistManager.FileDelta exchange(byte[] ops, long[] values, int n) throws IOException {
+        LongHashSet touched = new LongHashSet();
+        LongHashSet had = new LongHashSet();
+        boolean compact;
+        boolean first = seen < 0;
+        jvmLock.lock();
+        try (FileChannel lc = openLock()) {
+            FileLock lock = lc.lock();
+            try {
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    Header h = readHeader(ch);
+                    if (n == 0 && h.version == seen) return WhitelistManager.FileDelta.NONE;
+                    if (seen < h.baseVersion || h.version < seen) {
+                        // First exchange, compacted past what we saw, or the file was replaced
+                        LongHashSet fresh = readAll(ch, h);
+                        for (long id : ids.toSortedArray()) { touched.add(id); had.add(id); }
+                        for (long id : fresh.toSortedArray()) touched.add(id);
+                        ids = fresh;
+                    } else if (h.version > seen) {
+                        ByteBuffer buf = readRecords(ch, h, seen, h.version);
+                        while (buf.hasRemaining()) {
+                            byte op = buf.get();
+                            long id = buf.getLong();
+                            buf.getInt();
+                            note(touched, had, id);
+                            applyOp(ids, op, id);
+                        }
+                    }
+                    seen = h.version;
+                    if (n > 0) {
+                        append(ch, h, ops, values, n);
+                        for (int i = 0; i < n; i++) {
+                            note(touched, had, values[i]);
+                            applyOp(ids, ops[i], values[i]);
+                        }
+                        seen = h.version;
+                    }
+                    compact = h.version - h.baseVersion >= COMPACT_AFTER_RECORDS;
+                }
+                // With the data file closed, so the move also works on Windows
+                if (compact) compact();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            jvmLock.unlock();
+        }
+        return first ? null : delta(touched, had);
+    }
+
+    private FileChannel openLock() throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        return FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void note(LongHashSet touched, LongHashSet had, long id) {
+        if (touched.add(id) && ids.contains(id)) had.add(id);
+    }
+
+    private static void applyOp(LongHashSet set, byte op, long id) {
+        if (op == WhitelistJournal.OP_ADD) set.add(id);
+        else if (op == WhitelistJournal.OP_REMOVE) set.remove(id);
+    }
+
+    /** Net change for each touched SteamID: in the set now but not before, or the reverse. */
+    private WhitelistManager.FileDelta delta(LongHashSet touched, LongHashSet had) {
+        long[] all = touched.toSortedArray();
+        long[] added = new long[all.length];
+        long[] removed = new long[all.length];
+        int a = 0, r = 0;
+        for (long id : all) {
+            boolean now = ids.contains(id);
+            if (now && !had.contains(id)) added[a++] = id;
+            else if (!now && had.contains(id)) removed[r++] = id;
+        }
+        return new WhitelistManager.FileDelta(Arrays.copyOf(added, a), Arrays.copyOf(removed, r), null, null);
+    }
+
+    private Header readHeader(FileChannel ch) throws IOException {
+        Header h = new Header();
+        long size = ch.size();
+        if (size < HEADER_BYTES) {
+            // New, or crashed while creating it before anything was committed
+            h.created = true;
+            return h;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(ch, buf, 0);
+        for (byte b : MAGIC) {
+            if (buf.get() != b) throw new IOException("not a GateKeeper shared whitelist: " + file.getPath());
+        }
+        buf.getInt();
+        h.version = buf.getLong();
+        h.baseVersion = buf.getLong();
+        h.baseCount = buf.getInt();
+        h.baseCrc = buf.getInt();
+        if (h.baseCount < 0 || h.version < h.baseVersion
+                || h.recordsOffset() + (h.version - h.baseVersion) * RECORD_BYTES > size) {
+            throw new IOException("shared whitelist header does not match file size: " + file.getPath());
+        }
+        return h;
+    }
+
+    private static ByteBuffer header(long version, long baseVersion, int baseCount, int baseCrc) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+        buf.put(MAGIC).putInt(0).putLong(version).putLong(baseVersion).putInt(baseCount).putInt(baseCrc);
+        buf.flip();
+        return buf;
+    }
+
+    /** Base plus committed records. */
+    private LongHashSet readAll(FileChannel ch, Header h) throws IOException {
+        LongHashSet out = new LongHashSet(h.baseCount);
+        if (h.created) return out;
+        ByteBuffer base = ByteBuffer.allocate(h.baseCount * 8);
+        readFully(ch, base, HEADER_BYTES);
+        crc.reset();
+        crc.update(base.array(), 0, base.limit());
+        if ((int) crc.getValue() != h.baseCrc) throw new IOException("shared whitelist base checksum mismatch");
+        while (base.hasRemaining()) out.add(base.getLong());
+        ByteBuffer records = readRecords(ch, h, h.baseVersion, h.version);
+        while (records.hasRemaining()) {
+            byte op = records.get();
+            long id = records.getLong();
+            records.getInt();
+            applyOp(out, op, id);
+        }
+        return out;
+    }
+
+    /** Records for versions {@code (from, to]}, checksums verified. */
+    private ByteBuffer readRecords(FileChannel ch, Header h, long from, long to) throws IOException {
+        long count = to - from;
+        if (count > Integer.MAX_VALUE / RECORD_BYTES) throw new IOException("too many shared whitelist records: " + count);
+        ByteBuffer buf = ByteBuffer.allocate((int) count * RECORD_BYTES);
+        readFully(ch, buf, h.recordsOffset() + (from - h.baseVersion) * RECORD_BYTES);
+        for (int p = 0; p < buf.limit(); p += RECORD_BYTES) {
+            crc.reset();
+            crc.update(buf.array(), p, 9);
+            byte op = buf.get(p);
+            if ((op != WhitelistJournal.OP_ADD && op != WhitelistJournal.OP_REMOVE) || buf.getInt(p + 9) != (int) crc.getValue()) {
+                throw new IOException("corrupt shared whitelist record at version " + (from + 1 + p / RECORD_BYTES));
+            }
+        }
+        return buf;
+    }
+
+    /** Write records after the last committed one, then commit them by bumping the header's version. */
+    private void append(FileChannel ch, Header h, byte[] ops, long[] values, int n) throws IOException {
+        if (h.created) {
+            writeFully(ch, header(0L, 0L, 0, 0), 0);
+            h.created = false;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(n * RECORD_BYTES);
+        for (int i = 0; i < n; i++) {
+            int start = buf.position();
+            buf.put(ops[i]).putLong(values[i]);
+            crc.reset();
+            crc.update(buf.array(), start, 9);
+            buf.putInt((int) crc.getValue());
+        }
+        buf.flip();
+        writeFully(ch, buf, h.recordsOffset() + (h.version - h.baseVersion) * RECORD_BYTES);
+        ch.force(false);
+        h.version += n;
+        ByteBuffer version = ByteBuffer.allocate(8).putLong(h.version);
+        version.flip();
+        writeFully(ch, version, VERSION_OFFSET);
+        ch.force(false);
+    }
+
+    /** Rewrite the file as a base at the current version, from {@link #ids}. Caller holds the locks. */
+    private void compact() throws IOException {
+        long[] sorted = ids.toSortedArray();
+        ByteBuffer base = ByteBuffer.allocate(sorted.length * 8);
+        for (long id : sorted) base.putLong(id);
+        crc.reset();
+        crc.update(base.array(), 0, base.limit());
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + base.limit());
+        out.put(header(seen, seen, sorted.length, (int) crc.getValue())).put(base.array());
+        WriteBehind.writeAtomically(file, out.array());
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int r = ch.read(buf, pos);
+            if (r < 0) throw new IOException("truncated shared whitelist");
+            pos += r;
+        }
+        buf.flip();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+    }
+}
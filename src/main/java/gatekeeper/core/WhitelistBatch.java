@@ -0,0 +1,70 @@
+package gatekeeper.core;
+
+import java.util.Arrays;
+import necesse.engine.network.server.Server;
+
+/**
+ * A set of whitelist mutations applied atomically by {@link #commit()}.
+ * <p>
+ * Mutations are only collected until commit; then all of them are applied under
+ * one lock acquisition, published to access checks as a single snapshot (readers
+ * see all of them or none) and journaled as one write. Obtain one from
+ * {@link WhitelistManager#batch(Server)}. Not thread-safe; use from one thread.
+ */
+public final class WhitelistBatch {
+    private final WhitelistManager manager;
+    private final Server server;
+    private byte[] ops = new byte[16];
+    private long[] values = new long[16];
+    private long[] untils; // expiry times of addUntil mutations, once there is one
+    private int size;
+    private boolean committed;
+
+    WhitelistBatch(WhitelistManager manager, Server server) {
+        this.manager = manager;
+        this.server = server;
+    }
+
+    /** Queue adding a SteamID. @return position of this mutation in the {@link #commit()} result */
+    public int add(long auth) { return queue(WhitelistJournal.OP_ADD, auth); }
+
+    /**
+     * Queue adding a SteamID until {@code untilMs} (epoch ms), when it is removed again.
+     * @return position of this mutation in the {@link #commit()} result
+     */
+    public int addUntil(long auth, long untilMs) {
+        int at = queue(WhitelistJournal.OP_ADD_UNTIL, auth);
+        if (untils == null) untils = new long[ops.length];
+        untils[at] = untilMs;
+        return at;
+    }
+
+    /** Queue removing a SteamID. @return position of this mutation in the {@link #commit()} result */
+    public int remove(long auth) { return queue(WhitelistJournal.OP_REMOVE, auth); }
+
+    /** @return number of queued mutations. */
+    public int size() { return size; }
+
+    /**
+     * Apply every queued mutation, in order, as one transaction.
+     * @return per mutation, whether it changed the whitelist (false for adding a
+     *         present SteamID or removing an absent one)
+     */
+    public boolean[] commit() {
+        if (committed) throw new IllegalStateException("batch already committed");
+        committed = true;
+        return manager.apply(server, ops, values, untils, size);
+    }
+
+    private int queue(byte op, long auth) {
+        if (committed) throw new IllegalStateException("batch already committed");
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            if (untils != null) untils = Arrays.copyOf(untils, size * 2);
+        }
+        ops[size] = op;
+        values[size] = auth;
+        return size++;
+    }
+}
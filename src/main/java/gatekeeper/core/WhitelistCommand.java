@@ -5,10 +5,13 @@ package gatekeeper.core;
  * <p>
  * Provides administrative subcommands to manage the per-world whitelist:
  * enable/disable/status, lockdown, list, online, recent, approve-last, export,
- * add/remove (with approve/deny aliases), and helpers to approve recent attempts.
+ * add/remove (with approve/deny aliases), helpers to approve recent attempts,
+ * history queries over the denied-attempt audit index, name search,
+ * blocking whole networks by CIDR prefix, and GateKeeper's own metrics.
  */
 
-import java.util.Collections;
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -20,10 +23,11 @@ import necesse.engine.commands.parameterHandlers.RestStringParameterHandler;
 import necesse.engine.network.client.Client;
 import necesse.engine.network.server.Server;
 import necesse.engine.network.server.ServerClient;
-import necesse.engine.network.packet.PacketDisconnect;
+import necesse.engine.network.packet.PacketChatMessage;
 
 public class WhitelistCommand extends ModularChatCommand {
     private final WhitelistManager manager;
+    private static final int LIST_PAGE_SIZE = 20;
 
     /**
      * Constructs a whitelist command bound to the given manager.
@@ -65,8 +69,24 @@ public class WhitelistCommand extends ModularChatCommand {
                 logs.add("GateKeeper whitelist disabled");
                 break;
             case "status":
-                logs.add("Whitelist is " + (manager.isEnabled() ? "ENABLED" : "DISABLED"));
-                logs.add("Entries: " + manager.listAuths(server).size());
+                logs.add("Whitelist is " + (manager.isEnabled(server) ? "ENABLED" : "DISABLED"));
+                logs.add("Entries: " + manager.countAuths(server));
+                int timed = manager.countTimed(server);
+                if (timed > 0) logs.add("Timed entries: " + timed);
+                NetBlocklist nets = manager.getBlockedNetworks(server);
+                if (nets.size() > 0) logs.add("Blocked networks: " + nets.size() + " (" + nets.totalHits() + " connections refused)");
+                File sharedDir = manager.getSharedDirectory();
+                if (sharedDir != null) logs.add("Shared with other servers via " + sharedDir.getPath() + " (version " + manager.getSharedVersion() + ")");
+                long droppedLines = manager.getDroppedLogLines();
+                if (droppedLines > 0) logs.add("Denied-log lines dropped under load: " + droppedLines);
+                ConnectionThrottle throttle = manager.getConnectionThrottle();
+                logs.add("Flood limiter: " + throttle.allowedCount() + " denied, "
+                        + throttle.throttledByAuth() + " throttled by SteamID, "
+                        + throttle.throttledByAddress() + " throttled by address, "
+                        + throttle.activeBuckets() + " active buckets");
+                break;
+            case "stats":
+                handleStats(server, logs);
                 break;
             case "reload":
                 StringBuilder sb = new StringBuilder();
@@ -74,21 +94,24 @@ public class WhitelistCommand extends ModularChatCommand {
                 logs.add((ok ? "OK: " : "ERROR: ") + sb.toString());
                 break;
             case "list":
-                List<Long> auths = manager.listAuths(server);
-                Collections.sort(auths);
-                logs.add("Whitelisted users (" + auths.size() + "):");
-                for (Long a : auths) {
-                    String nm = manager.getNameByAuth(server, a);
-                    if (nm != null && !nm.isEmpty()) {
-                        logs.add(" - " + nm);
-                    } else {
-                        logs.add(" - <unknown> (" + a + ")");
-                    }
+                handleList(server, logs, parts);
+                break;
+            case "storage":
+                if (parts.length >= 2 && (parts[1].equalsIgnoreCase("binary") || parts[1].equalsIgnoreCase("json"))) {
+                    boolean binary = parts[1].equalsIgnoreCase("binary");
+                    manager.setBinarySnapshot(server, binary);
+                    logs.add("Whitelist snapshot will be stored as " + (binary ? "whitelist.bin (binary)" : "whitelist.json") + ".");
+                    manager.logAdminAction(server, "storage," + (binary ? "binary" : "json"));
+                } else if (parts.length >= 2) {
+                    logs.add("Usage: /whitelist storage [json|binary]");
+                } else {
+                    java.io.File snap = manager.getSnapshotFile(server);
+                    logs.add("Snapshot: " + (snap == null ? "none" : snap.getName() + (snap.exists() ? " (" + snap.length() + " bytes)" : " (not written yet)")));
                 }
                 break;
             case "lockdown":
                 if (parts.length == 1 || parts[1].equalsIgnoreCase("status")) {
-                    logs.add("Lockdown is " + (manager.isLockdown() ? "ON" : "OFF"));
+                    logs.add("Lockdown is " + (manager.isLockdown(server) ? "ON" : "OFF"));
                 } else if (parts[1].equalsIgnoreCase("on")) {
                     manager.setLockdown(server, true);
                     logs.add("Lockdown enabled: only whitelisted players can join; notifications suppressed.");
@@ -100,43 +123,29 @@ public class WhitelistCommand extends ModularChatCommand {
                 }
                 break;
             case "online":
-                for (int i = 0; i < server.getSlots(); i++) {
-                    ServerClient c = server.getClient(i);
-                    if (c != null) {
-                        String nm = c.getName();
-                        logs.add("#" + (i + 1) + ": " + (nm == null || nm.isEmpty() ? "<unknown>" : nm) + " perm=" + c.getPermissionLevel());
-                    }
+                for (ServerClient c : manager.getClientRegistry().online(server)) {
+                    String nm = c.getName();
+                    logs.add("#" + (c.slot + 1) + ": " + (nm == null || nm.isEmpty() ? "<unknown>" : nm) + " perm=" + c.getPermissionLevel());
                 }
                 break;
             case "recent":
                 if (parts.length >= 3 && parts[1].equalsIgnoreCase("approve")) {
-                    try {
-                        int idx = Integer.parseInt(parts[2]);
-                        java.util.List<gatekeeper.core.WhitelistManager.Attempt> list = manager.getRecentAttempts();
-                        if (idx < 1 || idx > list.size()) { logs.add("Index out of range"); break; }
-                        gatekeeper.core.WhitelistManager.Attempt at = list.get(idx - 1);
-                        long authIdx = at.auth;
-                        boolean addedIdx = manager.addAuth(server, authIdx);
-                        String who = at.name == null || at.name.isEmpty() ? ("<unknown> (" + authIdx + ")") : at.name;
-                        logs.add((addedIdx ? "Approved" : "Already whitelisted") + ": " + who);
-                        break;
-                    } catch (NumberFormatException ex) {
-                        logs.add("Usage: /whitelist recent approve <index>");
-                        break;
-                    }
+                    handleRecentApprove(server, logs, parts);
+                    break;
                 }
-                java.util.List<gatekeeper.core.WhitelistManager.Attempt> list = manager.getRecentAttempts();
+                java.util.List<gatekeeper.core.WhitelistManager.Offender> list = manager.getRecentOffenders();
                 if (list.isEmpty()) { logs.add("No recent denied attempts."); break; }
                 int shown = 0;
                 int start = Math.max(0, list.size() - 10);
+                long nowMs = System.currentTimeMillis();
                 for (int i = start; i < list.size(); i++) {
-                    gatekeeper.core.WhitelistManager.Attempt a = list.get(i);
-                    long ageSec = (System.currentTimeMillis() - a.timeMs) / 1000;
-                    String who = (a.name == null || a.name.isEmpty()) ? "<unknown>" : a.name;
-                    logs.add((i + 1) + ". " + who + " " + ageSec + "s ago " + (a.address == null ? "" : ("[" + a.address + "]")));
+                    gatekeeper.core.WhitelistManager.Offender o = list.get(i);
+                    String who = (o.name == null || o.name.isEmpty()) ? "<unknown>" : o.name;
+                    String times = o.count == 1 ? "" : (" x" + o.count + " since " + formatAge(nowMs - o.firstMs) + " ago,");
+                    logs.add((i + 1) + ". " + who + times + " last " + formatAge(nowMs - o.lastMs) + " ago " + (o.address == null ? "" : ("[" + o.address + "]")));
                     shown++;
                 }
-                logs.add("Shown " + shown + "/" + list.size() + ". Use '/whitelist recent approve <index>' to approve.");
+                logs.add("Shown " + shown + "/" + list.size() + ". Use '/whitelist recent approve <index>' (or 1-5, 2,4) to approve.");
                 break;
             case "approve-last":
                 Long last = manager.getLastDeniedAuth();
@@ -147,75 +156,424 @@ public class WhitelistCommand extends ModularChatCommand {
                 logs.add((addedLast ? "Approved" : "Already whitelisted") + ": " + whoText);
                 break;
             case "export":
-                int count = manager.exportKnownPlayers(server);
-                java.io.File dir = manager.getConfigDir(server);
-                logs.add("Exported " + count + " known players to " + new java.io.File(dir, "known_players.txt").getPath());
+                handleExport(server, serverClient, logs, parts);
+                break;
+            case "history":
+                handleHistory(server, logs, parts);
+                break;
+            case "import":
+                if (parts.length < 2) { logs.add("Usage: /whitelist import <file> (CSV/text or JSON; relative to the world's GateKeeper folder)"); break; }
+                String importPath = rest.substring(parts[0].length()).trim(); // keep spaces in file names
+                try {
+                    int[] r = manager.importAuths(server, importPath);
+                    logs.add("Imported " + importPath + ": " + r[0] + " added, " + r[1] + " duplicate, " + r[2] + " invalid");
+                    manager.logAdminAction(server, "import," + importPath + "," + r[0] + "," + r[1] + "," + r[2]);
+                } catch (java.io.IOException | RuntimeException ex) {
+                    logs.add("Import failed: " + ex.getMessage());
+                }
+                break;
+            case "search":
+                if (parts.length < 2) { logs.add("Usage: /whitelist search <name fragment>"); break; }
+                List<WhitelistManager.NameMatch> found = manager.searchNames(server, parts[1], 10);
+                if (found.isEmpty()) { logs.add("No known names match '" + parts[1] + "'."); break; }
+                for (int i = 0; i < found.size(); i++) {
+                    WhitelistManager.NameMatch m = found.get(i);
+                    String tag = manager.isListed(server, m.auth) ? ", whitelisted" : "";
+                    logs.add((i + 1) + ". " + m.name + " (" + describe(m.source) + tag + ")");
+                }
+                break;
+            case "block-net":
+                handleBlockNet(server, logs, parts);
+                break;
+            case "unblock-net":
+                if (parts.length < 2) { logs.add("Usage: /whitelist unblock-net <cidr> [more ...]"); break; }
+                for (int i = 1; i < parts.length; i++) {
+                    String cidr = NetBlocklist.canonical(parts[i]);
+                    if (cidr == null) { logs.add(invalidNetwork(parts[i])); continue; }
+                    boolean removed = manager.unblockNetwork(server, cidr);
+                    logs.add((removed ? "Unblocked: " : "Not blocked: ") + cidr);
+                    if (removed) manager.logAdminAction(server, "unblock_net," + cidr);
+                }
                 break;
             case "add":
             case "approve":
-                if (parts.length < 2) { logs.add("Usage: /whitelist add <auth|name>"); break; }
-                handleAdd(server, logs, parts[1]);
+                if (parts.length < 2) { logs.add("Usage: /whitelist add <auth|name> [more ...] [for <duration>]"); break; }
+                handleAdd(server, logs, Arrays.copyOfRange(parts, 1, parts.length));
                 break;
             case "remove":
             case "deny":
-                if (parts.length < 2) { logs.add("Usage: /whitelist remove <auth|name>"); break; }
-                handleRemove(server, logs, parts[1]);
+                if (parts.length < 2) { logs.add("Usage: /whitelist remove <auth|name> [more ...]"); break; }
+                handleRemove(server, logs, Arrays.copyOfRange(parts, 1, parts.length));
                 break;
             default:
                 printHelp(logs);
         }
     }
 
-    /** Handle adding by SteamID or resolving a known name to SteamID. */
-    private void handleAdd(Server server, CommandLog logs, String token) {
-        try {
-            long auth = Long.parseLong(token);
-            boolean added = manager.addAuth(server, auth);
-            String who = manager.getNameByAuth(server, auth);
-            String out = (who == null || who.isEmpty()) ? ("(" + auth + ")") : who;
-            logs.add((added ? "Added" : "Already present") + ": " + out);
-        } catch (NumberFormatException nfe) {
-            Long auth = manager.findAuthByName(server, token);
-            if (auth != null) {
-                boolean added = manager.addAuth(server, auth);
-                // Remember the exact input casing as last-known name
-                manager.rememberName(auth, token);
-                logs.add((added ? "Added" : "Already present") + ": " + token);
+    /** List whitelisted players a page at a time, optionally only online, unnamed or timed ones. */
+    private void handleList(Server server, CommandLog logs, String[] parts) {
+        int page = 1;
+        String filter = null;
+        for (int i = 1; i < parts.length; i++) {
+            String p = parts[i].toLowerCase(Locale.ENGLISH);
+            if (p.equals("online") || p.equals("unknown") || p.equals("timed")) { filter = p; continue; }
+            try {
+                page = Integer.parseInt(p);
+            } catch (NumberFormatException ex) {
+                logs.add("Usage: /whitelist list [page] [online|unknown|timed]");
+                return;
+            }
+        }
+
+        long[] ids = manager.sortedAuths(server);
+        WhitelistManager.NameMatch[] names = null;
+        if ("online".equals(filter)) {
+            List<ServerClient> online = manager.getClientRegistry().online(server);
+            long[] hits = new long[online.size()];
+            int n = 0;
+            for (ServerClient c : online) {
+                if (manager.isListed(server, c.authentication)) hits[n++] = c.authentication;
+            }
+            ids = Arrays.copyOf(hits, n);
+            Arrays.sort(ids);
+        } else if ("unknown".equals(filter)) {
+            WhitelistManager.NameMatch[] all = manager.resolveAuths(server, ids, 0, ids.length);
+            long[] hits = new long[ids.length];
+            int n = 0;
+            for (int i = 0; i < ids.length; i++) if (all[i] == null || all[i].name == null || all[i].name.isEmpty()) hits[n++] = ids[i];
+            ids = Arrays.copyOf(hits, n);
+            names = new WhitelistManager.NameMatch[n]; // all unknown
+        } else if ("timed".equals(filter)) {
+            long[] hits = new long[ids.length];
+            int n = 0;
+            for (long id : ids) if (manager.getExpiry(server, id) > 0) hits[n++] = id;
+            ids = Arrays.copyOf(hits, n);
+        }
+
+        int pages = Math.max(1, (ids.length + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE);
+        page = Math.min(Math.max(1, page), pages);
+        int from = (page - 1) * LIST_PAGE_SIZE;
+        int to = Math.min(ids.length, from + LIST_PAGE_SIZE);
+        if (names == null) names = manager.resolveAuths(server, ids, from, to);
+        else names = Arrays.copyOfRange(names, from, to);
+
+        logs.add("Whitelisted users (" + ids.length + (filter == null ? "" : ", " + filter) + "), page " + page + "/" + pages + ":");
+        long now = System.currentTimeMillis();
+        for (int i = from; i < to; i++) {
+            WhitelistManager.NameMatch m = names[i - from];
+            long until = manager.getExpiry(server, ids[i]);
+            String expires = until > 0 ? " (expires in " + formatAge(until - now) + ")" : "";
+            if (m != null && m.name != null && !m.name.isEmpty()) {
+                logs.add(" - " + m.name + expires);
             } else {
-                logs.add("Could not resolve name '" + token + "' to a SteamID. Ask them to connect once or provide their SteamID.");
+                logs.add(" - <unknown> (" + ids[i] + ")" + expires);
             }
         }
+        if (pages > 1) logs.add("Use '/whitelist list <page> [online|unknown|timed]' for more.");
     }
 
-    /** Remove a SteamID (or resolve a name to SteamID) and kick connected matches. */
-    private void handleRemove(Server server, CommandLog logs, String token) {
-        Long authToRemove = null;
-        try { authToRemove = Long.parseLong(token); } catch (NumberFormatException ignore) {
-            authToRemove = manager.findAuthByName(server, token);
+    /** Print connection outcomes, persistence counts and latency percentiles from the manager's metrics. */
+    private void handleStats(Server server, CommandLog logs) {
+        Metrics m = manager.getMetrics();
+        if (!m.isEnabled()) { logs.add("Metrics are disabled (server started with -Dgatekeeper.metrics=false)."); return; }
+        logs.add("Connections: " + m.connectsAllowed.get() + " allowed, " + m.connectsPrivileged.get() + " admins, "
+                + m.connectsDenied.get() + " denied, " + m.connectsThrottled.get() + " throttled, "
+                + m.connectsBlockedNetwork.get() + " blocked network");
+        logs.add("Admin notices: " + m.notifications.get() + " sent, " + m.digests.get() + " digests; compactions: "
+                + m.compactions.get() + "; name cache save requests: " + m.nameCacheSaves.get());
+        for (Metrics.Timer t : m.timers()) {
+            long[] counts = t.counts();
+            long n = 0;
+            for (long c : counts) n += c;
+            if (n == 0) { logs.add(t.label + ": no calls"); continue; }
+            logs.add(t.label + ": " + n + " calls, avg " + formatMicros(t.sumNanos() / n / 1_000L)
+                    + ", p50 " + formatBound(Metrics.Timer.quantileBoundUs(counts, 0.50))
+                    + ", p99 " + formatBound(Metrics.Timer.quantileBoundUs(counts, 0.99)));
         }
-        if (authToRemove == null) { logs.add("Could not resolve '" + token + "' to a SteamID"); return; }
-        boolean removed = manager.removeAuth(server, authToRemove);
-        String who = manager.getNameByAuth(server, authToRemove);
-        String out = (who == null || who.isEmpty()) ? ("(" + authToRemove + ")") : who;
-        logs.add((removed ? "Removed" : "Not present") + ": " + out);
-        if (removed) {
-            for (int i = 0; i < server.getSlots(); i++) {
-                ServerClient c = server.getClient(i);
-                if (c != null && c.authentication == authToRemove) {
-                    String nm = c.getName();
-                    server.disconnectClient(c, PacketDisconnect.kickPacket(c.slot, "Removed from whitelist"));
-                    manager.logAdminAction(server, "kick_on_remove," + authToRemove + "," + (nm == null ? "" : nm));
+        File prom = manager.getMetricsFile(server);
+        if (prom != null) logs.add("Prometheus text file: " + prom.getPath() + " (every " + WhitelistManager.METRICS_EXPORT_MS / 1000 + " s)");
+    }
+
+    private static String formatBound(long us) { return us < 0 ? "> 1 s" : "<= " + formatMicros(us); }
+
+    /** Format microseconds as {@code 42 µs}, {@code 2.5 ms} or {@code 1.2 s}. */
+    static String formatMicros(long us) {
+        if (us < 1_000L) return us + " µs";
+        if (us < 1_000_000L) return String.format(Locale.ROOT, "%.1f ms", us / 1e3);
+        return String.format(Locale.ROOT, "%.1f s", us / 1e6);
+    }
+
+    /** Block networks by CIDR prefix, or without arguments list them with their hit counts. */
+    private void handleBlockNet(Server server, CommandLog logs, String[] parts) {
+        if (parts.length < 2) {
+            NetBlocklist nets = manager.getBlockedNetworks(server);
+            if (nets.size() == 0) { logs.add("No networks blocked. Usage: /whitelist block-net <cidr> [more ...]"); return; }
+            logs.add("Blocked networks (" + nets.size() + "):");
+            for (int i = 0; i < nets.size(); i++) logs.add(" - " + nets.cidr(i) + ": " + nets.hits(i) + " hits");
+            return;
+        }
+        for (int i = 1; i < parts.length; i++) {
+            String cidr = NetBlocklist.canonical(parts[i]);
+            if (cidr == null) { logs.add(invalidNetwork(parts[i])); continue; }
+            boolean added = manager.blockNetwork(server, cidr);
+            logs.add((added ? "Blocked: " : "Already blocked: ") + cidr);
+            if (added) manager.logAdminAction(server, "block_net," + cidr);
+        }
+    }
+
+    private static String invalidNetwork(String text) {
+        return "Invalid network '" + text + "'. Use e.g. 203.0.113.0/24, 198.51.100.7 or 2001:db8::/32.";
+    }
+
+    /** Handle adding SteamIDs or known names, all in one batch; a trailing {@code for <duration>} makes them timed. */
+    private void handleAdd(Server server, CommandLog logs, String[] tokens) {
+        long untilMs = 0L;
+        String expires = "";
+        if (tokens.length >= 2 && tokens[tokens.length - 2].equalsIgnoreCase("for")) {
+            String spec = tokens[tokens.length - 1];
+            long span = parseDuration(spec);
+            if (span < 0) { logs.add("Invalid duration '" + spec + "'. Use e.g. 30m, 12h, 7d."); return; }
+            if (tokens.length == 2) { logs.add("Usage: /whitelist add <auth|name> [more ...] [for <duration>]"); return; }
+            untilMs = System.currentTimeMillis() + span;
+            expires = " (expires in " + spec + ")";
+            tokens = Arrays.copyOf(tokens, tokens.length - 2);
+        }
+        WhitelistBatch batch = manager.batch(server);
+        String[] labels = new String[tokens.length];
+        int[] positions = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            positions[i] = -1;
+            try {
+                long auth = Long.parseLong(token);
+                String who = manager.getNameByAuth(server, auth);
+                labels[i] = (who == null || who.isEmpty()) ? ("(" + auth + ")") : who;
+                positions[i] = untilMs > 0 ? batch.addUntil(auth, untilMs) : batch.add(auth);
+            } catch (NumberFormatException nfe) {
+                WhitelistManager.NameMatch match = manager.resolveName(server, token);
+                if (match != null) {
+                    // Remember the exact input casing as last-known name
+                    manager.rememberName(server, match.auth, token);
+                    labels[i] = token + " (" + describe(match.source) + ")";
+                    positions[i] = untilMs > 0 ? batch.addUntil(match.auth, untilMs) : batch.add(match.auth);
+                } else {
+                    logs.add("Could not resolve name '" + token + "' to a SteamID. Ask them to connect once or provide their SteamID.");
+                    suggest(server, logs, token);
+                }
+            }
+        }
+        if (batch.size() == 0) return;
+        boolean[] added = batch.commit();
+        for (int i = 0; i < tokens.length; i++) {
+            if (positions[i] >= 0) logs.add(added[positions[i]] ? "Added: " + labels[i] + expires : "Already present: " + labels[i]);
+        }
+    }
+
+    /** Approve recent offenders by printed index: {@code 3}, {@code 1-5}, {@code 2,4} or several of these. */
+    private void handleRecentApprove(Server server, CommandLog logs, String[] parts) {
+        List<WhitelistManager.Offender> list = manager.getRecentOffenders();
+        WhitelistBatch batch = manager.batch(server);
+        List<WhitelistManager.Offender> picked = new java.util.ArrayList<>();
+        boolean[] seen = new boolean[list.size()];
+        try {
+            for (int p = 2; p < parts.length; p++) {
+                for (String spec : parts[p].split(",")) {
+                    if (spec.isEmpty()) continue;
+                    int dash = spec.indexOf('-', 1);
+                    int from = Integer.parseInt(dash < 0 ? spec : spec.substring(0, dash));
+                    int to = dash < 0 ? from : Integer.parseInt(spec.substring(dash + 1));
+                    if (from < 1 || to > list.size() || from > to) { logs.add("Index out of range: " + spec); return; }
+                    for (int idx = from; idx <= to; idx++) {
+                        if (seen[idx - 1]) continue;
+                        seen[idx - 1] = true;
+                        picked.add(list.get(idx - 1));
+                        batch.add(list.get(idx - 1).auth);
+                    }
                 }
             }
+        } catch (NumberFormatException ex) {
+            logs.add("Usage: /whitelist recent approve <index|from-to>[,...]");
+            return;
         }
+        boolean[] added = batch.commit();
+        for (int i = 0; i < picked.size(); i++) {
+            WhitelistManager.Offender at = picked.get(i);
+            String who = at.name == null || at.name.isEmpty() ? ("<unknown> (" + at.auth + ")") : at.name;
+            logs.add((added[i] ? "Approved" : "Already whitelisted") + ": " + who);
+        }
+    }
+
+    /** Print close matches for a name that did not resolve exactly. */
+    private void suggest(Server server, CommandLog logs, String token) {
+        List<WhitelistManager.NameMatch> candidates = manager.searchNames(server, token, 5);
+        if (candidates.isEmpty()) return;
+        StringBuilder sb = new StringBuilder("Did you mean: ");
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(candidates.get(i).name);
+        }
+        logs.add(sb.append('?').toString());
+    }
+
+    /** @return how a name was resolved, for command output. */
+    private static String describe(WhitelistManager.NameSource source) {
+        switch (source) {
+            case ONLINE: return "online player";
+            case SAVED: return "saved player";
+            default: return "last seen connecting";
+        }
+    }
+
+    /** Remove SteamIDs (or names resolved to SteamIDs) in one batch, then kick connected matches in one pass. */
+    private void handleRemove(Server server, CommandLog logs, String[] tokens) {
+        WhitelistBatch batch = manager.batch(server);
+        long[] auths = new long[tokens.length];
+        int[] positions = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            positions[i] = -1;
+            Long auth;
+            try { auth = Long.parseLong(token); } catch (NumberFormatException ignore) {
+                auth = manager.findAuthByName(server, token);
+            }
+            if (auth == null) {
+                logs.add("Could not resolve '" + token + "' to a SteamID");
+                suggest(server, logs, token);
+                continue;
+            }
+            auths[i] = auth;
+            positions[i] = batch.remove(auth);
+        }
+        if (batch.size() == 0) return;
+        boolean[] removed = batch.commit();
+        LongHashSet kick = new LongHashSet();
+        for (int i = 0; i < tokens.length; i++) {
+            if (positions[i] < 0) continue;
+            boolean gone = removed[positions[i]];
+            if (gone) kick.add(auths[i]);
+            String who = manager.getNameByAuth(server, auths[i]);
+            String out = (who == null || who.isEmpty()) ? ("(" + auths[i] + ")") : who;
+            logs.add((gone ? "Removed" : "Not present") + ": " + out);
+        }
+        manager.kickRemoved(server, kick);
+    }
+
+    /**
+     * Start a background export; the admin who ran it (or the console) is told
+     * when it finishes, since the command itself returns right away.
+     */
+    private void handleExport(Server server, ServerClient serverClient, CommandLog logs, String[] parts) {
+        KnownPlayersExport.Format format = KnownPlayersExport.Format.TXT;
+        KnownPlayersExport.Filter filter = KnownPlayersExport.Filter.ALL;
+        for (int i = 1; i < parts.length; i++) {
+            KnownPlayersExport.Format f = KnownPlayersExport.Format.parse(parts[i]);
+            KnownPlayersExport.Filter fl = KnownPlayersExport.Filter.parse(parts[i]);
+            if (f != null) format = f;
+            else if (fl != null) filter = fl;
+            else { logs.add("Usage: /whitelist export [txt|csv|jsonl] [all|whitelisted|not-whitelisted]"); return; }
+        }
+        java.io.File dir = manager.getConfigDir(server);
+        if (dir == null) { logs.add("No world loaded; nothing to export."); return; }
+        String path = WhitelistManager.exportFile(dir, format).getPath();
+        String what = filter.name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+        String how = format.name().toLowerCase(Locale.ENGLISH);
+        logs.add("Exporting known players (" + what + ") to " + path + " in the background...");
+        manager.exportKnownPlayers(server, format, filter).whenComplete((count, err) -> {
+            String msg = err == null
+                    ? "[GateKeeper] Exported " + count + " known players to " + path
+                    : "[GateKeeper] Export to " + path + " failed: " + (err.getCause() != null ? err.getCause() : err);
+            if (serverClient != null) serverClient.sendPacket(new PacketChatMessage(msg));
+            else System.out.println(msg);
+            manager.logAdminAction(server, "export," + how + "," + what + ","
+                    + (err == null ? String.valueOf(count) : "failed"));
+        });
+    }
+
+    /** Answer history queries from the audit index: by name/SteamID, or the top offenders. */
+    private void handleHistory(Server server, CommandLog logs, String[] parts) {
+        if (parts.length < 2) { logs.add("Usage: /whitelist history <name|auth> [since] | history top [since]"); return; }
+        long sinceMs = 0L;
+        String sinceText = "";
+        if (parts.length >= 3) {
+            long span = parseDuration(parts[2]);
+            if (span < 0) { logs.add("Invalid duration '" + parts[2] + "'. Use e.g. 30m, 12h, 7d."); return; }
+            sinceMs = System.currentTimeMillis() - span;
+            sinceText = " in last " + parts[2];
+        }
+        long now = System.currentTimeMillis();
+        if (parts[1].equalsIgnoreCase("top")) {
+            List<WhitelistManager.Offender> top = manager.getTopOffenders(server, 10, sinceMs);
+            if (top.isEmpty()) { logs.add("No denied attempts recorded" + sinceText + "."); return; }
+            logs.add("Top denied SteamIDs" + sinceText + ":");
+            for (int i = 0; i < top.size(); i++) {
+                WhitelistManager.Offender o = top.get(i);
+                String who = (o.name == null || o.name.isEmpty()) ? ("<unknown> (" + o.auth + ")") : o.name;
+                logs.add((i + 1) + ". " + who + " x" + o.count + ", last " + formatAge(now - o.lastMs) + " ago"
+                        + (o.address == null ? "" : (" [" + o.address + "]")));
+            }
+            return;
+        }
+        Long auth;
+        try { auth = Long.parseLong(parts[1]); } catch (NumberFormatException ignore) {
+            auth = manager.findAuthByName(server, parts[1]);
+        }
+        if (auth == null) { logs.add("Could not resolve '" + parts[1] + "' to a SteamID"); return; }
+        int total = manager.countAuditAttempts(server, auth, sinceMs);
+        if (total == 0) { logs.add("No denied attempts for " + parts[1] + sinceText + "."); return; }
+        List<WhitelistManager.Attempt> hist = manager.getAuditHistory(server, auth, sinceMs, 10);
+        logs.add("Denied attempts for " + parts[1] + sinceText + ": " + total + " (showing last " + hist.size() + ")");
+        for (WhitelistManager.Attempt a : hist) {
+            String who = (a.name == null || a.name.isEmpty()) ? "<unknown>" : a.name;
+            logs.add(" - " + formatAge(now - a.timeMs) + " ago as " + who + (a.address == null ? "" : (" [" + a.address + "]")));
+        }
+    }
+
+    /**
+     * Parse a duration like {@code 45s}, {@code 30m}, {@code 12h}, {@code 7d} or {@code 2w}.
+     * @return milliseconds, or -1 if malformed
+     */
+    static long parseDuration(String text) {
+        if (text == null || text.length() < 2) return -1L;
+        long unit;
+        switch (Character.toLowerCase(text.charAt(text.length() - 1))) {
+            case 's': unit = 1_000L; break;
+            case 'm': unit = 60_000L; break;
+            case 'h': unit = 3_600_000L; break;
+            case 'd': unit = 86_400_000L; break;
+            case 'w': unit = 7 * 86_400_000L; break;
+            default: return -1L;
+        }
+        try {
+            long n = Long.parseLong(text.substring(0, text.length() - 1));
+            if (n <= 0 || n > Long.MAX_VALUE / unit) return -1L;
+            return n * unit;
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /** Format an age in the largest whole unit, e.g. {@code 42s}, {@code 5m}, {@code 3h}, {@code 2d}. */
+    static String formatAge(long ms) {
+        long sec = Math.max(0L, ms) / 1000;
+        if (sec < 120) return sec + "s";
+        if (sec < 2 * 3600) return (sec / 60) + "m";
+        if (sec < 2 * 86400) return (sec / 3600) + "h";
+        return (sec / 86400) + "d";
     }
 
     /** Print summarized command help to the server log. */
     private void printHelp(CommandLog logs) {
-        logs.add("/whitelist enable|disable|status|reload|lockdown [on|off|status]");
-        logs.add("/whitelist list|online|recent|approve-last|export");
-        logs.add("/whitelist add <auth|name> (prefer name; we resolve to SteamID)");
-        logs.add("/whitelist remove <auth|name> (deny alias; prefer name)");
-        logs.add("/whitelist recent approve <index>");
+        logs.add("/whitelist enable|disable|status|stats|reload|lockdown [on|off|status]");
+        logs.add("/whitelist list [page] [online|unknown|timed]");
+        logs.add("/whitelist storage [json|binary] (snapshot file format)");
+        logs.add("/whitelist online|recent|approve-last");
+        logs.add("/whitelist export [txt|csv|jsonl] [all|whitelisted|not-whitelisted] (runs in the background)");
+        logs.add("/whitelist add <auth|name> [more ...] [for <duration>] (prefer name; we resolve to SteamID; duration: 30m, 12h, 7d)");
+        logs.add("/whitelist remove <auth|name> [more ...] (deny alias; prefer name)");
+        logs.add("/whitelist recent approve <index|from-to>[,...]");
+        logs.add("/whitelist history <name|auth> [since] | history top [since] (since: 30m, 12h, 7d)");
+        logs.add("/whitelist import <file> (bulk add SteamIDs from CSV/text or JSON)");
+        logs.add("/whitelist search <name fragment> (prefix, partial or misspelled names)");
+        logs.add("/whitelist block-net [<cidr> ...] | unblock-net <cidr> ... (refuse IPv4/IPv6 networks; no args lists hits)");
     }
 }
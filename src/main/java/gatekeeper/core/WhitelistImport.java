@@ -0,0 +1,126 @@
+package gatekeeper.core;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Streaming reader for SteamID lists exported by other servers and bots.
+ * <p>
+ * Accepts JSON (any nesting of arrays and objects; array elements and values of
+ * id-like keys such as {@code "auth"}, {@code "steamid"} or {@code "id"} are
+ * taken, so GateKeeper's own whitelist.json works too) and line-oriented
+ * CSV/plain text (the first all-digit field on each line; blank lines,
+ * {@code #} comments and a header line are skipped). The format is picked from
+ * the first non-blank character. Files are read token by token, so memory does
+ * not depend on file size; only the parsed SteamIDs are kept.
+ */
+final class WhitelistImport {
+    /** Individual-account SteamID64 range (universe 1, type 1, instance 1). */
+    static final long STEAMID64_MIN = 76561197960265728L;
+    static final long STEAMID64_MAX = 76561202255233023L;
+
+    /** Valid SteamIDs parsed so far; repeats within the file are counted in {@link #duplicates}. */
+    final LongHashSet ids = new LongHashSet();
+    int duplicates;
+    int invalid;
+
+    static boolean isValidSteamId(long id) {
+        return id >= STEAMID64_MIN && id <= STEAMID64_MAX;
+    }
+
+    /** Parse a file; the results accumulate in this instance. */
+    WhitelistImport read(File file) throws IOException {
+        try (PushbackReader in = new PushbackReader(new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)), 1)) {
+            int c;
+            do { c = in.read(); } while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+            if (c == -1) return this;
+            in.unread(c);
+            if (c == '[' || c == '{') readJson(in); else readLines(new BufferedReader(in));
+        }
+        return this;
+    }
+
+    private void readJson(Reader in) throws IOException {
+        JsonReader json = new JsonReader(in);
+        json.setStrictness(Strictness.LENIENT);
+        readValue(json, true);
+    }
+
+    /** Walk one JSON value; {@code take} says whether a primitive here is a SteamID candidate. */
+    private void readValue(JsonReader json, boolean take) throws IOException {
+        JsonToken t = json.peek();
+        switch (t) {
+            case BEGIN_ARRAY:
+                json.beginArray();
+                while (json.hasNext()) readValue(json, true);
+                json.endArray();
+                break;
+            case BEGIN_OBJECT:
+                json.beginObject();
+                while (json.hasNext()) readValue(json, isIdKey(json.nextName()));
+                json.endObject();
+                break;
+            case NUMBER:
+            case STRING:
+                String text = json.nextString();
+                if (take) accept(text.trim());
+                break;
+            default:
+                json.skipValue();
+        }
+    }
+
+    private static boolean isIdKey(String name) {
+        String k = name.toLowerCase(Locale.ENGLISH).replace("_", "");
+        return k.equals("auth") || k.equals("id") || k.equals("ids") || k.equals("steamid")
+                || k.equals("steamid64") || k.equals("steamids") || k.equals("whitelist");
+    }
+
+    private void readLines(BufferedReader in) throws IOException {
+        String line;
+        boolean first = true;
+        while ((line = in.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            String field = firstNumericField(trimmed);
+            if (field != null) accept(field);
+            else if (!first) invalid++; // a first line without numbers is a header
+            first = false;
+        }
+    }
+
+    /** @return the first field made only of digits (fields split on , ; tab or spaces, quotes stripped). */
+    private static String firstNumericField(String line) {
+        for (String raw : line.split("[,;\\t ]+")) {
+            String f = raw.replace("\"", "").trim();
+            if (f.isEmpty()) continue;
+            boolean digits = true;
+            for (int i = 0; i < f.length() && digits; i++) digits = Character.isDigit(f.charAt(i));
+            if (digits) return f;
+        }
+        return null;
+    }
+
+    private void accept(String text) {
+        long id;
+        try {
+            id = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            invalid++;
+            return;
+        }
+        if (!isValidSteamId(id)) invalid++;
+        else if (!ids.add(id)) duplicates++;
+    }
+}
@@ -0,0 +1,206 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of whitelist mutations stored next to whitelist.json.
+ * <p>
+ * File layout: 4-byte magic {@code GKJ1}, then records of
+ * {@code [op:1][payload][crc32(op+payload):4]} where the payload length is
+ * fixed per op ({@link #OP_ADD_UNTIL} carries the SteamID and its expiry time,
+ * the others one value). whitelist.json is the compacted snapshot; on load the journal
+ * is replayed on top of it. A torn trailing record (crash mid-append) fails the
+ * length or checksum check and is truncated away.
+ * <p>
+ * Mutators append into an in-memory buffer under this object's monitor; only
+ * the background writer touches the file after load.
+ */
+final class WhitelistJournal {
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_ENABLED = 3;
+    static final byte OP_LOCKDOWN = 4;
+    // Whitelist until a time (epoch ms); OP_ADD makes an entry permanent again
+    static final byte OP_ADD_UNTIL = 5;
+
+    private static final byte[] MAGIC = {'G', 'K', 'J', '1'};
+    private static final int CRC_BYTES = 4;
+
+    /** Receives replayed mutations in journal order. */
+    interface Replay {
+        void add(long auth);
+        void remove(long auth);
+        void enabled(boolean on);
+        void lockdown(boolean on);
+        void addUntil(long auth, long untilMs);
+    }
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(512);
+    private int pendingRecords;
+    private int fileRecords; // writer thread only (and load, before the writer sees this journal)
+    private volatile boolean compactionRequested;
+
+    WhitelistJournal(File file) { this.file = file; }
+
+    File file() { return file; }
+
+    private static int payloadLength(byte op) {
+        switch (op) {
+            case OP_ADD:
+            case OP_REMOVE:
+                return 8;
+            case OP_ADD_UNTIL:
+                return 16;
+            case OP_ENABLED:
+            case OP_LOCKDOWN:
+                return 1;
+            default:
+                return -1;
+        }
+    }
+
+    /** Buffer a record for the next {@link #write}. Caller holds this journal's monitor. */
+    void append(byte op, long value) { append(op, value, 0L); }
+
+    /** As {@link #append(byte, long)}, with the expiry time of an {@link #OP_ADD_UNTIL}. */
+    void append(byte op, long value, long untilMs) {
+        int len = payloadLength(op);
+        if (pending.remaining() < 1 + len + CRC_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        int start = pending.position();
+        pending.put(op);
+        if (len == 16) pending.putLong(value).putLong(untilMs);
+        else if (len == 8) pending.putLong(value);
+        else pending.put((byte) (value != 0 ? 1 : 0));
+        crc.reset();
+        crc.update(pending.array(), start, 1 + len);
+        pending.putInt((int) crc.getValue());
+        pendingRecords++;
+    }
+
+    /** Take the buffered records. Caller holds this journal's monitor. */
+    ByteBuffer drainPending() {
+        if (pendingRecords == 0) return null;
+        pending.flip();
+        ByteBuffer out = ByteBuffer.allocate(pending.remaining());
+        out.put(pending).flip();
+        pending.clear();
+        pendingRecords = 0;
+        return out;
+    }
+
+    /**
+     * Append a drained batch to the file and force it to disk.
+     * @return records in the file since the last compaction
+     */
+    int write(ByteBuffer batch) throws IOException {
+        if (batch == null || !batch.hasRemaining()) return fileRecords;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = ch.size();
+            if (end < MAGIC.length) {
+                ch.truncate(0);
+                ch.write(ByteBuffer.wrap(MAGIC), 0);
+                end = MAGIC.length;
+            }
+            int records = countRecords(batch);
+            while (batch.hasRemaining()) end += ch.write(batch, end);
+            ch.force(false);
+            fileRecords += records;
+        }
+        return fileRecords;
+    }
+
+    /** Drop all records after a successful compaction into whitelist.json. */
+    void reset() throws IOException {
+        if (!file.exists()) return;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ch.truncate(MAGIC.length);
+            ch.force(false);
+        }
+        fileRecords = 0;
+    }
+
+    void requestCompaction() { compactionRequested = true; }
+
+    /** @return true once per {@link #requestCompaction()} call. */
+    boolean takeCompactionRequest() {
+        if (!compactionRequested) return false;
+        compactionRequested = false;
+        return true;
+    }
+
+    /**
+     * Replay all intact records into {@code target}, truncating a torn or corrupt tail.
+     * @return number of records replayed
+     * @throws IOException if the file is unreadable or is not a GateKeeper journal
+     */
+    int replay(Replay target) throws IOException {
+        fileRecords = 0;
+        if (!file.exists()) return 0;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("journal too large: " + size);
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+            buf.flip();
+            if (buf.remaining() < MAGIC.length) {
+                // Crashed while creating the file
+                ch.truncate(0);
+                return 0;
+            }
+            for (byte b : MAGIC) if (buf.get() != b) throw new IOException("not a GateKeeper journal: " + file.getName());
+            int good = buf.position();
+            int replayed = 0;
+            while (buf.hasRemaining()) {
+                int start = buf.position();
+                byte op = buf.get();
+                int len = payloadLength(op);
+                if (len < 0 || buf.remaining() < len + CRC_BYTES) break;
+                crc.reset();
+                crc.update(buf.array(), start, 1 + len);
+                long value = len >= 8 ? buf.getLong() : buf.get();
+                long untilMs = len == 16 ? buf.getLong() : 0L;
+                if (buf.getInt() != (int) crc.getValue()) break;
+                apply(target, op, value, untilMs);
+                replayed++;
+                good = buf.position();
+            }
+            if (good < size) {
+                ch.truncate(good);
+                System.err.println("GateKeeper: Truncated " + (size - good) + " trailing bytes from " + file.getName());
+            }
+            fileRecords = replayed;
+            return replayed;
+        }
+    }
+
+    private static void apply(Replay target, byte op, long value, long untilMs) {
+        switch (op) {
+            case OP_ADD_UNTIL: target.addUntil(value, untilMs); break;
+            case OP_ADD: target.add(value); break;
+            case OP_REMOVE: target.remove(value); break;
+            case OP_ENABLED: target.enabled(value != 0); break;
+            case OP_LOCKDOWN: target.lockdown(value != 0); break;
+            default: break;
+        }
+    }
+
+    private static int countRecords(ByteBuffer batch) {
+        int n = 0;
+        for (int p = batch.position(); p < batch.limit(); n++) p += 1 + payloadLength(batch.get(p)) + CRC_BYTES;
+        return n;
+    }
+}
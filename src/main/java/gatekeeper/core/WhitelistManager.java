@@ -3,51 +3,180 @@ package gatekeeper.core;
 /**
  * Manages GateKeeper whitelist state and persistence per world.
  * <p>
- * - Persists whitelist next to the world save.
+ * - Persists whitelist next to the world save: mutations go to an append-only
+ *   journal (written behind, off-thread) that is compacted into whitelist.json
+ *   every {@value #COMPACT_AFTER_RECORDS} records and on {@link #flush()}.
  * - Enforces auth-only access (SteamID64).
- * - Tracks denied attempts and writes audit logs.
+ * - Tracks denied attempts and writes audit logs, including an indexed
+ *   binary history ({@link AuditStore}) for {@code /whitelist history}.
  * - Provides lookups between auth and last-known name.
  * <p>
- * Thread-safety: public methods synchronize on this instance.
+ * Thread-safety: mutators synchronize on this instance. Access decisions read an
+ * immutable {@link Snapshot} published through a volatile field, so connection
+ * checks never wait on the monitor or touch the filesystem.
+ * <p>
+ * State is kept per world ({@link WorldState}) for the {@value #WORLD_CACHE_MAX}
+ * most recently used worlds, so moving between worlds does not reload them.
+ * <p>
+ * Optionally the SteamID list is shared with other servers on the host through
+ * a {@link SharedWhitelistStore} ({@link #setSharedDirectory(File)}); each
+ * world keeps its own files as a local copy and its own enabled/lockdown flags.
  */
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import necesse.engine.network.packet.PacketDisconnect;
 import necesse.engine.network.server.Server;
-import necesse.engine.world.World;
+import necesse.engine.network.server.ServerClient;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 
 public class WhitelistManager {
-    // Per-world computed config path
-    private File configDir;
-    private File configFile;
-    private File nameCacheFile;
-    private long currentWorldId = Long.MIN_VALUE;
-
-    private final Set<Long> authIds = new HashSet<>();
-    private boolean enabled = false;
-    private boolean lockdown = false;
-
-    // in-memory rate limit for notifications (auth -> lastMillis)
-    private final Map<Long, Long> lastNotify = new HashMap<>();
+    // Loaded worlds by unique ID, least recently used first. Switching back to a
+    // loaded world is a map lookup; the least recently used one is flushed and
+    // dropped once more than WORLD_CACHE_MAX are loaded.
+    static final int WORLD_CACHE_MAX = 4;
+    private final LinkedHashMap<Long, WorldState> worlds = new LinkedHashMap<>(8, 0.75f, true);
+    // The same states for lock-free lookups from access checks
+    private final ConcurrentHashMap<Long, WorldState> loadedWorlds = new ConcurrentHashMap<>();
+    // The world the latest call was for; a file-less placeholder until a world is seen
+    private WorldState world = new WorldState(Long.MIN_VALUE, null);
+    // Loads started ahead of first use by warmUp, until installed in worlds
+    private final ConcurrentHashMap<Long, CompletableFuture<WorldState>> warming = new ConcurrentHashMap<>();
+    // Evicted worlds whose last writes are still queued; taken back instead of re-read while the files change
+    private final ConcurrentHashMap<Long, WorldState> landing = new ConcurrentHashMap<>();
+
+    /**
+     * Immutable view of the access-decision state for one world. Rebuilt
+     * copy-on-write by {@link #publish(WorldState)} after every mutation or load.
+     * The SteamID set is a base shared between snapshots plus an overlay of the
+     * SteamIDs added and removed since the base was copied (see {@link WorldState#addId}).
+     */
+    static final class Snapshot {
+        private static final LongHashSet NONE = new LongHashSet();
+        static final Snapshot EMPTY = new Snapshot(Long.MIN_VALUE, false, false, new LongHashSet());
+        final long worldId;
+        final boolean enabled;
+        final boolean lockdown;
+        // Never mutated after publication
+        private final Base base;
+        private final LongHashSet added;   // not in base
+        private final LongHashSet removed; // in base
+        private final boolean overlay;
+        // Expiry time (epoch ms) of timed entries; unmodifiable, shared until expiries change.
+        // Access checks never look at it: entries leave the set when they expire.
+        final Map<Long, Long> expiries;
+        final NetBlocklist blockedNetworks; // checked before the SteamIDs
+        private volatile long[] sorted; // ascending view of the SteamIDs, built on first use
+        Snapshot(long worldId, boolean enabled, boolean lockdown, LongHashSet authIds) {
+            this(worldId, enabled, lockdown, new Base(authIds), NONE, NONE, Collections.emptyMap(), NetBlocklist.EMPTY);
+        }
+        Snapshot(long worldId, boolean enabled, boolean lockdown, Base base, LongHashSet added, LongHashSet removed,
+                 Map<Long, Long> expiries, NetBlocklist blockedNetworks) {
+            this.worldId = worldId; this.enabled = enabled; this.lockdown = lockdown;
+            this.base = base; this.added = added; this.removed = removed;
+            this.overlay = !added.isEmpty() || !removed.isEmpty();
+            this.expiries = expiries; this.blockedNetworks = blockedNetworks;
+        }
+        /** @return true if the SteamID is on this snapshot's whitelist. Allocation-free. */
+        boolean contains(long auth) {
+            if (!overlay) return base.ids.contains(auth);
+            return added.contains(auth) || (!removed.contains(auth) && base.ids.contains(auth));
+        }
+        int size() { return base.ids.size() + added.size() - removed.size(); }
+        /** Built at most once per snapshot; racing callers may both build it, with identical results. */
+        long[] sortedAuths() {
+            long[] s = sorted;
+            if (s == null) sorted = s = toSortedArray();
+            return s;
+        }
+        /** Merges the base's shared sorted view with the sorted overlay: linear in the list, not a full sort. */
+        private long[] toSortedArray() {
+            long[] from = base.sorted();
+            if (!overlay) return from;
+            long[] extra = added.toSortedArray();
+            long[] out = new long[size()];
+            int i = 0, j = 0, n = 0;
+            while (i < from.length || j < extra.length) {
+                if (j == extra.length || (i < from.length && from[i] < extra[j])) {
+                    long id = from[i++];
+                    if (!removed.contains(id)) out[n++] = id;
+                } else {
+                    out[n++] = extra[j++];
+                }
+            }
+            return out;
+        }
+
+        /**
+         * A published copy of a world's SteamIDs and its ascending view. Every
+         * snapshot taken before the world next rebases shares one, so the view
+         * is sorted once per base rather than once per mutation.
+         */
+        static final class Base {
+            final LongHashSet ids; // never mutated after publication
+            private volatile long[] sorted;
+            Base(LongHashSet ids) { this.ids = ids; }
+            int size() { return ids.size(); }
+            long[] sorted() {
+                long[] s = sorted;
+                if (s == null) sorted = s = ids.toSortedArray();
+                return s;
+            }
+        }
+    }
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    // Background persistence; bursts of mutations within the delay become one write
+    private static final long SAVE_DELAY_MS = 250L;
+    static final int COMPACT_AFTER_RECORDS = 1_000;
+    private static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private final WriteBehind writer;
+
+    // in-memory rate limit for notifications (auth -> lastMillis), oldest first.
+    // Bounded and pruned by age so floods of unique SteamIDs can't grow it.
+    static final int NOTIFY_STATE_MAX = 1_024;
+    private final LinkedHashMap<Long, Long> lastNotify = new LinkedHashMap<Long, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) { return size() > NOTIFY_STATE_MAX; }
+    };
     private long lastGlobalNotify = 0L;
     private static final long NOTIFY_GLOBAL_MIN_INTERVAL_MS = 3_000L;
 
+    // Denials that did not get their own notification, summarized for admins once per window
+    private static final int DIGEST_MAX_NAMES = 5;
+    private final String[] digestNames = new String[DIGEST_MAX_NAMES];
+    private int digestNameCount;
+    private boolean digestNamesTruncated;
+    private int digestCount;
+    private long digestStartMs;
+
     // recent denied attempts (most recent last)
     public static class Attempt {
         public final long timeMs;
@@ -58,171 +187,1053 @@ public class WhitelistManager {
             this.timeMs = timeMs; this.auth = auth; this.name = name; this.address = address;
         }
     }
-    private final LinkedList<Attempt> recent = new LinkedList<>();
     private static final int RECENT_MAX = 50;
+    private static final int RECENT_OFFENDERS_MAX = 256;
+    private final RecentAttempts recent = new RecentAttempts(RECENT_MAX, RECENT_OFFENDERS_MAX);
+    private final long[] lastAuthOut = new long[1];
+
+    /** Where a name resolution came from. */
+    public enum NameSource { ONLINE, SAVED, CACHE }
+
+    /** A resolved name/SteamID pair and the source that knew it. */
+    public static class NameMatch {
+        public final long auth;
+        public final String name;
+        public final NameSource source;
+        public NameMatch(long auth, String name, NameSource source) {
+            this.auth = auth; this.name = name; this.source = source;
+        }
+    }
+
+    /** Aggregated denied attempts for one SteamID. {@code name}/{@code address} are the latest seen. */
+    public static class Offender {
+        public final long auth;
+        public final String name;
+        public final String address;
+        public final long firstMs;
+        public final long lastMs;
+        public final int count;
+        public Offender(long auth, String name, String address, long firstMs, long lastMs, int count) {
+            this.auth = auth; this.name = name; this.address = address;
+            this.firstMs = firstMs; this.lastMs = lastMs; this.count = count;
+        }
+    }
+
+    // The name cache is best-effort, so it is debounced much longer than whitelist.json
+    private static final long NAME_CACHE_SAVE_DELAY_MS = 5_000L;
+    private final long nameCacheDelayMs;
+
+    // denied_log.txt / admin_log.txt: appended off-thread, rotated at 10 MiB keeping 5 files
+    private static final int LOG_RING_CAPACITY = 8_192;
+    private static final long LOG_MAX_BYTES = 10L * 1024 * 1024;
+    private static final int LOG_RETENTION = 5;
+    private final AsyncLogAppender logAppender =
+            new AsyncLogAppender("GateKeeper-log", LOG_RING_CAPACITY, LOG_MAX_BYTES, LOG_RETENTION);
+
+    // Counters and latency histograms; written as gatekeeper.prom in the current world's folder
+    static final long METRICS_EXPORT_MS = 15_000L;
+    static final String METRICS_FILE_NAME = "gatekeeper.prom";
+    private final Metrics metrics;
+    private final AtomicBoolean metricsExporting = new AtomicBoolean();
+    private final ScheduledExecutorService metricsExport = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-metrics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Token buckets in front of the deny path, so reconnect loops get a cheap kick
+    private final ConnectionThrottle throttle = new ConnectionThrottle();
+    // Connected clients by SteamID and permission, for admin fan-out and kicks
+    private final ClientRegistry clients = new ClientRegistry();
+    // Exports format and write on their own thread so they never hold up persistence
+    private final ExecutorService exporter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-export");
+        t.setDaemon(true);
+        return t;
+    });
+    // Drives each loaded world's ExpiryWheel once timed entries exist
+    private final AtomicBoolean expiryTicking = new AtomicBoolean();
+    private final ScheduledExecutorService expiryTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-expiry");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService warmer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-warmup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Optional whitelist shared with other servers on this host. Local adds and
+    // removes are queued under the monitor and exchanged on the shared thread,
+    // which also polls the store's version for changes made elsewhere.
+    static final long SHARED_POLL_MS = 1_000L;
+    private static final long SHARED_PUSH_DELAY_MS = 100L;
+    private volatile SharedWhitelistStore shared;
+    private byte[] sharedOps = new byte[16];
+    private long[] sharedValues = new long[16];
+    private int sharedCount;
+    // SteamIDs with queued local changes; incoming changes to them are older and skipped
+    private final LongHashSet sharedPendingIds = new LongHashSet();
+    private boolean sharedPushQueued;
+    private ScheduledFuture<?> sharedPoll;
+    private String sharedError; // shared thread only
+    private final ScheduledExecutorService sharedSync = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-shared");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public WhitelistManager() { this(SAVE_DELAY_MS, true); }
+
+    /** @param metricsEnabled false to skip all counting and timing (see {@link Metrics}) */
+    public WhitelistManager(boolean metricsEnabled) { this(SAVE_DELAY_MS, metricsEnabled); }
+
+    WhitelistManager(long saveDelayMs) { this(saveDelayMs, true); }
 
-    // Cached bidirectional name/auth mapping (for ergonomics only)
-    private final Map<Long, String> authToName = new HashMap<>();
-    private final Map<String, Long> nameToAuth = new HashMap<>(); // lower-cased name -> auth
+    /** @param saveDelayMs how long persistence waits to coalesce further mutations */
+    WhitelistManager(long saveDelayMs, boolean metricsEnabled) {
+        this.writer = new WriteBehind("GateKeeper-writer", saveDelayMs);
+        this.nameCacheDelayMs = Math.max(saveDelayMs, NAME_CACHE_SAVE_DELAY_MS);
+        this.metrics = new Metrics(metricsEnabled);
+    }
 
     /**
-     * @return true if whitelist is enabled; when disabled all connects are allowed.
+     * @return true if whitelist is enabled for the current world; when disabled all connects are allowed.
+     */
+    public boolean isEnabled() { return snapshot.enabled; }
+    /**
+     * Lock-free like {@link #isWhitelisted}, and correct before the server's world
+     * has become current (e.g. right after {@link #warmUp}).
+     * @return true if whitelist is enabled for the server's world
      */
-    public boolean isEnabled() { return enabled; }
+    public boolean isEnabled(Server server) { return snapshotFor(server).enabled; }
     /**
      * Enable/disable the whitelist for the current world.
      * @param server Server providing the active world
      * @param value new enabled state
      */
-    public void setEnabled(Server server, boolean value) { ensureWorld(server); enabled = value; saveInternal(); }
-    /** Ensure config paths for the given server world are initialized and loaded. */
-    private void ensureWorld(Server server) {
-        if (server == null || server.world == null) return;
+    public synchronized void setEnabled(Server server, boolean value) { WorldState w = ensureWorld(server); w.enabled = value; commit(w, WhitelistJournal.OP_ENABLED, value ? 1 : 0); }
+    /**
+     * Make the server's world current, loading it on first use.
+     * Caller holds the monitor.
+     * @return the current world's state
+     */
+    private WorldState ensureWorld(Server server) {
+        if (server == null || server.world == null) return world;
         long wid = server.world.getUniqueID();
-        if (wid == currentWorldId && configFile != null) return;
-        File worldPath = server.world.filePath;
-        if (World.isWorldADirectory(worldPath)) {
-            configDir = new File(worldPath, "GateKeeper");
+        if (wid == world.worldId) return world;
+        WorldState w = worlds.get(wid); // also marks it most recently used
+        if (w == null) {
+            w = landing.remove(wid);
+            if (w == null) w = takeWarmedUp(wid);
+            if (w == null) {
+                w = new WorldState(wid, WorldState.configDirFor(server.world));
+                loadInternal(w);
+                publish(w);
+            }
+            install(w);
+        }
+        w.server = server;
+        world = w;
+        snapshot = w.snapshot;
+        return w;
+    }
+
+    /** @return the state loaded by {@link #warmUp} for a world, waiting for it if still loading; null if none. */
+    private WorldState takeWarmedUp(long wid) {
+        CompletableFuture<WorldState> f = warming.remove(wid);
+        if (f == null) return null;
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            return null; // load it here instead
+        }
+    }
+
+    /** Add a loaded world to the cache, evicting the least recently used one. Caller holds the monitor. */
+    private void install(WorldState w) {
+        worlds.put(w.worldId, w);
+        loadedWorlds.put(w.worldId, w);
+        SharedWhitelistStore store = shared;
+        if (store != null && w.sharedVersion < store.seenVersion()) {
+            // Loaded before the latest exchange, so that exchange's changes missed it
+            adoptShared(w, store.mirror());
+        }
+        ConfigWatcher watcher = ConfigWatcher.shared();
+        if (watcher != null) w.watch = watcher.watch(w.configDir, w.configFile.getName(), () -> hotReload(w));
+        startMetricsExport();
+        if (worlds.size() <= WORLD_CACHE_MAX) return;
+        for (long wid : worlds.keySet()) {
+            if (wid != world.worldId) { // never the world callers are using
+                evict(wid);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop a loaded world and have the writer land its pending writes in its own
+     * files. Caller holds the monitor, so this does not wait for the disk; until
+     * the writes have run, using the world again takes this state back rather
+     * than reading files the writer is still replacing.
+     */
+    private void evict(long wid) {
+        WorldState w = worlds.remove(wid);
+        loadedWorlds.remove(wid);
+        if (w.watch != null) w.watch.cancel();
+        if (w.journal != null) {
+            w.journal.requestCompaction();
+            scheduleSync(w);
+        }
+        landing.put(wid, w);
+        CompletableFuture<Void> landed = writer.flushAsync();
+        w.landed = landed;
+        // Unless it was taken back and evicted again, with newer writes queued
+        landed.thenRun(() -> { if (w.landed == landed) landing.remove(wid, w); });
+    }
+
+    /**
+     * Load and index a world's whitelist and name cache on a background thread,
+     * ahead of its first connection, and log how long that took. Access checks
+     * for that world arriving meanwhile wait for this load only; the monitor is
+     * not held while files are read.
+     * @return completes once the world is ready (at once if it is already loaded)
+     */
+    public CompletableFuture<Void> warmUp(Server server) {
+        if (server == null || server.world == null) return CompletableFuture.completedFuture(null);
+        long wid = server.world.getUniqueID();
+        CompletableFuture<WorldState> f;
+        synchronized (this) {
+            if (loadedWorlds.containsKey(wid)) return CompletableFuture.completedFuture(null);
+            WorldState back = landing.remove(wid);
+            if (back != null) {
+                install(back);
+                return CompletableFuture.completedFuture(null);
+            }
+            f = warming.get(wid);
+            if (f != null) return f.thenApply(w -> null);
+            f = new CompletableFuture<>();
+            warming.put(wid, f);
+        }
+        File dir = WorldState.configDirFor(server.world);
+        CompletableFuture<WorldState> load = f;
+        warmer.execute(() -> {
+            long start = System.nanoTime();
+            WorldState w = new WorldState(wid, dir);
+            w.server = server;
+            try {
+                loadInternal(w);
+                w.snapshot = snapshotOf(w);
+            } catch (RuntimeException e) {
+                warming.remove(wid, load);
+                load.completeExceptionally(e);
+                return;
+            }
+            load.complete(w);
+            System.out.println("GateKeeper: Loaded world " + wid + " in " + (System.nanoTime() - start) / 1_000_000 + " ms ("
+                    + w.authIds.size() + " whitelisted, " + w.names.cachedNames.size() + " cached names)");
+            synchronized (this) {
+                // Unless a caller already took it over
+                if (warming.remove(wid, load)) install(w);
+            }
+        });
+        return f.thenApply(w -> null);
+    }
+
+    /** @return number of worlds whose state is held in memory. */
+    synchronized int loadedWorldCount() { return worlds.size(); }
+
+    /** @return the loaded state of the server's world without making it current, or null if it isn't loaded. */
+    WorldState loadedWorld(Server server) { return loadedWorlds.get(server.world.getUniqueID()); }
+
+    /** Publish a world's in-memory state as the snapshot read by access checks. Caller holds the monitor. */
+    private void publish(WorldState w) {
+        w.snapshot = snapshotOf(w);
+        if (w == world) snapshot = w.snapshot;
+    }
+
+    /**
+     * Caller holds the monitor (or owns {@code w}). Copies the SteamID set only
+     * when there is no shared base yet; otherwise copies just the overlay, which
+     * {@link WorldState} keeps to about the square root of the set's size.
+     */
+    private static Snapshot snapshotOf(WorldState w) {
+        if (w.expiryView == null) w.expiryView = Collections.unmodifiableMap(w.expiries.toMap());
+        if (w.publishedBase == null) {
+            w.publishedBase = new Snapshot.Base(new LongHashSet(w.authIds));
+            return new Snapshot(w.worldId, w.enabled, w.lockdown, w.publishedBase, Snapshot.NONE, Snapshot.NONE,
+                    w.expiryView, w.blockedNetworks);
+        }
+        return new Snapshot(w.worldId, w.enabled, w.lockdown, w.publishedBase,
+                w.addedSinceBase.isEmpty() ? Snapshot.NONE : new LongHashSet(w.addedSinceBase),
+                w.removedSinceBase.isEmpty() ? Snapshot.NONE : new LongHashSet(w.removedSinceBase),
+                w.expiryView, w.blockedNetworks);
+    }
+
+    /**
+     * @return the published snapshot for the server's world: the current one, any
+     *         other loaded world's without locking, the one being warmed up once
+     *         it is ready, or else after loading it.
+     */
+    private Snapshot snapshotFor(Server server) {
+        Snapshot s = snapshot;
+        if (server == null || server.world == null) return s;
+        long wid = server.world.getUniqueID();
+        if (s.worldId == wid) return s;
+        WorldState w = loadedWorlds.get(wid);
+        if (w != null) return w.snapshot;
+        CompletableFuture<WorldState> f = warming.get(wid);
+        if (f != null) {
+            try {
+                return f.join().snapshot;
+            } catch (CompletionException e) {
+                // Warm-up failed; load below
+            }
+        }
+        synchronized (this) {
+            return ensureWorld(server).snapshot;
+        }
+    }
+
+    /** Load whitelist.json plus its journal from disk into memory (create dir if missing). */
+    private void loadInternal(WorldState w) {
+        if (!w.configDir.exists()) w.configDir.mkdirs();
+        // A binary snapshot, once written, is the one in use
+        w.binarySnapshot = w.binaryFile.exists();
+        loadBlockedNetworks(w);
+        try {
+            // No snapshot file yet means defaults; any journal is replayed either way
+            readSnapshot(w, w);
+            w.fileBase = snapshotOf(w);
+            replayJournal(w);
+            loadNameCache(w);
+            attachShared(w);
+            if (w.expiries.size() > 0) {
+                // Entries that ran out while the world was not loaded must not let anyone in
+                expireDue(w, System.currentTimeMillis());
+                startExpiryTicker();
+            }
+        } catch (IOException | JsonSyntaxException e) {
+            // Malformed or unreadable: keep defaults and rename broken file.
+            // The journal only makes sense on top of that snapshot, so set it aside too.
+            applyConfig(w, new WhitelistConfig());
+            w.fileBase = snapshotOf(w);
+            File broken = w.snapshotFile();
+            String renamed = renameBroken(broken);
+            renameBroken(w.journal.file());
+            System.err.println("GateKeeper: Failed to parse " + broken.getName() + "; kept defaults. Renamed broken file to: " + renamed);
+            attachShared(w);
+        }
+    }
+
+    /**
+     * Read {@code files}' compacted snapshot (whitelist.bin or whitelist.json,
+     * defaults if absent) into {@code into}'s flags and SteamID set.
+     */
+    private static void readSnapshot(WorldState files, WorldState into) throws IOException, JsonSyntaxException {
+        if (files.binarySnapshot) {
+            into.clearIds();
+            Map<Long, Long> expiries = new HashMap<>();
+            int flags = WhitelistSnapshotFile.read(files.binaryFile, into.authIds, expiries);
+            into.enabled = (flags & WhitelistSnapshotFile.FLAG_ENABLED) != 0;
+            into.lockdown = (flags & WhitelistSnapshotFile.FLAG_LOCKDOWN) != 0;
+            setExpiries(into, expiries);
         } else {
-            String baseName = World.getWorldDisplayName(worldPath.getName());
-            configDir = new File(worldPath.getParentFile(), baseName + ".GateKeeper");
-        }
-        configFile = new File(configDir, "whitelist.json");
-        nameCacheFile = new File(configDir, "name_cache.json");
-        currentWorldId = wid;
-        loadInternal();
-    }
-
-    /** Load whitelist.json from disk into memory (create if missing). */
-    private synchronized void loadInternal() {
-        if (configDir == null || configFile == null) return;
-        if (!configDir.exists()) configDir.mkdirs();
-        if (!configFile.exists()) {
-            // No file present yet; keep defaults
-            // Still try to load name cache if present
-            loadNameCache();
+            applyConfig(into, files.configFile.exists() ? readConfig(files.configFile) : new WhitelistConfig());
+        }
+    }
+
+    /** Replay journal records on top of the loaded snapshot; torn tails are truncated by the journal. */
+    private void replayJournal(WorldState w) {
+        try {
+            w.journal.replay(new WhitelistJournal.Replay() {
+                @Override public void add(long auth) { w.addId(auth); clearExpiry(w, auth); }
+                @Override public void remove(long auth) { w.removeId(auth); clearExpiry(w, auth); }
+                @Override public void addUntil(long auth, long untilMs) { w.addId(auth); setExpiry(w, auth, untilMs); }
+                @Override public void enabled(boolean on) { w.enabled = on; }
+                @Override public void lockdown(boolean on) { w.lockdown = on; }
+            });
+        } catch (IOException e) {
+            String renamed = renameBroken(w.journal.file());
+            System.err.println("GateKeeper: Failed to read whitelist.journal; ignored it. Renamed to: " + renamed);
+        }
+    }
+
+    /**
+     * Publish the mutated state and journal the mutation. Caller holds the monitor.
+     * Both happen under the journal lock so the writer always captures a snapshot
+     * that reflects exactly the records it has drained.
+     */
+    private void commit(WorldState w, byte op, long value) {
+        WhitelistJournal j = w.journal;
+        if (j == null) {
+            publish(w);
+            queueShared(op, value);
             return;
         }
+        synchronized (j) {
+            publish(w);
+            j.append(op, value);
+        }
+        scheduleSync(w);
+        queueShared(op, value);
+    }
+
+    /** Queue a journal sync on the writer. Caller holds the monitor. */
+    private void scheduleSync(WorldState w) {
+        writer.schedule(w.journal.file().getPath(), () -> syncJournal(w, metrics));
+    }
+
+    /** Runs on the writer thread: append buffered records, then compact into whitelist.json when due. */
+    private static void syncJournal(WorldState w, Metrics metrics) {
+        long start = metrics.save.start();
+        WhitelistJournal j = w.journal;
+        ByteBuffer batch;
+        Snapshot s;
+        synchronized (j) {
+            batch = j.drainPending();
+            s = w.snapshot;
+        }
         try {
-            WhitelistConfig cfg = readConfig(configFile);
-            applyConfig(cfg);
-            loadNameCache();
-        } catch (IOException | JsonSyntaxException e) {
-            // Malformed or unreadable: keep defaults and rename broken file
-            String renamed = renameBrokenConfig();
-            System.err.println("GateKeeper: Failed to parse whitelist.json; kept defaults. Renamed broken file to: " + renamed);
-        }
-    }
-
-    /** Persist current whitelist state to whitelist.json. */
-    private synchronized void saveInternal() {
-        if (configDir == null || configFile == null) return;
-        if (!configDir.exists()) configDir.mkdirs();
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(configFile))) {
-            List<Long> ids = new ArrayList<>(authIds);
-            java.util.Collections.sort(ids);
-            WhitelistConfig cfg = new WhitelistConfig();
-            cfg.enabled = this.enabled;
-            cfg.lockdown = this.lockdown;
-            cfg.auth = ids;
-            Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
-            bw.write(gson.toJson(cfg));
+            int records = j.write(batch);
+            boolean compact = j.takeCompactionRequest() || records >= COMPACT_AFTER_RECORDS;
+            if (compact) {
+                synchronized (w.fileLock) {
+                    writeSnapshot(w, s);
+                    w.fileBase = s;
+                }
+                j.reset();
+                metrics.compactions.inc();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        metrics.save.stop(start);
+    }
+
+    /**
+     * Write the compacted snapshot in the world's format and remove the other
+     * format's file, so only one snapshot is ever read or edited. Writer thread.
+     */
+    private static void writeSnapshot(WorldState w, Snapshot s) throws IOException {
+        if (w.binarySnapshot) {
+            WhitelistSnapshotFile.write(w.binaryFile, s.enabled, s.lockdown, s.sortedAuths(), s.expiries);
+            Files.deleteIfExists(w.configFile.toPath());
+        } else {
+            writeConfig(w.configFile, s);
+            Files.deleteIfExists(w.binaryFile.toPath());
+        }
+    }
+
+    /** Write a snapshot atomically; runs on the writer thread. */
+    private static void writeConfig(File target, Snapshot s) throws IOException {
+        WhitelistConfig cfg = new WhitelistConfig();
+        cfg.enabled = s.enabled;
+        cfg.lockdown = s.lockdown;
+        cfg.auth = s.sortedAuths();
+        cfg.expires = s.expiries.isEmpty() ? null : new TreeMap<>(s.expiries);
+        WriteBehind.writeAtomically(target, PRETTY_GSON.toJson(cfg));
+    }
+
+    /**
+     * Write all pending state to disk, compact the journal into whitelist.json and wait.
+     * Call on world unload or shutdown.
+     */
+    public void flush() {
+        syncSharedNow();
+        synchronized (this) {
+            for (WorldState w : worlds.values()) {
+                w.journal.requestCompaction();
+                scheduleSync(w);
+            }
+        }
+        writer.flush();
+        logAppender.flush();
+    }
+
+    /** Append buffered journal records without compacting, and wait. */
+    void flushJournal() {
+        synchronized (this) {
+            for (WorldState w : worlds.values()) scheduleSync(w);
+        }
+        writer.flush();
     }
 
     /**
      * Returns whether the provided SteamID (auth) is allowed in the current world.
      * Name is ignored for access decisions and used only for logging.
+     * Lock-free: reads the published snapshot unless the world has changed.
      */
-    public synchronized boolean isWhitelisted(Server server, long auth, String name) {
-        ensureWorld(server);
-        if (!enabled) return true; // disabled means allow all
-        return authIds.contains(auth);
+    public boolean isWhitelisted(Server server, long auth, String name) {
+        long start = metrics.isWhitelisted.start();
+        Snapshot s = snapshotFor(server);
+        boolean allowed = !s.enabled || s.contains(auth); // disabled means allow all
+        metrics.isWhitelisted.stop(start);
+        return allowed;
     }
 
-    public synchronized boolean isLockdown() { return lockdown; }
-    public synchronized void setLockdown(Server server, boolean on) { ensureWorld(server); lockdown = on; saveInternal(); }
+    /** @return true if the current world is in lockdown (no admin notifications for denials). */
+    public boolean isLockdown() { return snapshot.lockdown; }
+    /** @return true if the server's world is in lockdown; lock-free, see {@link #isEnabled(Server)}. */
+    public boolean isLockdown(Server server) { return snapshotFor(server).lockdown; }
+    public synchronized void setLockdown(Server server, boolean on) { WorldState w = ensureWorld(server); w.lockdown = on; commit(w, WhitelistJournal.OP_LOCKDOWN, on ? 1 : 0); }
 
     /** Add a SteamID to the whitelist. @return true if newly added. */
-    public synchronized boolean addAuth(Server server, long auth) { ensureWorld(server); boolean added = authIds.add(auth); if (added) saveInternal(); return added; }
-    /** Remove a SteamID from the whitelist. @return true if it was present. */
-    public synchronized boolean removeAuth(Server server, long auth) { ensureWorld(server); boolean rem = authIds.remove(auth); if (rem) saveInternal(); return rem; }
-    /** @return snapshot of all whitelisted SteamIDs for the current world. */
-    public synchronized List<Long> listAuths(Server server) { ensureWorld(server); return new ArrayList<>(authIds); }
+    public synchronized boolean addAuth(Server server, long auth) {
+        WorldState w = ensureWorld(server);
+        boolean added = w.addId(auth);
+        boolean wasTimed = clearExpiry(w, auth); // an explicit add is permanent
+        if (added || wasTimed) commit(w, WhitelistJournal.OP_ADD, auth);
+        return added;
+    }
+    /**
+     * Add many SteamIDs as one {@link WhitelistBatch}: one lock acquisition, one
+     * snapshot publish and one journal write.
+     * @return how many were not already whitelisted
+     */
+    public int addAuths(Server server, long[] ids) {
+        WhitelistBatch batch = batch(server);
+        for (long id : ids) batch.add(id);
+        int added = 0;
+        for (boolean changed : batch.commit()) if (changed) added++;
+        return added;
+    }
+
+    /** @return a new, empty transaction over this world's whitelist. */
+    public WhitelistBatch batch(Server server) { return new WhitelistBatch(this, server); }
 
     /**
-     * Resolve a player name to SteamID using online clients and saved players for this world.
-     * @return SteamID or null if not found
+     * Apply {@link WhitelistBatch} mutations atomically: one publish, one journal
+     * append run, one scheduled sync. Large batches also compact whitelist.json.
      */
-    public synchronized Long findAuthByName(Server server, String name) {
-        if (server == null || name == null) return null;
-        // Ensure world paths and name cache are initialized/loaded
-        ensureWorld(server);
-        String nlow = name.toLowerCase(Locale.ENGLISH);
-        // online clients
-        for (int i = 0; i < server.getSlots(); i++) {
-            necesse.engine.network.server.ServerClient c = server.getClient(i);
-            if (c != null && c.getName() != null && c.getName().equalsIgnoreCase(name)) {
-                return c.authentication;
+    synchronized boolean[] apply(Server server, byte[] ops, long[] values, long[] untils, int n) {
+        return apply(ensureWorld(server), ops, values, untils, n, true);
+    }
+
+    /**
+     * Apply journal-style ops (add, remove, add until a time, or set a flag to
+     * 0/1) to one world as a single publish and journal append run. A plain add
+     * makes a timed entry permanent; a timed add leaves a permanent one as it is.
+     * Caller holds the monitor.
+     * @param untils expiry times (epoch ms) for {@link WhitelistJournal#OP_ADD_UNTIL} ops; null if there are none
+     * @param toShared whether effective adds and removes go to the shared store
+     * @return per op, whether it changed anything; only those are journaled
+     */
+    private boolean[] apply(WorldState w, byte[] ops, long[] values, long[] untils, int n, boolean toShared) {
+        boolean[] changed = new boolean[n];
+        int effective = 0;
+        for (int i = 0; i < n; i++) {
+            switch (ops[i]) {
+                case WhitelistJournal.OP_ADD:
+                    changed[i] = w.addId(values[i]);
+                    if (clearExpiry(w, values[i])) changed[i] = true;
+                    break;
+                case WhitelistJournal.OP_REMOVE:
+                    changed[i] = w.removeId(values[i]);
+                    clearExpiry(w, values[i]);
+                    break;
+                case WhitelistJournal.OP_ADD_UNTIL: {
+                    long deadline = w.expiries.deadlineOf(values[i]);
+                    changed[i] = w.addId(values[i]);
+                    // A permanent entry stays permanent; only new or already timed ones take the expiry
+                    if ((changed[i] || deadline != 0L) && deadline != untils[i]) {
+                        setExpiry(w, values[i], untils[i]);
+                        changed[i] = true;
+                    }
+                    if (changed[i]) startExpiryTicker();
+                    break;
+                }
+                case WhitelistJournal.OP_ENABLED:
+                    changed[i] = w.enabled != (values[i] != 0);
+                    w.enabled = values[i] != 0;
+                    break;
+                case WhitelistJournal.OP_LOCKDOWN:
+                    changed[i] = w.lockdown != (values[i] != 0);
+                    w.lockdown = values[i] != 0;
+                    break;
+                default: throw new IllegalArgumentException("unknown op " + ops[i]);
             }
+            if (changed[i]) effective++;
         }
-        // known names from saves
-        Map<Long, String> used = server.world.getUsedPlayerNames();
-        for (Map.Entry<Long, String> e : used.entrySet()) {
-            if (e.getValue() != null && e.getValue().toLowerCase(Locale.ENGLISH).equals(nlow)) {
-                return e.getKey();
+        if (effective == 0) return changed;
+        if (toShared) {
+            for (int i = 0; i < n; i++) {
+                if (!changed[i]) continue;
+                // Expiries stay with the server that granted them; others see a plain add, then the removal
+                queueShared(ops[i] == WhitelistJournal.OP_ADD_UNTIL ? WhitelistJournal.OP_ADD : ops[i], values[i]);
             }
         }
-        // fallback to cached mapping
-        Long cached = nameToAuth.get(nlow);
-        return cached;
+        WhitelistJournal j = w.journal;
+        if (j == null) {
+            publish(w);
+            return changed;
+        }
+        synchronized (j) {
+            publish(w);
+            for (int i = 0; i < n; i++) {
+                if (changed[i]) j.append(ops[i], values[i], ops[i] == WhitelistJournal.OP_ADD_UNTIL ? untils[i] : 0L);
+            }
+            if (effective >= COMPACT_AFTER_RECORDS) j.requestCompaction();
+        }
+        scheduleSync(w);
+        return changed;
     }
 
-    /** Resolve a SteamID to last-known player name (online preferred, else saved). */
-    public synchronized String getNameByAuth(Server server, long auth) {
-        if (server == null) return null;
+    /**
+     * Import SteamIDs from a CSV/plain-text or JSON file (see {@link WhitelistImport})
+     * and add the valid ones as a single batch. Relative paths are resolved against
+     * the world's GateKeeper folder.
+     * @return {added, duplicates (in the file or already whitelisted), invalid}
+     */
+    public int[] importAuths(Server server, String path) throws IOException {
+        File file = new File(path);
+        if (!file.isAbsolute()) file = new File(getConfigDir(server), path);
+        WhitelistImport parsed = new WhitelistImport().read(file); // parse without holding the monitor
+        long[] ids = parsed.ids.toSortedArray();
+        int added = addAuths(server, ids);
+        return new int[] { added, parsed.duplicates + (ids.length - added), parsed.invalid };
+    }
+
+    /** Remove a SteamID from the whitelist. @return true if it was present. */
+    public synchronized boolean removeAuth(Server server, long auth) {
+        WorldState w = ensureWorld(server);
+        boolean rem = w.removeId(auth);
+        clearExpiry(w, auth);
+        if (rem) commit(w, WhitelistJournal.OP_REMOVE, auth);
+        return rem;
+    }
+    /** @return snapshot of all whitelisted SteamIDs for the current world, ascending. */
+    public List<Long> listAuths(Server server) {
+        long[] ids = sortedAuths(server);
+        List<Long> out = new ArrayList<>(ids.length);
+        for (long id : ids) out.add(id);
+        return out;
+    }
+    /** @return number of whitelisted SteamIDs for the current world. */
+    public int countAuths(Server server) { return snapshotFor(server).size(); }
+    /**
+     * @return true if the SteamID is on the world's list, whether or not the
+     *         whitelist is enforced. Unlike {@link #isWhitelisted} this is not
+     *         an access decision and is not counted in the metrics.
+     */
+    public boolean isListed(Server server, long auth) { return snapshotFor(server).contains(auth); }
+    /**
+     * @return all whitelisted SteamIDs, ascending, without copying. The array is
+     *         shared with the published snapshot and must not be modified.
+     */
+    long[] sortedAuths(Server server) { return snapshotFor(server).sortedAuths(); }
+
+    /**
+     * Resolve names for {@code auths[from, to)} in one pass under a single lock acquisition.
+     * @return matches aligned with the range; null where no source knows the SteamID
+     */
+    public synchronized NameMatch[] resolveAuths(Server server, long[] auths, int from, int to) {
+        NameMatch[] out = new NameMatch[Math.max(0, to - from)];
+        if (server == null) return out;
+        long start = metrics.nameLookup.start();
+        NameIndex names = ensureWorld(server).names;
+        for (int i = from; i < to; i++) out[i - from] = names.nameOf(server, clients, auths[i]);
+        metrics.nameLookup.stop(start);
+        return out;
+    }
+
+    /**
+     * Resolve a player name to SteamID using online clients, saved players and the name cache for this world.
+     * @return SteamID or null if not found
+     */
+    public Long findAuthByName(Server server, String name) {
+        NameMatch m = resolveName(server, name);
+        return m == null ? null : m.auth;
+    }
+
+    /** Resolve a SteamID to last-known player name (online preferred, else cached, else saved). */
+    public String getNameByAuth(Server server, long auth) {
+        NameMatch m = resolveAuth(server, auth);
+        return m == null ? null : m.name;
+    }
+
+    /**
+     * Resolve a player name (case-insensitive) from the name index.
+     * @return the match and which source it came from, or null if no source knows the name
+     */
+    public synchronized NameMatch resolveName(Server server, String name) {
+        if (server == null || name == null) return null;
+        long start = metrics.nameLookup.start();
         // Ensure world paths and name cache are initialized/loaded
-        ensureWorld(server);
-        for (int i = 0; i < server.getSlots(); i++) {
-            necesse.engine.network.server.ServerClient c = server.getClient(i);
-            if (c != null && c.authentication == auth) {
-                return c.getName();
-            }
-        }
-        // cached last-known name
-        String cached = authToName.get(auth);
-        if (cached != null) return cached;
-        Map<Long, String> used = server.world.getUsedPlayerNames();
-        return used.get(auth);
+        NameMatch m = ensureWorld(server).names.find(server, clients, name);
+        metrics.nameLookup.stop(start);
+        return m;
     }
 
     /**
-     * Reloads configuration from disk in a non-destructive manner.
-     * If parsing fails, in-memory state remains unchanged and the broken file is renamed.
+     * Resolve a SteamID to a name from the name index.
+     * @return the match and which source it came from, or null if the SteamID has no known name
+     */
+    public synchronized NameMatch resolveAuth(Server server, long auth) {
+        if (server == null) return null;
+        long start = metrics.nameLookup.start();
+        NameMatch m = ensureWorld(server).names.nameOf(server, clients, auth);
+        metrics.nameLookup.stop(start);
+        return m;
+    }
+
+    /**
+     * Search known names (online, saved and cached) by prefix, substring or small typos.
+     * @return at most {@code limit} candidates, best first
+     */
+    public synchronized List<NameMatch> searchNames(Server server, String fragment, int limit) {
+        if (server == null || fragment == null) return new ArrayList<>();
+        return ensureWorld(server).names.search(server, clients, fragment, limit);
+    }
+
+    /**
+     * Reloads configuration from disk in a non-destructive manner: whitelist.json
+     * plus any journal records not yet compacted into it.
+     * If parsing fails, in-memory state remains unchanged, the broken file is renamed
+     * and a fresh snapshot is written from memory.
      * @return true if reloaded successfully; false if parse error (state unchanged)
      */
-    public synchronized boolean reload(Server server, StringBuilder messageOut) {
-        ensureWorld(server);
-        if (configFile == null) {
+    public boolean reload(Server server, StringBuilder messageOut) {
+        WorldState w;
+        synchronized (this) {
+            w = ensureWorld(server);
+        }
+        if (w.configFile == null) {
             if (messageOut != null) messageOut.append("No config file to reload.");
             return false;
         }
+        FileDelta d;
         try {
-            WhitelistConfig cfg = readConfig(configFile);
-            applyConfig(cfg);
-            if (messageOut != null) messageOut.append("Reloaded whitelist from ").append(configFile.getName());
-            return true;
+            d = readFileDelta(w);
         } catch (IOException | JsonSyntaxException e) {
-            String renamed = renameBrokenConfig();
+            String renamed = renameBroken(w.snapshotFile());
+            synchronized (this) {
+                // Put a snapshot of memory in its place; until then a crash would load defaults plus the journal tail
+                if (w.journal != null) {
+                    w.journal.requestCompaction();
+                    scheduleSync(w);
+                }
+            }
             if (messageOut != null) messageOut.append("Error parsing whitelist; kept existing config. Renamed broken file to ").append(renamed);
             return false;
         }
+        String summary = applyFileDelta(w, d, "reload", false);
+        if (messageOut != null) messageOut.append("Reloaded whitelist from ").append(w.snapshotFile().getName()).append(": ").append(summary);
+        return true;
+    }
+
+    /** Watcher callback for an edit of whitelist.json; runs on the hot-reload thread, never the connect path. */
+    void hotReload(WorldState w) {
+        // whitelist.bin is GateKeeper's alone; a file mid-save (or deleted) is picked up by the next event
+        if (w.binarySnapshot || !w.configFile.exists()) return;
+        FileDelta d;
+        try {
+            d = readFileDelta(w);
+        } catch (IOException | JsonSyntaxException e) {
+            // Leave the file alone: the admin is likely still editing it
+            System.err.println("GateKeeper: Ignored edit of " + w.configFile.getPath() + " that does not parse: " + e.getMessage());
+            return;
+        }
+        if (!d.isEmpty()) applyFileDelta(w, d, "hot_reload", false);
+    }
+
+    /** Changes between two contents of the snapshot file, or of the shared whitelist. */
+    static final class FileDelta {
+        static final FileDelta NONE = new FileDelta(new long[0], new long[0], null, null);
+        final long[] added;
+        final long[] removed;
+        final Boolean enabled;  // null: unchanged
+        final Boolean lockdown; // null: unchanged
+        final Map<Long, Long> expiries; // expiry times for some of `added`; other timing changes are not diffed
+        FileDelta(long[] added, long[] removed, Boolean enabled, Boolean lockdown) {
+            this(added, removed, enabled, lockdown, Collections.emptyMap());
+        }
+        FileDelta(long[] added, long[] removed, Boolean enabled, Boolean lockdown, Map<Long, Long> expiries) {
+            this.added = added; this.removed = removed; this.enabled = enabled; this.lockdown = lockdown;
+            this.expiries = expiries;
+        }
+        boolean isEmpty() { return added.length == 0 && removed.length == 0 && enabled == null && lockdown == null; }
+
+        /** Merge-diff of the two ascending SteamID lists plus flag changes. */
+        static FileDelta between(Snapshot base, boolean enabled, boolean lockdown, long[] sorted) {
+            long[] old = base.sortedAuths();
+            long[] added = new long[sorted.length];
+            long[] removed = new long[old.length];
+            int a = 0, r = 0, i = 0, k = 0;
+            while (i < old.length || k < sorted.length) {
+                if (k == sorted.length || (i < old.length && old[i] < sorted[k])) removed[r++] = old[i++];
+                else if (i == old.length || sorted[k] < old[i]) added[a++] = sorted[k++];
+                else { i++; k++; }
+            }
+            return new FileDelta(Arrays.copyOf(added, a), Arrays.copyOf(removed, r),
+                    base.enabled != enabled ? enabled : null, base.lockdown != lockdown ? lockdown : null);
+        }
+    }
+
+    /**
+     * Parse the snapshot file without the monitor and diff it against what the
+     * file held when GateKeeper last read or wrote it. Diffing against that,
+     * rather than the live state, keeps in-game changes not yet compacted.
+     */
+    private FileDelta readFileDelta(WorldState w) throws IOException, JsonSyntaxException {
+        synchronized (w.fileLock) {
+            WorldState fresh = new WorldState(w.worldId, null);
+            readSnapshot(w, fresh);
+            long[] sorted = fresh.authIds.toSortedArray();
+            FileDelta d = FileDelta.between(w.fileBase, fresh.enabled, fresh.lockdown, sorted);
+            w.fileBase = snapshotOf(fresh);
+            if (w.fileBase.expiries.isEmpty()) return d;
+            return new FileDelta(d.added, d.removed, d.enabled, d.lockdown, w.fileBase.expiries);
+        }
+    }
+
+    /**
+     * Apply a file delta as one batch (only entries that differ from the live
+     * state change), kick connected players who were removed, and record a
+     * summary in the admin log.
+     * @param fromShared the delta came from the shared store: it is not sent
+     *        back, and SteamIDs with newer local changes still queued are skipped
+     * @return the summary, e.g. {@code "+3 -1 enabled=true"}
+     */
+    private String applyFileDelta(WorldState w, FileDelta d, String action, boolean fromShared) {
+        int n = d.added.length + d.removed.length + (d.enabled != null ? 1 : 0) + (d.lockdown != null ? 1 : 0);
+        byte[] ops = new byte[n];
+        long[] values = new long[n];
+        long[] untils = d.expiries.isEmpty() ? null : new long[n];
+        boolean[] changed;
+        synchronized (this) {
+            int k = 0;
+            for (long id : d.added) {
+                if (fromShared && sharedPendingIds.contains(id)) continue;
+                Long until = d.expiries.get(id);
+                ops[k] = until == null ? WhitelistJournal.OP_ADD : WhitelistJournal.OP_ADD_UNTIL;
+                if (until != null) untils[k] = until;
+                values[k++] = id;
+            }
+            for (long id : d.removed) {
+                if (fromShared && sharedPendingIds.contains(id)) continue;
+                ops[k] = WhitelistJournal.OP_REMOVE; values[k++] = id;
+            }
+            if (d.enabled != null) { ops[k] = WhitelistJournal.OP_ENABLED; values[k++] = d.enabled ? 1 : 0; }
+            if (d.lockdown != null) { ops[k] = WhitelistJournal.OP_LOCKDOWN; values[k++] = d.lockdown ? 1 : 0; }
+            n = k;
+            changed = apply(w, ops, values, untils, n, !fromShared);
+        }
+        int added = 0, removed = 0;
+        LongHashSet gone = new LongHashSet();
+        for (int i = 0; i < n; i++) {
+            if (!changed[i]) continue;
+            if (ops[i] == WhitelistJournal.OP_ADD || ops[i] == WhitelistJournal.OP_ADD_UNTIL) added++;
+            else if (ops[i] == WhitelistJournal.OP_REMOVE) { removed++; gone.add(values[i]); }
+        }
+        StringBuilder summary = new StringBuilder().append('+').append(added).append(" -").append(removed);
+        if (d.enabled != null) summary.append(" enabled=").append(d.enabled);
+        if (d.lockdown != null) summary.append(" lockdown=").append(d.lockdown);
+        // Shared changes reach every loaded world; log only where they changed something
+        if (fromShared && added + removed == 0) return summary.toString();
+        int kicked = kickRemoved(w, gone);
+        if (kicked > 0) summary.append(", kicked ").append(kicked);
+        if (w.adminLogFile != null) logAppender.put(w.adminLogFile, System.currentTimeMillis() + "," + action + "," + summary);
+        return summary.toString();
+    }
+
+    /**
+     * Disconnect every connected client whose SteamID is in {@code auths}, in one
+     * pass over the client index, logging each kick to the server's world's admin log.
+     * @return number of clients kicked
+     */
+    int kickRemoved(Server server, LongHashSet auths) {
+        if (server == null || auths.isEmpty()) return 0;
+        WorldState w;
+        synchronized (this) {
+            w = ensureWorld(server);
+        }
+        return kickRemoved(w, auths);
+    }
+
+    /**
+     * As {@link #kickRemoved(Server, LongHashSet)} for one world's state. Does not
+     * take the monitor or switch the current world, so background threads and
+     * loads in progress can call it.
+     */
+    private int kickRemoved(WorldState w, LongHashSet auths) {
+        Server server = w.server;
+        if (server == null || auths.isEmpty()) return 0;
+        int kicked = 0;
+        for (ServerClient c : clients.online(server)) {
+            if (!auths.contains(c.authentication)) continue;
+            String nm = c.getName();
+            server.disconnectClient(c, PacketDisconnect.kickPacket(c.slot, "Removed from whitelist"));
+            clients.onDisconnected(c);
+            if (w.adminLogFile != null) {
+                logAppender.put(w.adminLogFile, System.currentTimeMillis() + ",kick_on_remove," + c.authentication + "," + (nm == null ? "" : nm));
+            }
+            kicked++;
+        }
+        return kicked;
+    }
+
+    /**
+     * Switch the compacted snapshot between whitelist.json and the binary
+     * whitelist.bin ({@link WhitelistSnapshotFile}). The new file is written, and
+     * the old one removed, by a compaction queued now.
+     */
+    public synchronized void setBinarySnapshot(Server server, boolean binary) {
+        WorldState w = ensureWorld(server);
+        if (w.journal == null) return;
+        w.binarySnapshot = binary;
+        w.journal.requestCompaction();
+        scheduleSync(w);
+    }
+
+    /** @return true if this world's snapshot is stored as whitelist.bin. */
+    public synchronized boolean isBinarySnapshot(Server server) { return ensureWorld(server).binarySnapshot; }
+
+    /** @return the compacted snapshot file for this world (whitelist.json or whitelist.bin), or null. */
+    public synchronized File getSnapshotFile(Server server) { return ensureWorld(server).snapshotFile(); }
+
+    // --- Shared whitelist -------------------------------------------------
+    /**
+     * Share the SteamID list with other servers on this host through
+     * {@code whitelist.shared} in {@code dir}, or stop sharing with null.
+     * Loaded worlds adopt the shared list at once; while the store is still
+     * empty, the current world's list seeds it. Enabled and lockdown stay per world.
+     */
+    public void setSharedDirectory(File dir) {
+        synchronized (this) {
+            if (sharedPoll != null) sharedPoll.cancel(false);
+            sharedPoll = null;
+            sharedCount = 0;
+            sharedPendingIds.clear();
+            shared = dir == null ? null : new SharedWhitelistStore(dir);
+            if (shared == null) return;
+            if (worlds.containsKey(world.worldId)) attachShared(world);
+            for (WorldState w : worlds.values()) if (w != world) attachShared(w);
+            sharedPoll = sharedSync.scheduleWithFixedDelay(this::syncShared, SHARED_POLL_MS, SHARED_POLL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** @return the shared whitelist folder, or null if this server's list is its own. */
+    public File getSharedDirectory() {
+        SharedWhitelistStore store = shared;
+        return store == null ? null : store.dir();
+    }
+
+    /** @return the shared whitelist version this server has caught up to, or -1. */
+    public long getSharedVersion() {
+        SharedWhitelistStore store = shared;
+        return store == null ? -1L : store.seenVersion();
+    }
+
+    /** Queue a local add or remove for the shared store (flags are per world). Caller holds the monitor. */
+    private void queueShared(byte op, long value) {
+        if (shared == null || (op != WhitelistJournal.OP_ADD && op != WhitelistJournal.OP_REMOVE)) return;
+        if (sharedCount == sharedOps.length) {
+            sharedOps = Arrays.copyOf(sharedOps, sharedCount * 2);
+            sharedValues = Arrays.copyOf(sharedValues, sharedCount * 2);
+        }
+        sharedOps[sharedCount] = op;
+        sharedValues[sharedCount++] = value;
+        sharedPendingIds.add(value);
+        if (!sharedPushQueued) {
+            sharedPushQueued = true;
+            sharedSync.schedule(this::syncShared, SHARED_PUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Bring a freshly loaded world's SteamIDs in line with the shared store, seeding an empty one. */
+    private void attachShared(WorldState w) {
+        SharedWhitelistStore store = shared;
+        if (store == null) return;
+        try {
+            adoptShared(w, store.attach(w.authIds.toSortedArray()));
+        } catch (IOException e) {
+            System.err.println("GateKeeper: Could not read the shared whitelist in " + store.dir() + "; using this world's list. " + e);
+        }
+    }
+
+    /** Make a world's SteamIDs match a shared state, journaled locally like any other change. */
+    private void adoptShared(WorldState w, SharedWhitelistStore.State state) {
+        FileDelta d = FileDelta.between(snapshotOf(w), w.enabled, w.lockdown, state.sorted);
+        w.sharedVersion = state.version;
+        if (!d.isEmpty()) applyFileDelta(w, d, "shared_attach", true);
+    }
+
+    /**
+     * Exchange queued local changes for those other servers made, then apply
+     * the net change to every loaded world. Runs on the shared thread only, so
+     * exchanges are applied in order.
+     */
+    private void syncShared() {
+        SharedWhitelistStore store = shared;
+        if (store == null) return;
+        byte[] ops;
+        long[] values;
+        int n;
+        synchronized (this) {
+            sharedPushQueued = false;
+            ops = sharedOps;
+            values = sharedValues;
+            n = sharedCount;
+            if (n > 0) {
+                sharedOps = new byte[16];
+                sharedValues = new long[16];
+                sharedCount = 0;
+                sharedPendingIds.clear();
+            }
+        }
+        FileDelta d;
+        try {
+            d = store.exchange(ops, values, n);
+        } catch (IOException e) {
+            synchronized (this) {
+                // Keep the changes, ahead of any queued since, for the next attempt
+                if (shared == store && n > 0) {
+                    byte[] pendingOps = sharedOps;
+                    long[] pendingValues = sharedValues;
+                    int pending = sharedCount;
+                    sharedOps = Arrays.copyOf(ops, n + pending + 16);
+                    sharedValues = Arrays.copyOf(values, n + pending + 16);
+                    System.arraycopy(pendingOps, 0, sharedOps, n, pending);
+                    System.arraycopy(pendingValues, 0, sharedValues, n, pending);
+                    sharedCount = n + pending;
+                    for (int i = 0; i < n; i++) sharedPendingIds.add(values[i]);
+                }
+            }
+            String error = String.valueOf(e.getMessage());
+            if (!error.equals(sharedError)) System.err.println("GateKeeper: Shared whitelist in " + store.dir() + " unavailable: " + error);
+            sharedError = error;
+            return;
+        }
+        sharedError = null;
+        if (d != null && d.isEmpty()) return;
+        List<WorldState> targets;
+        synchronized (this) {
+            targets = new ArrayList<>(worlds.values());
+        }
+        // On the first exchange there is no previous state to diff; compare each world with the whole set
+        SharedWhitelistStore.State all = d == null ? store.mirror() : null;
+        for (WorldState w : targets) {
+            if (all != null) adoptShared(w, all);
+            else applyFileDelta(w, d, "shared_sync", true);
+        }
+    }
+
+    /** Run a shared exchange now and wait for it; does nothing when not sharing. Call without the monitor. */
+    void syncSharedNow() {
+        if (shared == null) return;
+        try {
+            sharedSync.submit(this::syncShared).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
     }
 
     // --- Helpers ----------------------------------------------------------
-    private WhitelistConfig readConfig(File file) throws IOException, JsonSyntaxException {
+    static WhitelistConfig readConfig(File file) throws IOException, JsonSyntaxException {
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
             Gson gson = new Gson();
             WhitelistConfig cfg = gson.fromJson(br, WhitelistConfig.class);
@@ -231,153 +1242,495 @@ public class WhitelistManager {
         }
     }
 
-    private void applyConfig(WhitelistConfig cfg) {
+    static void applyConfig(WorldState w, WhitelistConfig cfg) {
         // Reset then apply
-        this.enabled = cfg.enabled;
-        this.lockdown = cfg.lockdown;
-        this.authIds.clear();
-        if (cfg.auth != null) this.authIds.addAll(cfg.auth);
+        w.enabled = cfg.enabled;
+        w.lockdown = cfg.lockdown;
+        w.clearIds();
+        if (cfg.auth != null) for (long id : cfg.auth) w.addId(id);
+        setExpiries(w, cfg.expires);
+    }
+
+    // --- Timed entries ----------------------------------------------------
+    /** Replace a world's expiries; entries for SteamIDs not on its whitelist are ignored. */
+    private static void setExpiries(WorldState w, Map<Long, Long> expiries) {
+        w.expiries.clear();
+        w.expiryView = null;
+        if (expiries == null) return;
+        for (Map.Entry<Long, Long> e : expiries.entrySet()) {
+            if (e.getKey() != null && e.getValue() != null && w.authIds.contains(e.getKey())) w.expiries.schedule(e.getKey(), e.getValue());
+        }
     }
 
-    private String renameBrokenConfig() {
-        if (configFile == null) return null;
+    private static void setExpiry(WorldState w, long auth, long untilMs) {
+        w.expiries.schedule(auth, untilMs);
+        w.expiryView = null;
+    }
+
+    /** @return true if the SteamID was timed and is now permanent (or gone). */
+    private static boolean clearExpiry(WorldState w, long auth) {
+        if (!w.expiries.cancel(auth)) return false;
+        w.expiryView = null;
+        return true;
+    }
+
+    /**
+     * Whitelist SteamIDs until {@code untilMs} (epoch ms) as one batch. At that
+     * time they are removed, and kicked if connected; a later plain add makes
+     * them permanent. SteamIDs already whitelisted permanently are left
+     * unchanged. Membership checks are unaffected: an entry stays in the
+     * SteamID set until it expires.
+     * @return per SteamID, whether anything changed (newly added or a new expiry)
+     */
+    public boolean[] addAuthsUntil(Server server, long[] ids, long untilMs) {
+        WhitelistBatch batch = batch(server);
+        for (long id : ids) batch.addUntil(id, untilMs);
+        return batch.commit();
+    }
+
+    /** @return when the SteamID's access expires (epoch ms), or 0 if it is permanent or not whitelisted. Lock-free. */
+    public long getExpiry(Server server, long auth) {
+        Long until = snapshotFor(server).expiries.get(auth);
+        return until == null ? 0L : until;
+    }
+
+    /** @return number of timed entries in the server's world. Lock-free. */
+    public int countTimed(Server server) { return snapshotFor(server).expiries.size(); }
+
+    /** Run the expiry ticker from the first timed entry on; managers without any never start it. */
+    private void startExpiryTicker() {
+        if (expiryTicking.compareAndSet(false, true)) {
+            expiryTicker.scheduleWithFixedDelay(this::expireDue, ExpiryWheel.TICK_MS, ExpiryWheel.TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Ticker: expire due entries in every loaded world. */
+    private void expireDue() {
+        long now = System.currentTimeMillis();
+        List<WorldState> targets;
+        synchronized (this) {
+            targets = new ArrayList<>(worlds.values());
+        }
+        for (WorldState w : targets) expireDue(w, now);
+    }
+
+    /**
+     * Remove a world's timed entries whose time has come, as one batch, then
+     * kick the ones connected and log each expiry.
+     * @return number of entries expired
+     */
+    int expireDue(WorldState w, long nowMs) {
+        LongHashSet gone = new LongHashSet();
+        long[] ids;
+        synchronized (this) {
+            w.expiries.advance(nowMs, gone::add);
+            w.expiries.expireOverdue(nowMs, gone::add);
+            if (gone.isEmpty()) return 0;
+            w.expiryView = null;
+            ids = gone.toSortedArray();
+            byte[] ops = new byte[ids.length];
+            Arrays.fill(ops, WhitelistJournal.OP_REMOVE);
+            apply(w, ops, ids, null, ids.length, true);
+        }
+        // Logged before the kicks, which log their own lines
+        if (w.adminLogFile != null) {
+            for (long id : ids) logAppender.put(w.adminLogFile, nowMs + ",expire," + id);
+        }
+        kickRemoved(w, gone);
+        return ids.length;
+    }
+
+    private String renameBroken(File file) {
         String ts = new java.text.SimpleDateFormat("yyyyMMddHHmmss").format(new java.util.Date());
-        File renamed = new File(configDir, configFile.getName() + ".broken-" + ts);
-        boolean ok = configFile.renameTo(renamed);
-        return ok ? renamed.getName() : configFile.getName();
+        File renamed = new File(file.getParentFile(), file.getName() + ".broken-" + ts);
+        boolean ok = file.renameTo(renamed);
+        return ok ? renamed.getName() : file.getName();
     }
 
     /** Mark that we notified admins for this auth (used for rate limiting). */
-    public synchronized void rememberNotify(long auth) {
-        lastNotify.put(auth, System.currentTimeMillis());
-        lastGlobalNotify = System.currentTimeMillis();
+    public void rememberNotify(long auth) {
+        rememberNotify(auth, System.currentTimeMillis());
+    }
+
+    synchronized void rememberNotify(long auth, long nowMs) {
+        lastNotify.remove(auth); // re-insert so iteration order stays oldest first
+        lastNotify.put(auth, nowMs);
+        lastGlobalNotify = nowMs;
     }
 
     /** Return true if we should send an admin notification for this auth now. */
-    public synchronized boolean shouldNotify(long auth, long cooldownMs) {
-        long now = System.currentTimeMillis();
-        if (now - lastGlobalNotify < NOTIFY_GLOBAL_MIN_INTERVAL_MS) return false;
+    public boolean shouldNotify(long auth, long cooldownMs) {
+        return shouldNotify(auth, cooldownMs, System.currentTimeMillis());
+    }
+
+    synchronized boolean shouldNotify(long auth, long cooldownMs, long nowMs) {
+        // Entries past the cooldown can't suppress anything; drop them from the old end
+        Iterator<Long> it = lastNotify.values().iterator();
+        while (it.hasNext() && nowMs - it.next() > cooldownMs) it.remove();
+        if (nowMs - lastGlobalNotify < NOTIFY_GLOBAL_MIN_INTERVAL_MS) return false;
         Long last = lastNotify.get(auth);
         if (last == null) return true;
-        return now - last > cooldownMs;
+        return nowMs - last > cooldownMs;
     }
 
-    /** Record a denied connect attempt in memory and append to denied_log.txt. */
+    /** @return number of SteamIDs currently held for notification cooldowns. */
+    synchronized int notifyStateSize() { return lastNotify.size(); }
+
+    /**
+     * Count a denied attempt that was not announced on its own toward the next digest.
+     * @return true if this attempt opened a new digest window (the caller should
+     *         arrange for {@link #takeDigest} to run once the window has passed)
+     */
+    public synchronized boolean addToDigest(String name) {
+        boolean opened = digestCount == 0;
+        if (opened) digestStartMs = System.currentTimeMillis();
+        if (digestCount < Integer.MAX_VALUE) digestCount++;
+        String who = (name == null || name.isEmpty()) ? "<unknown>" : name;
+        boolean seen = false;
+        for (int i = 0; i < digestNameCount && !seen; i++) seen = digestNames[i].equals(who);
+        if (!seen) {
+            if (digestNameCount < DIGEST_MAX_NAMES) digestNames[digestNameCount++] = who;
+            else digestNamesTruncated = true;
+        }
+        return opened;
+    }
+
+    /**
+     * Build the digest message for denials collected so far and start over.
+     * @return e.g. {@code "12 blocked in last 30s: a, b, c…"}, or null if nothing was collected
+     */
+    public synchronized String takeDigest() {
+        if (digestCount == 0) return null;
+        long windowMs = System.currentTimeMillis() - digestStartMs;
+        StringBuilder sb = new StringBuilder("[GateKeeper] ")
+                .append(digestCount).append(" blocked in last ").append(WhitelistCommand.formatAge(windowMs)).append(": ");
+        for (int i = 0; i < digestNameCount; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(digestNames[i]);
+            digestNames[i] = null;
+        }
+        if (digestNamesTruncated) sb.append('…');
+        sb.append(" — see /whitelist recent");
+        digestCount = 0;
+        digestNameCount = 0;
+        digestNamesTruncated = false;
+        return sb.toString();
+    }
+
+    /**
+     * Record a denied connect attempt in memory and queue a line for denied_log.txt.
+     * Never blocks on I/O; under a flood, lines beyond the log ring's capacity are dropped and counted.
+     */
     public synchronized void recordDeniedAttempt(Server server, long auth, String name, String address) {
-        ensureWorld(server);
-        Attempt a = new Attempt(System.currentTimeMillis(), auth, name, address);
-        recent.addLast(a);
-        while (recent.size() > RECENT_MAX) recent.removeFirst();
+        long start = metrics.recordDenied.start();
+        WorldState w = ensureWorld(server);
+        long now = System.currentTimeMillis();
+        recent.record(now, auth, name, address);
         // Update name cache for ergonomics
-        rememberName(auth, name);
+        rememberName(w, auth, name);
         // Append to log file
-        if (configDir != null) {
-            File log = new File(configDir, "denied_log.txt");
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(log, true))) {
-                String n = name == null ? "" : name;
-                String addr = address == null ? "" : address;
-                bw.write(a.timeMs + "," + auth + "," + n + "," + addr + "\n");
-            } catch (IOException ignore) {}
+        if (w.deniedLogFile != null) {
+            String n = name == null ? "" : name;
+            String addr = address == null ? "" : address;
+            logAppender.offer(w.deniedLogFile, now + "," + auth + "," + n + "," + addr);
+        }
+        if (w.audit != null) {
+            final AuditStore store = w.audit;
+            store.append(now, auth, name, address);
+            writer.schedule(w.configDir.getPath() + "#audit", () -> syncAudit(store));
+        }
+        metrics.recordDenied.stop(start);
+    }
+
+    private static void syncAudit(AuditStore store) {
+        try {
+            store.sync();
+        } catch (IOException ignore) {
+            // Audit history is best-effort, like denied_log.txt
+        }
+    }
+
+    /**
+     * Most recent audited denied attempts for a SteamID, answered from the audit index.
+     * @param sinceMs only attempts at or after this time (0 for all)
+     * @return at most {@code limit} attempts, oldest first
+     */
+    public List<Attempt> getAuditHistory(Server server, long auth, long sinceMs, int limit) {
+        AuditStore store = auditFor(server);
+        if (store == null) return new ArrayList<>();
+        try {
+            return store.history(auth, sinceMs, limit);
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /** @return number of audited denied attempts for a SteamID at or after {@code sinceMs}. */
+    public int countAuditAttempts(Server server, long auth, long sinceMs) {
+        AuditStore store = auditFor(server);
+        if (store == null) return 0;
+        try {
+            return store.count(auth, sinceMs);
+        } catch (IOException e) {
+            return 0;
         }
     }
 
+    /** @return the {@code n} SteamIDs with the most audited denied attempts at or after {@code sinceMs}. */
+    public List<Offender> getTopOffenders(Server server, int n, long sinceMs) {
+        AuditStore store = auditFor(server);
+        if (store == null) return new ArrayList<>();
+        try {
+            return store.top(n, sinceMs);
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private synchronized AuditStore auditFor(Server server) {
+        return ensureWorld(server).audit;
+    }
+
+    /** @return the flood limiter consulted before recording a denied connection. */
+    public ConnectionThrottle getConnectionThrottle() { return throttle; }
+
+    /** @return index of connected clients, fed by the connection listener. */
+    public ClientRegistry getClientRegistry() { return clients; }
+
+    /** @return number of denied_log.txt lines dropped because the log ring was full. */
+    public long getDroppedLogLines() { return logAppender.droppedLines(); }
+
     /** @return snapshot list of recent denied attempts (most recent last). */
-    public synchronized List<Attempt> getRecentAttempts() { return new ArrayList<>(recent); }
+    public synchronized List<Attempt> getRecentAttempts() { return recent.attempts(); }
+    /** @return recent denied SteamIDs aggregated per auth, ordered by last attempt (most recent last). */
+    public synchronized List<Offender> getRecentOffenders() { return recent.offenders(); }
     /** @return the SteamID from the most recent denied attempt, or null. */
-    public synchronized Long getLastDeniedAuth() { return recent.isEmpty() ? null : recent.getLast().auth; }
+    public synchronized Long getLastDeniedAuth() { return recent.lastAuth(lastAuthOut) ? lastAuthOut[0] : null; }
 
     /** @return the GateKeeper directory for the current world (created on demand). */
     public synchronized File getConfigDir(Server server) {
-        ensureWorld(server);
-        return configDir;
+        return ensureWorld(server).configDir;
     }
 
     /**
-     * Export saved players (SteamID,name) to known_players.txt next to the world.
+     * Export saved players (SteamID,name) to known_players.txt next to the world,
+     * waiting for the background export to finish.
      * @return number of entries written
      */
-    public synchronized int exportKnownPlayers(Server server) {
-        ensureWorld(server);
-        if (configDir == null) return 0;
-        if (!configDir.exists()) configDir.mkdirs();
-        File out = new File(configDir, "known_players.txt");
-        Map<Long, String> used = server.world.getUsedPlayerNames();
-        int count = 0;
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(out))) {
-            bw.write("# auth,name\n");
-            for (Map.Entry<Long, String> e : used.entrySet()) {
-                if (e.getValue() != null) {
-                    bw.write(e.getKey() + "," + e.getValue() + "\n");
-                    count++;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    public int exportKnownPlayers(Server server) {
+        try {
+            return exportKnownPlayers(server, KnownPlayersExport.Format.TXT, KnownPlayersExport.Filter.ALL).join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+            return 0;
         }
-        return count;
     }
 
-    /** Append an admin/audit log line (timestamped) to admin_log.txt. */
-    public synchronized void logAdminAction(Server server, String line) {
-        ensureWorld(server);
-        if (configDir == null) return;
-        if (!configDir.exists()) configDir.mkdirs();
-        File out = new File(configDir, "admin_log.txt");
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(out, true))) {
-            bw.write(System.currentTimeMillis() + "," + line + "\n");
-        } catch (IOException ignore) {}
+    /**
+     * Export known players (saved players and the name cache) to
+     * {@code known_players.<txt|csv|jsonl>} in the world's GateKeeper folder.
+     * The manager lock is held only to capture the current snapshot; formatting
+     * and I/O run on a background thread.
+     * Call from the server thread, which owns the saved-players map.
+     * @return completes with the number of rows written
+     */
+    public CompletableFuture<Integer> exportKnownPlayers(Server server, KnownPlayersExport.Format format,
+                                                         KnownPlayersExport.Filter filter) {
+        WorldState w;
+        synchronized (this) {
+            w = ensureWorld(server);
+        }
+        File dir = w.configDir;
+        if (dir == null) return CompletableFuture.completedFuture(0);
+        Map<Long, String> saved = server.world == null ? null : server.world.getUsedPlayerNames();
+        KnownPlayersExport export = KnownPlayersExport.capture(saved, w.names.cachedNames, w.snapshot::contains);
+        File out = exportFile(dir, format);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return export.writeTo(out, format, filter);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, exporter);
+    }
+
+    /** @return where {@link #exportKnownPlayers(Server, KnownPlayersExport.Format, KnownPlayersExport.Filter)} writes. */
+    public static File exportFile(File configDir, KnownPlayersExport.Format format) {
+        return new File(configDir, "known_players." + format.extension);
+    }
+
+    /** Queue an admin/audit log line (timestamped) for admin_log.txt. Audit lines are never dropped. */
+    public void logAdminAction(Server server, String line) {
+        File out;
+        synchronized (this) {
+            out = ensureWorld(server).adminLogFile;
+        }
+        if (out == null) return;
+        logAppender.put(out, System.currentTimeMillis() + "," + line);
     }
 
     // --- Name cache -------------------------------------------------------
-    /** Remember a last-known name for the given auth and persist cache. */
-    public synchronized void rememberName(long auth, String name) {
+    /**
+     * Remember a last-known name for the given auth in the server's world. O(1) and
+     * no I/O: the cache file is rewritten on a debounce, and only when a mapping
+     * actually changed.
+     */
+    public synchronized void rememberName(Server server, long auth, String name) {
+        rememberName(ensureWorld(server), auth, name);
+    }
+
+    /** As {@link #rememberName(Server, long, String)} for a world's state. Caller holds the monitor. */
+    private void rememberName(WorldState w, long auth, String name) {
         if (name == null || name.isEmpty()) return;
-        authToName.put(auth, name);
-        nameToAuth.put(name.toLowerCase(Locale.ENGLISH), auth);
-        saveNameCache();
+        if (w.names.remember(auth, name)) saveNameCache(w);
+    }
+
+    // --- Network blocklist ------------------------------------------------
+    /**
+     * @return true if {@code address} (as the client's network info prints it)
+     *         falls in a network blocked for the server's world; counts the hit.
+     *         Lock-free and allocation-free.
+     */
+    public boolean isBlockedNetwork(Server server, String address) {
+        return snapshotFor(server).blockedNetworks.hit(address);
+    }
+
+    /**
+     * Block connections from a network, e.g. {@code 203.0.113.0/24} or {@code 2001:db8::/32}.
+     * @return true if newly blocked
+     * @throws IllegalArgumentException if {@code cidr} is not a valid network ({@link NetBlocklist#canonical})
+     */
+    public synchronized boolean blockNetwork(Server server, String cidr) {
+        WorldState w = ensureWorld(server);
+        NetBlocklist next = w.blockedNetworks.with(cidr);
+        if (next == w.blockedNetworks) return false;
+        setBlockedNetworks(w, next);
+        return true;
+    }
+
+    /** @return true if the network was blocked and no longer is. */
+    public synchronized boolean unblockNetwork(Server server, String cidr) {
+        WorldState w = ensureWorld(server);
+        NetBlocklist next = w.blockedNetworks.without(cidr);
+        if (next == w.blockedNetworks) return false;
+        setBlockedNetworks(w, next);
+        return true;
+    }
+
+    /** @return the world's blocked networks with their hit counters. Lock-free. */
+    NetBlocklist getBlockedNetworks(Server server) { return snapshotFor(server).blockedNetworks; }
+
+    private void setBlockedNetworks(WorldState w, NetBlocklist list) {
+        w.blockedNetworks = list;
+        publish(w);
+        if (w.blocklistFile != null) writer.schedule(w.blocklistFile.getPath(), () -> writeBlockedNetworks(w));
     }
 
-    private void loadNameCache() {
-        if (nameCacheFile == null) return;
-        if (!nameCacheFile.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(nameCacheFile))) {
+    /** Read blocked_networks.json; invalid entries are skipped, and an unreadable file blocks nothing. */
+    private static void loadBlockedNetworks(WorldState w) {
+        w.blockedNetworks = NetBlocklist.EMPTY;
+        if (!w.blocklistFile.exists()) return;
+        try (BufferedReader br = new BufferedReader(new FileReader(w.blocklistFile))) {
+            BlockedNetworks bn = new Gson().fromJson(br, BlockedNetworks.class);
+            if (bn == null || bn.networks == null) return;
+            List<String> valid = new ArrayList<>(bn.networks.size());
+            for (String cidr : bn.networks) {
+                String c = NetBlocklist.canonical(cidr);
+                if (c != null) valid.add(c);
+                else System.err.println("GateKeeper: Ignoring invalid network '" + cidr + "' in " + w.blocklistFile.getName());
+            }
+            w.blockedNetworks = NetBlocklist.of(valid);
+        } catch (IOException | JsonSyntaxException e) {
+            System.err.println("GateKeeper: Failed to read " + w.blocklistFile.getName() + "; no networks blocked: " + e.getMessage());
+        }
+    }
+
+    /** Runs on the writer thread. */
+    private static void writeBlockedNetworks(WorldState w) {
+        NetBlocklist list = w.blockedNetworks;
+        BlockedNetworks bn = new BlockedNetworks();
+        for (int i = 0; i < list.size(); i++) bn.networks.add(list.cidr(i));
+        try {
+            WriteBehind.writeAtomically(w.blocklistFile, PRETTY_GSON.toJson(bn));
+        } catch (IOException e) {
+            System.err.println("GateKeeper: Failed to write " + w.blocklistFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static void loadNameCache(WorldState w) {
+        if (!w.nameCacheFile.exists()) return;
+        try (BufferedReader br = new BufferedReader(new FileReader(w.nameCacheFile))) {
             Gson gson = new Gson();
             NameCache nc = gson.fromJson(br, NameCache.class);
-            if (nc != null) {
-                authToName.clear();
-                nameToAuth.clear();
-                if (nc.authNames != null) authToName.putAll(nc.authNames);
-                if (nc.names != null) {
-                    // Normalize to lowercase keys
-                    for (Map.Entry<String, Long> e : nc.names.entrySet()) {
-                        if (e.getKey() != null && e.getValue() != null) {
-                            nameToAuth.put(e.getKey().toLowerCase(Locale.ENGLISH), e.getValue());
-                        }
-                    }
-                }
-            }
+            if (nc != null) w.names.loadCache(nc.authNames, nc.names);
         } catch (IOException | JsonSyntaxException ignore) {
             // Ignore cache errors silently; cache is best-effort
         }
     }
 
-    private void saveNameCache() {
-        if (configDir == null || nameCacheFile == null) return;
-        if (!configDir.exists()) configDir.mkdirs();
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(nameCacheFile))) {
-            NameCache nc = new NameCache();
-            nc.authNames = new HashMap<>(authToName);
-            // Persist name->auth with lowercase keys
-            Map<String, Long> namesOut = new HashMap<>();
-            for (Map.Entry<String, Long> e : nameToAuth.entrySet()) {
-                if (e.getKey() != null && e.getValue() != null) {
-                    namesOut.put(e.getKey().toLowerCase(Locale.ENGLISH), e.getValue());
-                }
-            }
-            nc.names = namesOut;
-            Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
-            bw.write(gson.toJson(nc));
+    /** Queue a debounced rewrite of name_cache.json from the live maps. */
+    private void saveNameCache(WorldState w) {
+        if (w.nameCacheFile == null) return;
+        metrics.nameCacheSaves.inc();
+        writer.schedule(w.nameCacheFile.getPath(), () -> writeNameCache(w, metrics), nameCacheDelayMs);
+    }
+
+    /** Runs on the writer thread; the concurrent maps are serialized in place (keys already lower-case). */
+    private static void writeNameCache(WorldState w, Metrics metrics) {
+        long start = metrics.nameCacheWrite.start();
+        NameCache nc = new NameCache();
+        nc.authNames = w.names.cachedNames;
+        nc.names = w.names.cachedAuths;
+        try {
+            WriteBehind.writeAtomically(w.nameCacheFile, PRETTY_GSON.toJson(nc));
         } catch (IOException ignore) {}
+        metrics.nameCacheWrite.stop(start);
+    }
+
+    // --- Metrics ----------------------------------------------------------
+    /** @return this manager's counters and latency histograms. */
+    public Metrics getMetrics() { return metrics; }
+
+    /** @return the Prometheus text file for the server's world, or null if metrics are disabled. */
+    public synchronized File getMetricsFile(Server server) {
+        WorldState w = ensureWorld(server);
+        return !metrics.isEnabled() || w.configDir == null ? null : new File(w.configDir, METRICS_FILE_NAME);
+    }
+
+    /** Write the metrics file every {@link #METRICS_EXPORT_MS} once a world is loaded, unless metrics are off. */
+    private void startMetricsExport() {
+        if (metrics.isEnabled() && metricsExporting.compareAndSet(false, true)) {
+            metricsExport.scheduleWithFixedDelay(this::writeMetricsFile, METRICS_EXPORT_MS, METRICS_EXPORT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write the metrics, plus gauges for the current world, to its
+     * gatekeeper.prom, atomically, as the node exporter textfile collector expects.
+     */
+    void writeMetricsFile() {
+        WorldState w;
+        int loaded;
+        synchronized (this) {
+            w = world;
+            loaded = worlds.size();
+        }
+        if (w.configDir == null) return;
+        Snapshot s = w.snapshot;
+        StringBuilder sb = new StringBuilder(8_192);
+        metrics.appendPrometheus(sb);
+        Metrics.appendGauge(sb, "gatekeeper_whitelist_enabled", "1 if the current world's whitelist is enforced.", s.enabled ? 1 : 0);
+        Metrics.appendGauge(sb, "gatekeeper_lockdown", "1 if the current world is in lockdown.", s.lockdown ? 1 : 0);
+        Metrics.appendGauge(sb, "gatekeeper_whitelist_entries", "Whitelisted SteamIDs in the current world.", s.size());
+        Metrics.appendGauge(sb, "gatekeeper_timed_entries", "Whitelist entries with an expiry in the current world.", s.expiries.size());
+        Metrics.appendGauge(sb, "gatekeeper_blocked_networks", "Networks blocked in the current world.", s.blockedNetworks.size());
+        Metrics.appendGauge(sb, "gatekeeper_loaded_worlds", "Worlds whose whitelist is held in memory.", loaded);
+        Metrics.appendGauge(sb, "gatekeeper_denied_log_dropped_lines", "Denied-log lines dropped under load since start.", getDroppedLogLines());
+        try {
+            WriteBehind.writeAtomically(new File(w.configDir, METRICS_FILE_NAME), sb.toString());
+        } catch (IOException e) {
+            // Best-effort, like the other derived files; the next export tries again
+        }
     }
 }
 
@@ -385,7 +1738,14 @@ public class WhitelistManager {
 class WhitelistConfig {
     boolean enabled = false;
     boolean lockdown = false;
-    java.util.List<Long> auth = new java.util.ArrayList<>();
+    long[] auth = new long[0];
+    // SteamID -> time its access ends (epoch ms), for timed entries only; omitted when empty
+    Map<Long, Long> expires;
+}
+
+/** JSON structure of blocked_networks.json: CIDR prefixes, in the order they were added. */
+class BlockedNetworks {
+    List<String> networks = new ArrayList<>();
 }
 
 /**
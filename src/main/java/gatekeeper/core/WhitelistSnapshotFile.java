@@ -0,0 +1,184 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary alternative to whitelist.json, stored as {@code whitelist.bin}.
+ * <p>
+ * Layout (big-endian): 4-byte magic {@code GKW1}, {@code flags:1} (bit 0
+ * enabled, bit 1 lockdown), 3 reserved bytes, {@code count:4},
+ * {@code payloadLength:4}, {@code crc32(payload):4}, then the payload: the
+ * SteamIDs in ascending order, each stored as the unsigned LEB128 varint of its
+ * difference from the previous one (the first from 0). Neighbouring SteamID64s
+ * differ in the low bits only, so entries take a few bytes each instead of the
+ * ~25 of a pretty-printed JSON line. With flag bit 2 set, the payload goes on
+ * with the expiry times of timed entries: a varint count, then per entry the
+ * varint delta of its SteamID from the previous timed one and the varint
+ * expiry time (epoch ms).
+ * <p>
+ * Large files are read through a read-only memory map and decoded straight into
+ * a {@link LongHashSet} sized up front, with no intermediate text, boxing or
+ * arrays. Like the journal, a file that fails the length or checksum check is
+ * rejected as a whole.
+ */
+final class WhitelistSnapshotFile {
+    static final String FILE_NAME = "whitelist.bin";
+    static final int FLAG_ENABLED = 1;
+    static final int FLAG_LOCKDOWN = 2;
+    static final int FLAG_EXPIRIES = 4;
+
+    private static final byte[] MAGIC = {'G', 'K', 'W', '1'};
+    private static final int HEADER_BYTES = 20;
+    // Below this a plain read is cheaper than setting up a mapping
+    private static final long MAP_THRESHOLD_BYTES = 64 * 1024;
+
+    private WhitelistSnapshotFile() {}
+
+    /** Encode a snapshot; {@code sorted} must be ascending. */
+    static byte[] encode(boolean enabled, boolean lockdown, long[] sorted) {
+        return encode(enabled, lockdown, sorted, Collections.emptyMap());
+    }
+
+    /** Encode a snapshot with the expiry times (epoch ms) of its timed entries. */
+    static byte[] encode(boolean enabled, boolean lockdown, long[] sorted, Map<Long, Long> expiries) {
+        ByteBuffer payload = ByteBuffer.allocate(Math.max(16, sorted.length * 4));
+        long prev = 0L;
+        for (long id : sorted) {
+            payload = ensureRoom(payload, 10);
+            putVarint(payload, id - prev);
+            prev = id;
+        }
+        if (!expiries.isEmpty()) {
+            payload = ensureRoom(payload, 10);
+            putVarint(payload, expiries.size());
+            prev = 0L;
+            for (Map.Entry<Long, Long> e : new TreeMap<>(expiries).entrySet()) {
+                payload = ensureRoom(payload, 20);
+                putVarint(payload, e.getKey() - prev);
+                putVarint(payload, e.getValue());
+                prev = e.getKey();
+            }
+        }
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payload.limit());
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + payload.limit());
+        out.put(MAGIC);
+        out.put((byte) ((enabled ? FLAG_ENABLED : 0) | (lockdown ? FLAG_LOCKDOWN : 0)
+                | (expiries.isEmpty() ? 0 : FLAG_EXPIRIES)));
+        out.put(new byte[3]);
+        out.putInt(sorted.length);
+        out.putInt(payload.limit());
+        out.putInt((int) crc.getValue());
+        out.put(payload);
+        return out.array();
+    }
+
+    /** Write a snapshot atomically (temp file, then move). */
+    static void write(File target, boolean enabled, boolean lockdown, long[] sorted) throws IOException {
+        write(target, enabled, lockdown, sorted, Collections.emptyMap());
+    }
+
+    /** As {@link #write(File, boolean, boolean, long[])}, with expiry times of timed entries. */
+    static void write(File target, boolean enabled, boolean lockdown, long[] sorted, Map<Long, Long> expiries) throws IOException {
+        WriteBehind.writeAtomically(target, encode(enabled, lockdown, sorted, expiries));
+    }
+
+    /**
+     * Decode {@code file} into {@code into}, which should be empty.
+     * @return the flag bits ({@link #FLAG_ENABLED}, {@link #FLAG_LOCKDOWN})
+     * @throws IOException if the file is unreadable, truncated, corrupt or not a GateKeeper snapshot
+     */
+    static int read(File file, LongHashSet into) throws IOException {
+        return read(file, into, null);
+    }
+
+    /** As {@link #read(File, LongHashSet)}, also putting expiry times into {@code expiries} if not null. */
+    static int read(File file, LongHashSet into, Map<Long, Long> expiries) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) throw new IOException("bad snapshot size " + size);
+            ByteBuffer buf;
+            if (size >= MAP_THRESHOLD_BYTES) {
+                // Note: Windows refuses to replace a file while a mapping is alive; a
+                // compaction hitting that fails, keeps its journal and retries later
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+                buf.flip();
+            }
+            return decode(buf, into, expiries);
+        }
+    }
+
+    /** Decode an encoded snapshot from {@code buf}'s position to its limit. */
+    static int decode(ByteBuffer buf, LongHashSet into, Map<Long, Long> expiries) throws IOException {
+        if (buf.remaining() < HEADER_BYTES) throw new IOException("truncated snapshot header");
+        for (byte b : MAGIC) {
+            if (buf.get() != b) throw new IOException("not a GateKeeper whitelist snapshot");
+        }
+        int flags = buf.get() & 0xFF;
+        buf.position(buf.position() + 3);
+        int count = buf.getInt();
+        int length = buf.getInt();
+        int expectedCrc = buf.getInt();
+        if (count < 0 || length < 0 || length != buf.remaining()) throw new IOException("snapshot length mismatch");
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate());
+        if ((int) crc.getValue() != expectedCrc) throw new IOException("snapshot checksum mismatch");
+        into.ensureCapacity(count);
+        long prev = 0L;
+        for (int i = 0; i < count; i++) {
+            prev += getVarint(buf);
+            into.add(prev);
+        }
+        if ((flags & FLAG_EXPIRIES) != 0) {
+            long timed = getVarint(buf);
+            if (timed < 0 || timed > count) throw new IOException("bad snapshot expiry count");
+            prev = 0L;
+            for (long i = 0; i < timed; i++) {
+                prev += getVarint(buf);
+                long untilMs = getVarint(buf);
+                if (expiries != null) expiries.put(prev, untilMs);
+            }
+        }
+        if (buf.hasRemaining()) throw new IOException("snapshot has trailing bytes");
+        return flags;
+    }
+
+    private static ByteBuffer ensureRoom(ByteBuffer payload, int bytes) {
+        if (payload.remaining() >= bytes) return payload;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(payload.capacity() * 2, payload.position() + bytes));
+        payload.flip();
+        grown.put(payload);
+        return grown;
+    }
+
+    private static void putVarint(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long v = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) throw new IOException("truncated snapshot entry");
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IOException("malformed snapshot varint");
+    }
+}
@@ -0,0 +1,129 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import necesse.engine.network.server.Server;
+import necesse.engine.world.World;
+
+/**
+ * Everything {@link WhitelistManager} keeps for one world: file locations, the
+ * mutable whitelist, its journal and audit store, the name index and the
+ * snapshot last published for it.
+ * <p>
+ * Mutable fields are guarded by the manager's monitor; {@link #snapshot} is
+ * volatile so access checks for any loaded world can read it without locking.
+ * Snapshots share one copy of the SteamID set and carry the few changes since
+ * it was taken, so a single add or remove does not copy the whole set.
+ */
+final class WorldState {
+    // Overlays up to this size never force a new base
+    private static final int OVERLAY_MIN = 64;
+
+    final long worldId;
+    // Null for the placeholder used before any world is known
+    final File configDir;
+    final File configFile;
+    final File binaryFile;
+    final File nameCacheFile;
+    final File deniedLogFile;
+    final File adminLogFile;
+    final File blocklistFile;
+    final WhitelistJournal journal;
+    final AuditStore audit;
+
+    // Live whitelist; change it only through addId/removeId/clearIds so snapshots see the change
+    final LongHashSet authIds = new LongHashSet();
+    // Copy of authIds that published snapshots share (null: the next snapshot copies authIds),
+    // and the changes made since it was taken, which each snapshot copies as its overlay
+    WhitelistManager.Snapshot.Base publishedBase;
+    final LongHashSet addedSinceBase = new LongHashSet();
+    final LongHashSet removedSinceBase = new LongHashSet();
+    // Deadlines of timed entries; expired ones are removed from authIds by the manager's ticker
+    final ExpiryWheel expiries = new ExpiryWheel(System.currentTimeMillis());
+    // Unmodifiable copy for snapshots, rebuilt after expiries change (null: stale)
+    Map<Long, Long> expiryView;
+    // Replaced, never mutated (counters aside); read by the writer thread
+    volatile NetBlocklist blockedNetworks = NetBlocklist.EMPTY;
+    boolean enabled = false;
+    boolean lockdown = false;
+    // Compacted snapshot format: whitelist.bin when true, else whitelist.json (read by the writer thread)
+    volatile boolean binarySnapshot;
+    // Name <-> SteamID resolution over online clients, saved players and this world's name cache
+    final NameIndex names = new NameIndex();
+    volatile WhitelistManager.Snapshot snapshot = WhitelistManager.Snapshot.EMPTY;
+
+    // What the snapshot file held when last read or written; external edits are diffed against it.
+    // Reading the file for a diff and writing it both happen under fileLock.
+    final Object fileLock = new Object();
+    volatile WhitelistManager.Snapshot fileBase = WhitelistManager.Snapshot.EMPTY;
+    // Last server seen for this world, so hot reloads can kick removed players
+    volatile Server server;
+    ConfigWatcher.Registration watch;
+    // Completes once the writes queued by the latest eviction have run
+    volatile CompletableFuture<Void> landed;
+    // Shared store version the SteamIDs were last brought in line with, or -1 (monitor)
+    long sharedVersion = -1L;
+
+    /** @param configDir the world's GateKeeper folder, or null for a state without files */
+    WorldState(long worldId, File configDir) {
+        this.worldId = worldId;
+        this.configDir = configDir;
+        this.configFile = configDir == null ? null : new File(configDir, "whitelist.json");
+        this.binaryFile = configDir == null ? null : new File(configDir, WhitelistSnapshotFile.FILE_NAME);
+        this.nameCacheFile = configDir == null ? null : new File(configDir, "name_cache.json");
+        this.deniedLogFile = configDir == null ? null : new File(configDir, "denied_log.txt");
+        this.adminLogFile = configDir == null ? null : new File(configDir, "admin_log.txt");
+        this.blocklistFile = configDir == null ? null : new File(configDir, "blocked_networks.json");
+        this.journal = configDir == null ? null : new WhitelistJournal(new File(configDir, "whitelist.journal"));
+        this.audit = configDir == null ? null : new AuditStore(configDir);
+    }
+
+    /** @return true if the SteamID was not whitelisted and now is. */
+    boolean addId(long auth) {
+        if (!authIds.add(auth)) return false;
+        if (publishedBase != null && !removedSinceBase.remove(auth)) addedSinceBase.add(auth);
+        dropBaseIfOverlayLarge();
+        return true;
+    }
+
+    /** @return true if the SteamID was whitelisted and no longer is. */
+    boolean removeId(long auth) {
+        if (!authIds.remove(auth)) return false;
+        if (publishedBase != null && !addedSinceBase.remove(auth)) removedSinceBase.add(auth);
+        dropBaseIfOverlayLarge();
+        return true;
+    }
+
+    void clearIds() {
+        authIds.clear();
+        resetBase();
+    }
+
+    /**
+     * Once the overlay outgrows about the square root of the base, copying it
+     * per publish costs more than a fresh base would amortized; start over.
+     */
+    private void dropBaseIfOverlayLarge() {
+        if (publishedBase == null) return;
+        int overlay = addedSinceBase.size() + removedSinceBase.size();
+        if (overlay > Math.max(OVERLAY_MIN, (int) Math.sqrt(publishedBase.size()))) resetBase();
+    }
+
+    private void resetBase() {
+        publishedBase = null;
+        addedSinceBase.clear();
+        removedSinceBase.clear();
+    }
+
+    /** @return the file the compacted snapshot lives in, per {@link #binarySnapshot}. */
+    File snapshotFile() { return binarySnapshot ? binaryFile : configFile; }
+
+    /** @return the GateKeeper folder next to a world save (inside it for folder worlds). */
+    static File configDirFor(World world) {
+        File worldPath = world.filePath;
+        if (World.isWorldADirectory(worldPath)) return new File(worldPath, "GateKeeper");
+        String baseName = World.getWorldDisplayName(worldPath.getName());
+        return new File(worldPath.getParentFile(), baseName + ".GateKeeper");
+    }
+}
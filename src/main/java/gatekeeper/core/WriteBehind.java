@@ -0,0 +1,106 @@
+package gatekeeper.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalescing background writer for GateKeeper's persistence files.
+ * <p>
+ * {@link #schedule} registers a write under a key (usually the target path).
+ * Scheduling the same key again before the write runs replaces the pending
+ * write, so a burst of mutations becomes one write of the latest state. All
+ * writes run on one daemon thread, so writes to a file never race each other.
+ */
+final class WriteBehind {
+    private final ScheduledExecutorService exec;
+    private final long delayMs;
+    private final ConcurrentHashMap<String, Runnable> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param threadName name of the writer thread
+     * @param delayMs how long a write waits for further mutations before running
+     */
+    WriteBehind(String threadName, long delayMs) {
+        this.delayMs = delayMs;
+        this.exec = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Queue {@code write} under {@code key}, replacing any write still pending for that key. */
+    void schedule(String key, Runnable write) { schedule(key, write, delayMs); }
+
+    /** As {@link #schedule(String, Runnable)} with an explicit debounce for this key. */
+    void schedule(String key, Runnable write, long debounceMs) {
+        if (pending.put(key, write) == null) {
+            exec.schedule(() -> run(key), debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Run every pending write now and wait for it, including one already in progress. */
+    void flush() {
+        try {
+            exec.submit(() -> { for (String key : pending.keySet()) run(key); }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * As {@link #flush()}, but without waiting: the pending writes run next on the writer thread.
+     * @return completes once they have run
+     */
+    CompletableFuture<Void> flushAsync() {
+        return CompletableFuture.runAsync(() -> { for (String key : pending.keySet()) run(key); }, exec);
+    }
+
+    private void run(String key) {
+        Runnable write = pending.remove(key);
+        if (write == null) return;
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write {@code content} to a sibling temp file and move it over {@code target},
+     * so readers never see a half-written file.
+     */
+    static void writeAtomically(File target, String content) throws IOException {
+        writeAtomically(target, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Byte variant of {@link #writeAtomically(File, String)}. */
+    static void writeAtomically(File target, byte[] content) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, target.getName() + ".tmp");
+        Files.write(tmp.toPath(), content);
+        replace(tmp, target);
+    }
+
+    /** Move a fully written temp file over {@code target}, atomically where the file system allows. */
+    static void replace(File tmp, File target) throws IOException {
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
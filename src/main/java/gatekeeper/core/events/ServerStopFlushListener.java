@@ -0,0 +1,48 @@
+package gatekeeper.core.events;
+
+import gatekeeper.core.WhitelistManager;
+import necesse.engine.GameEventInterface;
+import necesse.engine.events.ServerStopEvent;
+
+/**
+ * Lands GateKeeper's write-behind state on disk when the server stops and its
+ * world is unloaded: pending journal records are compacted into the snapshot
+ * file, and the name cache and log lines are written.
+ * <p>
+ * Runs on the stopping server's thread and waits for the writes
+ * ({@link WhitelistManager#flush()}). The JVM shutdown hook registered by the
+ * mod stays as a backstop for exits that skip the stop event.
+ */
+public class ServerStopFlushListener implements GameEventInterface<ServerStopEvent> {
+    private volatile boolean disposed = false;
+    private final WhitelistManager manager;
+
+    /**
+     * @param manager shared whitelist manager instance
+     */
+    public ServerStopFlushListener(WhitelistManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    /** No-op; listener lifecycle is controlled by the mod. */
+    public void init(Runnable removeCallback) {
+        // No-op; store no callback, rely on disposed flag
+    }
+
+    @Override
+    /** Write everything still pending and wait for it. */
+    public void onEvent(ServerStopEvent event) {
+        if (disposed) return;
+        manager.flush();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    public void dispose() {
+        disposed = true;
+    }
+}
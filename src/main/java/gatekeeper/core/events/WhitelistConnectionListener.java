@@ -1,5 +1,7 @@
 package gatekeeper.core.events;
 
+import gatekeeper.core.ConnectionThrottle;
+import gatekeeper.core.Metrics;
 import gatekeeper.core.WhitelistManager;
 import necesse.engine.GameEventInterface;
 import necesse.engine.events.ServerClientConnectedEvent;
@@ -9,12 +11,21 @@ import necesse.engine.network.server.Server;
 import necesse.engine.network.server.ServerClient;
 import necesse.engine.commands.PermissionLevel;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Enforces whitelist policy on new client connections.
  * <p>
  * If the client is not whitelisted (and the whitelist is enabled), a denied
  * attempt is recorded, admins are notified with rate-limiting (unless in
  * lockdown), and the client is disconnected with a friendly message.
+ * Denials that are rate-limited are not lost: they are collected and sent to
+ * admins as one digest message per {@code DIGEST_WINDOW_MS}.
+ * Repeat offenders over the {@link ConnectionThrottle} budget are kicked
+ * straight away without any of that bookkeeping, and so are clients from a
+ * blocked network ({@code /whitelist block-net}), before any SteamID check.
  */
 public class WhitelistConnectionListener implements GameEventInterface<ServerClientConnectedEvent> {
     private volatile boolean disposed = false;
@@ -22,6 +33,15 @@ public class WhitelistConnectionListener implements GameEventInterface<ServerCli
 
     // Admin notify cooldown per auth (ms)
     private static final long NOTIFY_COOLDOWN_MS = 60_000L;
+    // Rate-limited denials are summarized once per window
+    private static final long DIGEST_WINDOW_MS = 30_000L;
+    private final ScheduledExecutorService digestTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "GateKeeper-notify-digest");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final String THROTTLED_REASON = "Too many connection attempts. Please wait a minute before retrying.";
+    private static final String BLOCKED_NETWORK_REASON = "Connections from your network are blocked on this server.";
 
     /**
      * @param manager shared whitelist manager instance
@@ -37,10 +57,20 @@ public class WhitelistConnectionListener implements GameEventInterface<ServerCli
     }
 
     @Override
-    /** Apply whitelist checks when a client finishes connecting. */
+    /** Apply whitelist checks when a client finishes connecting, timed in the manager's metrics. */
     public void onEvent(ServerClientConnectedEvent event) {
         if (disposed || event == null || event.client == null) return;
-        ServerClient c = event.client;
+        Metrics metrics = manager.getMetrics();
+        long start = metrics.connect.start();
+        try {
+            admit(event.client, metrics);
+        } finally {
+            metrics.connect.stop(start);
+        }
+    }
+
+    /** Let the client stay or disconnect it, counting the outcome. */
+    private void admit(ServerClient c, Metrics metrics) {
         Server server = c.getServer();
 
         long auth = c.authentication;
@@ -56,39 +86,73 @@ public class WhitelistConnectionListener implements GameEventInterface<ServerCli
                 }
             }
             // Remember name for ergonomics
-            manager.rememberName(auth, name);
-            String status = manager.isEnabled() ? "ENABLED" : "DISABLED";
+            manager.rememberName(server, auth, name);
+            manager.getClientRegistry().onConnected(c);
+            String status = manager.isEnabled(server) ? "ENABLED" : "DISABLED";
             c.sendPacket(new PacketChatMessage("[GateKeeper] Whitelist is " + status + ". Use /whitelist help"));
+            metrics.connectsPrivileged.inc();
             return;
         }
 
-        if (!manager.isEnabled()) return;
-        if (manager.isWhitelisted(server, auth, name)) return;
+        // Blocked networks: kick without recording, logging or notifying; only the prefix's hit counter moves
+        String address = c.networkInfo == null ? null : c.networkInfo.getDisplayName();
+        if (manager.isBlockedNetwork(server, address)) {
+            server.disconnectClient(c, PacketDisconnect.kickPacket(c.slot, BLOCKED_NETWORK_REASON));
+            metrics.connectsBlockedNetwork.inc();
+            return;
+        }
+
+        if (!manager.isEnabled(server) || manager.isWhitelisted(server, auth, name)) {
+            manager.getClientRegistry().onConnected(c);
+            metrics.connectsAllowed.inc();
+            return;
+        }
+
+        // Reconnect floods: kick without recording, logging or notifying
+        if (manager.getConnectionThrottle().tryAcquire(auth, address) != ConnectionThrottle.ALLOWED) {
+            server.disconnectClient(c, PacketDisconnect.kickPacket(c.slot, THROTTLED_REASON));
+            metrics.connectsThrottled.inc();
+            return;
+        }
 
         // Record attempt (for recent + log + name cache)
-        String address = c.networkInfo == null ? null : c.networkInfo.getDisplayName();
         manager.recordDeniedAttempt(server, auth, name, address);
 
-        // Notify admins/owners with rate limit unless in lockdown
-        if (!manager.isLockdown() && manager.shouldNotify(auth, NOTIFY_COOLDOWN_MS)) {
-            String who = (name == null || name.isEmpty()) ? "<unknown>" : name;
-            String msg = "[GateKeeper] Connection blocked for non-whitelisted user: " + who +
-                    " — approve with /whitelist approve " + who + " or /whitelist approve-last";
-            for (int i = 0; i < server.getSlots(); i++) {
-                ServerClient admin = server.getClient(i);
-                if (admin != null && admin.getPermissionLevel().getLevel() >= necesse.engine.commands.PermissionLevel.ADMIN.getLevel()) {
-                    admin.sendPacket(new PacketChatMessage(msg));
-                }
+        // Notify admins/owners with rate limit unless in lockdown; the rest go into the digest
+        if (!manager.isLockdown(server)) {
+            if (manager.shouldNotify(auth, NOTIFY_COOLDOWN_MS)) {
+                String who = (name == null || name.isEmpty()) ? "<unknown>" : name;
+                notifyAdmins(manager, server, "[GateKeeper] Connection blocked for non-whitelisted user: " + who +
+                        " — approve with /whitelist approve " + who + " or /whitelist approve-last");
+                manager.rememberNotify(auth);
+                metrics.notifications.inc();
+            } else if (manager.addToDigest(name)) {
+                digestTimer.schedule(() -> sendDigest(server), DIGEST_WINDOW_MS, TimeUnit.MILLISECONDS);
             }
-            manager.rememberNotify(auth);
         }
 
         // Disconnect with friendly message
         String who = (name == null || name.isEmpty()) ? "you" : name;
-        String reason = manager.isLockdown()
+        String reason = manager.isLockdown(server)
                 ? "Server is in lockdown. Please contact an admin."
                 : ("Not whitelisted. Ask an admin to run /whitelist approve " + who);
         server.disconnectClient(c, PacketDisconnect.kickPacket(c.slot, reason));
+        metrics.connectsDenied.inc();
+    }
+
+    /** Send the collected digest, unless lockdown was switched on in the meantime. */
+    private void sendDigest(Server server) {
+        String msg = manager.takeDigest();
+        if (msg != null && !disposed && !manager.isLockdown(server)) {
+            notifyAdmins(manager, server, msg);
+            manager.getMetrics().digests.inc();
+        }
+    }
+
+    private static void notifyAdmins(WhitelistManager manager, Server server, String msg) {
+        for (ServerClient admin : manager.getClientRegistry().admins(server)) {
+            admin.sendPacket(new PacketChatMessage(msg));
+        }
     }
 
     @Override
@@ -98,5 +162,6 @@ public class WhitelistConnectionListener implements GameEventInterface<ServerCli
 
     public void dispose() {
         disposed = true;
+        digestTimer.shutdownNow();
     }
 }
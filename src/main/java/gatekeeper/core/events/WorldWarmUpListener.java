@@ -0,0 +1,46 @@
+package gatekeeper.core.events;
+
+import gatekeeper.core.WhitelistManager;
+import necesse.engine.GameEventInterface;
+import necesse.engine.events.ServerStartEvent;
+
+/**
+ * Starts loading the world's whitelist and name cache as soon as the server
+ * starts, so the first player to connect does not pay for it.
+ * <p>
+ * The load runs on a background thread ({@link WhitelistManager#warmUp});
+ * connection checks that arrive first wait for it to finish.
+ */
+public class WorldWarmUpListener implements GameEventInterface<ServerStartEvent> {
+    private volatile boolean disposed = false;
+    private final WhitelistManager manager;
+
+    /**
+     * @param manager shared whitelist manager instance
+     */
+    public WorldWarmUpListener(WhitelistManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    /** No-op; listener lifecycle is controlled by the mod. */
+    public void init(Runnable removeCallback) {
+        // No-op; store no callback, rely on disposed flag
+    }
+
+    @Override
+    /** Kick off the background load for the started server's world. */
+    public void onEvent(ServerStartEvent event) {
+        if (disposed || event == null || event.server == null) return;
+        manager.warmUp(event.server);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    public void dispose() {
+        disposed = true;
+    }
+}
@@ -0,0 +1,132 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncLogAppenderTest {
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-log-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        tempDir.delete();
+    }
+
+    @Test
+    void linesKeepOrderPerFile_acrossInterleavedTargets() throws Exception {
+        AsyncLogAppender appender = new AsyncLogAppender("test-log", 64, 0, 0);
+        File a = new File(tempDir, "a.txt");
+        File b = new File(tempDir, "b.txt");
+        for (int i = 0; i < 1_000; i++) {
+            appender.put(a, "a" + i);
+            if (i % 3 == 0) appender.put(b, "b" + i);
+        }
+        appender.flush();
+        List<String> la = Files.readAllLines(a.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1_000, la.size());
+        for (int i = 0; i < la.size(); i++) assertEquals("a" + i, la.get(i));
+        assertEquals(334, Files.readAllLines(b.toPath(), StandardCharsets.UTF_8).size());
+        assertEquals(0, appender.droppedLines());
+    }
+
+    @Test
+    void rotatesBySize_keepingRetentionCount() throws Exception {
+        AsyncLogAppender appender = new AsyncLogAppender("test-log", 16, 100, 2);
+        File log = new File(tempDir, "denied_log.txt");
+        // 10 bytes per line; flush per line so each write checks the size limit
+        for (int i = 0; i < 60; i++) {
+            appender.put(log, String.format("line-%03d", i));
+            appender.flush();
+        }
+        assertTrue(log.length() <= 100);
+        assertTrue(new File(tempDir, "denied_log.txt.1").exists());
+        assertTrue(new File(tempDir, "denied_log.txt.2").exists());
+        assertFalse(new File(tempDir, "denied_log.txt.3").exists());
+        List<String> live = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        assertEquals("line-059", live.get(live.size() - 1));
+    }
+
+    /** An appender whose drain thread blocks in its first write until released. */
+    private static final class StalledAppender extends AsyncLogAppender {
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        StalledAppender(int capacity) {
+            super("test-log", capacity, 0, 0);
+        }
+
+        @Override
+        void append(File target, ByteBuffer data) throws IOException {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.append(target, data);
+        }
+    }
+
+    @Test
+    void offer_dropsAndCountsLinesWhileTheRingIsFull() throws Exception {
+        StalledAppender appender = new StalledAppender(4);
+        File log = new File(tempDir, "denied_log.txt");
+        assertTrue(appender.offer(log, "line-0"));
+        appender.stalled.await(); // line-0 taken by the drainer, which now holds it
+        for (int i = 1; i <= 4; i++) assertTrue(appender.offer(log, "line-" + i));
+        for (int i = 5; i < 11; i++) assertFalse(appender.offer(log, "line-" + i));
+        assertEquals(6, appender.droppedLines());
+
+        appender.release.countDown();
+        appender.flush();
+        assertEquals(Arrays.asList("line-0", "line-1", "line-2", "line-3", "line-4"),
+                Files.readAllLines(log.toPath(), StandardCharsets.UTF_8));
+        // Space again once drained
+        assertTrue(appender.offer(log, "line-11"));
+        appender.flush();
+        assertEquals(6, appender.droppedLines());
+    }
+
+    @Test
+    void put_waitsForSpace_andLosesNoLines() throws Exception {
+        StalledAppender appender = new StalledAppender(4);
+        File log = new File(tempDir, "admin_log.txt");
+        appender.put(log, "line-0");
+        appender.stalled.await();
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= 100; i++) appender.put(log, "line-" + i);
+        });
+        producer.start();
+        // Four lines fill the ring; the fifth put parks until the drainer frees space
+        while (producer.getState() != Thread.State.WAITING) {
+            assertTrue(producer.isAlive(), "put returned while the ring was full");
+            Thread.onSpinWait();
+        }
+        assertEquals(0, appender.droppedLines());
+
+        appender.release.countDown();
+        producer.join();
+        appender.flush();
+        List<String> written = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        assertEquals(101, written.size());
+        for (int i = 0; i < written.size(); i++) assertEquals("line-" + i, written.get(i));
+        assertEquals(0, appender.droppedLines());
+    }
+}
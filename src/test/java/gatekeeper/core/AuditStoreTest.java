@@ -0,0 +1,162 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+class AuditStoreTest {
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-audit-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        tempDir.delete();
+    }
+
+    @Test
+    void historyCountAndTop_answerFromIndex() throws Exception {
+        AuditStore store = new AuditStore(tempDir);
+        for (int i = 0; i < 100; i++) {
+            store.append(1_000L + i, i % 4 == 0 ? 7L : 8L + (i % 3), "name" + (i % 4), "10.0.0." + i);
+        }
+        // Queries see records that have not been synced yet
+        assertEquals(25, store.count(7L, 0L));
+        assertEquals(13, store.count(7L, 1_048L)); // i = 48, 52, ..., 96
+        List<WhitelistManager.Attempt> last = store.history(7L, 0L, 3);
+        assertEquals(3, last.size());
+        assertEquals(1_088L, last.get(0).timeMs);
+        assertEquals(1_096L, last.get(2).timeMs);
+        assertEquals("name0", last.get(2).name);
+        assertEquals("10.0.0.96", last.get(2).address);
+
+        List<WhitelistManager.Offender> top = store.top(2, 0L);
+        assertEquals(2, top.size());
+        assertTrue(top.get(0).count >= top.get(1).count);
+        int sum = 0;
+        for (WhitelistManager.Offender o : store.top(10, 0L)) sum += o.count;
+        assertEquals(100, sum);
+
+        List<WhitelistManager.Offender> recentTop = store.top(10, 1_096L);
+        int recentSum = 0;
+        for (WhitelistManager.Offender o : recentTop) recentSum += o.count;
+        assertEquals(4, recentSum);
+    }
+
+    @Test
+    void reopen_readsPersistedRecords_andDropsTornTail() throws Exception {
+        AuditStore store = new AuditStore(tempDir);
+        store.append(5_000L, 42L, "raider", "1.2.3.4");
+        store.append(6_000L, 42L, "raider", "1.2.3.5");
+        store.append(7_000L, 43L, null, null);
+        store.sync();
+        File data = new File(tempDir, "audit.dat");
+        Files.write(data.toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        AuditStore reopened = new AuditStore(tempDir);
+        assertEquals(3, reopened.size());
+        assertEquals(3L * AuditStore.RECORD_BYTES, data.length());
+        List<WhitelistManager.Attempt> hist = reopened.history(42L, 0L, 10);
+        assertEquals(2, hist.size());
+        assertEquals("1.2.3.5", hist.get(1).address);
+        assertNull(reopened.history(43L, 0L, 10).get(0).name);
+
+        // Appends after reopen continue the sorted sequence
+        reopened.append(1L, 42L, "raider", null); // clock went backwards
+        assertEquals(1, reopened.count(42L, 7_000L));
+    }
+
+    @Test
+    void reopen_answersFromTheIndexCheckpoint_plusTheRecordsAfterIt() throws Exception {
+        AuditStore store = new AuditStore(tempDir);
+        int n = 10_000;
+        for (int i = 0; i < n; i++) store.append(i, 1_000L + (i % 100), "bot" + (i % 100), null);
+        store.count(1_000L, 0L); // builds the index and checkpoints it
+        assertTrue(new File(tempDir, AuditStore.INDEX_FILE_NAME).exists());
+        store.append(n, 1_000L, "bot0", null);
+        store.sync();
+
+        // Rewrite the SteamID of the first record on disk: an index loaded from the
+        // checkpoint still files it under the old one, a full scan would not
+        File data = new File(tempDir, "audit.dat");
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(data.toPath(), StandardOpenOption.WRITE)) {
+            ch.write(java.nio.ByteBuffer.allocate(8).putLong(0, 5L), 8);
+        }
+        AuditStore reopened = new AuditStore(tempDir);
+        assertEquals(101, reopened.count(1_000L, 0L)); // 100 checkpointed + the one appended after
+        assertEquals(0, reopened.count(5L, 0L));
+        assertEquals(n, reopened.history(1_000L, 0L, 1).get(0).timeMs);
+
+        // A corrupt checkpoint falls back to a full pass
+        Files.write(new File(tempDir, AuditStore.INDEX_FILE_NAME).toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+        AuditStore rescanned = new AuditStore(tempDir);
+        assertEquals(100, rescanned.count(1_000L, 0L));
+        assertEquals(1, rescanned.count(5L, 0L));
+    }
+
+    @Test
+    void failedWrite_isRequeued_andIndexedOnlyOnceOnDisk() throws Exception {
+        AuditStore store = new AuditStore(tempDir);
+        store.append(1_000L, 7L, "first", null);
+        store.sync();
+        assertEquals(1, store.count(7L, 0L));
+
+        // audit.dat can't be written while a directory stands in its way
+        File data = new File(tempDir, "audit.dat");
+        File aside = new File(tempDir, "audit.dat.aside");
+        assertTrue(data.renameTo(aside));
+        assertTrue(data.mkdir());
+        store.append(2_000L, 7L, "second", "10.0.0.2");
+        store.append(3_000L, 8L, "other", null);
+        assertThrows(java.io.IOException.class, store::sync);
+        assertEquals(3, store.size());
+
+        assertTrue(data.delete());
+        assertTrue(aside.renameTo(data));
+        store.append(4_000L, 7L, "third", null);
+        assertEquals(3, store.count(7L, 0L)); // syncs the requeued batch, then the new record
+        List<WhitelistManager.Attempt> hist = store.history(7L, 0L, 10);
+        assertEquals(Arrays.asList(1_000L, 2_000L, 4_000L), Arrays.asList(hist.get(0).timeMs, hist.get(1).timeMs, hist.get(2).timeMs));
+        assertEquals("second", hist.get(1).name);
+        assertEquals("10.0.0.2", hist.get(1).address);
+        assertEquals(4L * AuditStore.RECORD_BYTES, data.length());
+        assertEquals(4, new AuditStore(tempDir).size());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void largeHistory_lookupTimes(TestReporter reporter) throws Exception {
+        AuditStore store = new AuditStore(tempDir);
+        int n = 200_000;
+        for (int i = 0; i < n; i++) store.append(i, 1_000L + (i % 5_000), "bot" + (i % 5_000), null);
+        store.sync();
+        long start = System.nanoTime();
+        store.count(1_000L, 0L); // build the index once
+        reporter.publishEntry("indexBuildMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+
+        start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(40, store.count(1_000L + i, 0L));
+            assertEquals(10, store.history(1_000L + i, 0L, 10).size());
+        }
+        reporter.publishEntry("countPlusHistoryUs", String.valueOf((System.nanoTime() - start) / 100 / 1_000));
+
+        start = System.nanoTime();
+        assertEquals(40, new AuditStore(tempDir).count(1_000L, 0L));
+        reporter.publishEntry("reopenFirstQueryMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+    }
+}
@@ -0,0 +1,79 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import necesse.engine.commands.PermissionLevel;
+import necesse.engine.network.server.Server;
+import necesse.engine.network.server.ServerClient;
+import org.junit.jupiter.api.Test;
+
+class ClientRegistryTest {
+    private static final int SLOTS = 1_000;
+
+    private final ServerClient[] slots = new ServerClient[SLOTS];
+
+    private Server server() {
+        Server server = mock(Server.class);
+        when(server.getSlots()).thenReturn(SLOTS);
+        when(server.getClient(anyInt())).thenAnswer(inv -> slots[(Integer) inv.getArgument(0)]);
+        return server;
+    }
+
+    private ServerClient connect(Server server, int slot, long auth, PermissionLevel level) {
+        ServerClient c = mock(ServerClient.class);
+        c.slot = slot;
+        c.authentication = auth;
+        when(c.getPermissionLevel()).thenReturn(level);
+        when(c.getServer()).thenReturn(server);
+        slots[slot] = c;
+        return c;
+    }
+
+    @Test
+    void adminFanOut_touchesOnlyAdminSlots_afterFirstScan() {
+        Server server = server();
+        ClientRegistry registry = new ClientRegistry();
+        for (int i = 0; i < SLOTS; i += 2) {
+            registry.onConnected(connect(server, i, 1_000L + i, i % 100 == 0 ? PermissionLevel.ADMIN : PermissionLevel.USER));
+        }
+        assertEquals(10, registry.admins(server).size()); // first call rescans every slot
+        clearInvocations(server);
+
+        for (int round = 0; round < 100; round++) assertEquals(10, registry.admins(server).size());
+        // One liveness check per admin per call, never a walk over all slots
+        verify(server, times(100 * 10)).getClient(anyInt());
+        verify(server, never()).getSlots();
+    }
+
+    @Test
+    void staleAndDemotedClients_areDropped() {
+        Server server = server();
+        ClientRegistry registry = new ClientRegistry();
+        ServerClient admin = connect(server, 3, 33L, PermissionLevel.ADMIN);
+        ServerClient user = connect(server, 4, 44L, PermissionLevel.USER);
+        registry.onConnected(admin);
+        registry.onConnected(user);
+        assertSame(user, registry.byAuth(server, 44L));
+        assertEquals(2, registry.online(server).size());
+
+        // Slot 4 reused by someone else without us seeing the disconnect
+        ServerClient next = connect(server, 4, 45L, PermissionLevel.USER);
+        assertNull(registry.byAuth(server, 44L));
+        registry.onConnected(next);
+        assertSame(next, registry.byAuth(server, 45L));
+
+        // Admin demoted
+        when(admin.getPermissionLevel()).thenReturn(PermissionLevel.USER);
+        assertTrue(registry.admins(server).isEmpty());
+
+        // Kick-on-remove
+        registry.onDisconnected(next);
+        slots[4] = null;
+        assertNull(registry.byAuth(server, 45L));
+        List<ServerClient> online = registry.online(server);
+        assertEquals(1, online.size());
+        assertSame(admin, online.get(0));
+    }
+}
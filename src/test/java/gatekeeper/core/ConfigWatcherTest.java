@@ -0,0 +1,42 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConfigWatcherTest {
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-watch-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        tempDir.delete();
+    }
+
+    @Test
+    void editOfTheWatchedName_runsOnlyItsCallback() throws Exception {
+        ConfigWatcher watcher = new ConfigWatcher(10L);
+        CountDownLatch edited = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        assertNotNull(watcher.watch(tempDir, "whitelist.json", edited::countDown));
+        assertNotNull(watcher.watch(tempDir, "name_cache.json", other::countDown));
+
+        Files.write(new File(tempDir, "whitelist.json").toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(edited.await(30, TimeUnit.SECONDS), "no callback for the edit");
+        // Same folder, other name: its callback is never scheduled
+        assertEquals(1, other.getCount());
+    }
+}
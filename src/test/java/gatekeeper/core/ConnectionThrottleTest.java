@@ -0,0 +1,107 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+class ConnectionThrottleTest {
+
+    @Test
+    void authBucket_burstsThenRefills() {
+        ConnectionThrottle t = new ConnectionThrottle(3, 1_000L, 100, 1_000L);
+        for (int i = 0; i < 3; i++) assertEquals(ConnectionThrottle.ALLOWED, t.tryAcquire(7L, "1.2.3.4", 0L));
+        assertEquals(ConnectionThrottle.THROTTLED_AUTH, t.tryAcquire(7L, "1.2.3.4", 10L));
+        // Another SteamID is unaffected
+        assertEquals(ConnectionThrottle.ALLOWED, t.tryAcquire(8L, "1.2.3.4", 10L));
+        // One token back after the refill interval, and only one
+        assertEquals(ConnectionThrottle.ALLOWED, t.tryAcquire(7L, "1.2.3.4", 1_010L));
+        assertEquals(ConnectionThrottle.THROTTLED_AUTH, t.tryAcquire(7L, "1.2.3.4", 1_020L));
+        assertEquals(5, t.allowedCount());
+        assertEquals(2, t.throttledByAuth());
+    }
+
+    @Test
+    void addressBucket_limitsRotatingSteamIds_ignoringPort() {
+        ConnectionThrottle t = new ConnectionThrottle(5, 1_000L, 4, 60_000L);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(ConnectionThrottle.ALLOWED, t.tryAcquire(100L + i, "10.0.0.1:" + (5000 + i), 0L));
+        }
+        assertEquals(ConnectionThrottle.THROTTLED_ADDRESS, t.tryAcquire(200L, "10.0.0.1:6000", 0L));
+        assertEquals(ConnectionThrottle.ALLOWED, t.tryAcquire(200L, "10.0.0.2:6000", 0L));
+        assertEquals(ConnectionThrottle.ALLOWED, t.tryAcquire(300L, null, 0L));
+        assertEquals(1, t.throttledByAddress());
+        assertEquals(ConnectionThrottle.addressKey("10.0.0.1:1"), ConnectionThrottle.addressKey("10.0.0.1"));
+        assertNotEquals(ConnectionThrottle.addressKey("::1"), ConnectionThrottle.addressKey("::2"));
+    }
+
+    @Test
+    void reconnectStorm_acrossThreads_letsOnlyTheBurstsThrough() throws Exception {
+        ConnectionThrottle t = new ConnectionThrottle();
+        int threads = 8;
+        int perThread = 100_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int th = 0; th < threads; th++) {
+                results.add(pool.submit(storm(t, th, perThread, 0L)));
+            }
+            int allowed = 0;
+            for (Future<Integer> f : results) allowed += f.get();
+            long total = (long) threads * perThread;
+            assertEquals(total, t.allowedCount() + t.throttledByAuth() + t.throttledByAddress());
+            // The clock stands still, so each of the 16 addresses gets exactly its burst of 10
+            assertEquals(threads * 2 * 10, allowed);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void reconnectStorm_throughputAcrossThreads(TestReporter reporter) throws Exception {
+        ConnectionThrottle t = new ConnectionThrottle();
+        int threads = 8;
+        int perThread = 1_000_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int th = 0; th < threads; th++) {
+                results.add(pool.submit(storm(t, th, perThread, -1L)));
+            }
+            int allowed = 0;
+            for (Future<Integer> f : results) allowed += f.get();
+            long elapsedNs = System.nanoTime() - start;
+            long total = (long) threads * perThread;
+            reporter.publishEntry("attemptsPerSecond", String.valueOf(total * 1_000_000_000L / elapsedNs));
+            reporter.publishEntry("reachedDenyPath", String.valueOf(allowed));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 32 flooding SteamIDs per thread behind two addresses.
+     * @param nowMs fixed time for every attempt, or -1 for the real clock
+     */
+    private static Callable<Integer> storm(ConnectionThrottle t, int id, int attempts, long nowMs) {
+        return () -> {
+            String[] addresses = {"10.0.0." + id + ":1", "10.0.1." + id + ":2"};
+            int allowed = 0;
+            for (int i = 0; i < attempts; i++) {
+                long auth = 76561198000000000L + id * 32L + (i & 31);
+                int result = nowMs < 0 ? t.tryAcquire(auth, addresses[i & 1]) : t.tryAcquire(auth, addresses[i & 1], nowMs);
+                if (result == ConnectionThrottle.ALLOWED) allowed++;
+            }
+            return allowed;
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongConsumer;
+import org.junit.jupiter.api.Test;
+
+class ExpiryWheelTest {
+    private static final long START_MS = 1_700_000_000_123L;
+    private static final long DAY_MS = 86_400_000L;
+
+    @Test
+    void manyEntries_acrossAllLevels_fireWithinTheirDeadlineTick() {
+        ExpiryWheel wheel = new ExpiryWheel(START_MS);
+        Map<Long, Long> expected = new HashMap<>();
+        Random rnd = new Random(23);
+        for (long key = 0; key < 50_000; key++) {
+            // Seconds to days ahead, so entries start on every level; a few are already overdue
+            long span = key % 1000 == 0 ? -5_000L : (long) Math.pow(10, 3 + rnd.nextDouble() * 5.4);
+            long deadline = START_MS + span;
+            wheel.schedule(key, deadline);
+            expected.put(key, deadline);
+        }
+        // Cancel some and move others, earlier or later
+        for (long key = 0; key < 50_000; key += 10) {
+            assertTrue(wheel.cancel(key));
+            expected.remove(key);
+        }
+        assertFalse(wheel.cancel(0L));
+        for (long key = 7; key < 50_000; key += 70) {
+            long deadline = START_MS + 1 + rnd.nextInt((int) (2 * DAY_MS));
+            wheel.schedule(key, deadline);
+            expected.put(key, deadline);
+        }
+        assertEquals(expected.size(), wheel.size());
+        assertEquals(expected.get(7L), wheel.deadlineOf(7L));
+        assertEquals(0L, wheel.deadlineOf(10L));
+
+        long[] prev = {START_MS};
+        long[] now = {START_MS};
+        long last = START_MS + 3 * DAY_MS;
+        while (now[0] < last) {
+            prev[0] = now[0];
+            now[0] += 1 + rnd.nextInt(4_000);
+            LongConsumer check = key -> {
+                Long deadline = expected.remove(key);
+                assertNotNull(deadline, "fired twice or never scheduled: " + key);
+                // Due by now, and its tick not yet reached at the previous step (overdue ones fire on the first)
+                long tickEnd = -Math.floorDiv(-deadline, ExpiryWheel.TICK_MS) * ExpiryWheel.TICK_MS;
+                assertTrue(deadline <= now[0], key + " fired early");
+                assertTrue(prev[0] < tickEnd || prev[0] == START_MS, key + " fired late");
+            };
+            wheel.advance(now[0], check);
+            wheel.expireOverdue(now[0], check);
+        }
+        assertTrue(expected.isEmpty(), expected.size() + " entries never fired");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void farFutureEntry_isClampedToTheTopLevel_andStillFiresOnTime() {
+        ExpiryWheel wheel = new ExpiryWheel(START_MS);
+        long deadline = START_MS + 400 * DAY_MS; // beyond the ~194 days the levels cover
+        wheel.schedule(1L, deadline);
+        wheel.schedule(2L, START_MS + 3_000L);
+        long[] fired = new long[2];
+        long now = START_MS;
+        while (now < deadline + DAY_MS) {
+            long at = now += 3_600_000L;
+            wheel.advance(now, key -> fired[(int) key - 1] = at);
+            wheel.expireOverdue(now, key -> fired[(int) key - 1] = at);
+            if (fired[0] == 0 && now < deadline) assertEquals(deadline, wheel.deadlineOf(1L));
+        }
+        assertEquals(START_MS + 3_600_000L, fired[1]);
+        assertTrue(fired[0] >= deadline && fired[0] < deadline + 3_600_000L, "fired at " + fired[0]);
+    }
+
+    @Test
+    void clear_andToMap_reflectScheduledEntries() {
+        ExpiryWheel wheel = new ExpiryWheel(START_MS);
+        wheel.schedule(5L, START_MS + 10_000L);
+        wheel.schedule(6L, START_MS + 10 * DAY_MS);
+        assertEquals(Map.of(5L, START_MS + 10_000L, 6L, START_MS + 10 * DAY_MS), wheel.toMap());
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(START_MS + 20 * DAY_MS, key -> fail("cleared entry fired: " + key)));
+    }
+}
@@ -0,0 +1,93 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+class LongHashSetTest {
+    private static final long STEAM_BASE = 76561197960265728L;
+
+    @Test
+    void addRemoveContains_matchesHashSet() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> ref = new HashSet<>();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            // Narrow key space (incl. 0) forces collisions, re-adds and shifted deletes
+            long key = rnd.nextInt(5_000) == 0 ? 0L : STEAM_BASE + rnd.nextInt(20_000);
+            if (rnd.nextBoolean()) assertEquals(ref.add(key), set.add(key));
+            else assertEquals(ref.remove(key), set.remove(key));
+            if ((i & 1023) == 0) assertEquals(ref.size(), set.size());
+        }
+        for (long k = STEAM_BASE - 10; k < STEAM_BASE + 20_010; k++) assertEquals(ref.contains(k), set.contains(k));
+        assertEquals(ref.contains(0L), set.contains(0L));
+    }
+
+    @Test
+    void toSortedArray_isAscendingAndComplete() {
+        LongHashSet set = new LongHashSet(4);
+        long[] in = {STEAM_BASE + 9, 0L, -5L, STEAM_BASE + 1, STEAM_BASE + 5};
+        for (long k : in) set.add(k);
+        assertArrayEquals(new long[]{-5L, 0L, STEAM_BASE + 1, STEAM_BASE + 5, STEAM_BASE + 9}, set.toSortedArray());
+    }
+
+    @Test
+    void copy_isIndependent() {
+        LongHashSet a = new LongHashSet();
+        a.add(1L);
+        LongHashSet b = new LongHashSet(a);
+        a.add(2L);
+        b.remove(1L);
+        assertTrue(a.contains(1L));
+        assertFalse(b.contains(2L));
+        assertEquals(2, a.size());
+        assertEquals(0, b.size());
+    }
+
+    @Test
+    void footprint_isAboutTheTable() {
+        LongHashSet set = new LongHashSet();
+        for (int i = 0; i < 1_000_000; i++) set.add(STEAM_BASE + i * 7L);
+        // A boxed HashSet<Long> needs ~50 bytes per entry; the table is at most 8 bytes / 0.6 load, doubled
+        assertTrue(set.footprintBytes() < 1_000_000L * 27, "footprint " + set.footprintBytes());
+    }
+
+    /**
+     * Footprint comparison against the previous {@code HashSet<Long>}, published
+     * as report entries. Heap measurements depend on the GC, so nothing is asserted.
+     */
+    @Test
+    @Tag("benchmark")
+    void footprint_vsBoxedHashSet(TestReporter reporter) {
+        for (int n : new int[]{10_000, 100_000, 1_000_000}) {
+            long before = usedHeap();
+            Set<Long> boxed = new HashSet<>();
+            for (int i = 0; i < n; i++) boxed.add(STEAM_BASE + i * 7L);
+            long boxedBytes = usedHeap() - before;
+            assertEquals(n, boxed.size());
+            boxed = null;
+
+            before = usedHeap();
+            LongHashSet prim = new LongHashSet();
+            for (int i = 0; i < n; i++) prim.add(STEAM_BASE + i * 7L);
+            long primBytes = usedHeap() - before;
+            assertEquals(n, prim.size());
+
+            reporter.publishEntry("footprint." + n, "HashSet<Long> " + boxedBytes + " B, LongHashSet " + primBytes + " B");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try { Thread.sleep(20); } catch (InterruptedException ignore) {}
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
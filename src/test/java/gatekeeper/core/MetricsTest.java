@@ -0,0 +1,54 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+    @Test
+    void histogram_bucketsByUpperBound_andExportsCumulatively() {
+        Metrics m = new Metrics(true);
+        m.save.record(500L);          // 0.5 µs
+        m.save.record(3_000L);        // 3 µs
+        m.save.record(3_000L);
+        m.save.record(7_000_000L);    // 7 ms
+        m.save.record(2_000_000_000L); // 2 s, past the last bound
+        long[] counts = m.save.counts();
+        assertEquals(1, counts[0]);
+        assertEquals(2, counts[2]);
+        assertEquals(1, counts[12]);
+        assertEquals(1, counts[Metrics.BUCKET_BOUNDS_US.length]);
+        assertEquals(5L, Metrics.Timer.quantileBoundUs(counts, 0.50));
+        assertEquals(-1L, Metrics.Timer.quantileBoundUs(counts, 0.99));
+        assertEquals(0L, Metrics.Timer.quantileBoundUs(new long[counts.length], 0.5));
+
+        m.connectsDenied.inc();
+        m.connectsDenied.inc();
+        StringBuilder sb = new StringBuilder();
+        m.appendPrometheus(sb);
+        Metrics.appendGauge(sb, "gatekeeper_whitelist_entries", "Entries.", 12);
+        String text = sb.toString();
+        assertTrue(text.contains("# TYPE gatekeeper_connections_total counter\n"), text);
+        assertEquals(1, text.split("# TYPE gatekeeper_connections_total ", -1).length - 1); // one header per metric
+        assertTrue(text.contains("gatekeeper_connections_total{result=\"denied\"} 2\n"), text);
+        assertTrue(text.contains("gatekeeper_save_seconds_bucket{le=\"0.000001\"} 1\n"), text);
+        assertTrue(text.contains("gatekeeper_save_seconds_bucket{le=\"0.000005\"} 3\n"), text);
+        assertTrue(text.contains("gatekeeper_save_seconds_bucket{le=\"1\"} 4\n"), text);
+        assertTrue(text.contains("gatekeeper_save_seconds_bucket{le=\"+Inf\"} 5\n"), text);
+        assertTrue(text.contains("gatekeeper_save_seconds_sum 2.0070065\n"), text);
+        assertTrue(text.contains("gatekeeper_save_seconds_count 5\n"), text);
+        assertTrue(text.contains("# TYPE gatekeeper_whitelist_entries gauge\ngatekeeper_whitelist_entries 12\n"), text);
+    }
+
+    @Test
+    void disabled_recordsNothing() {
+        Metrics m = new Metrics(false);
+        assertFalse(m.isEnabled());
+        long start = m.connect.start();
+        assertEquals(0L, start);
+        m.connect.stop(start);
+        m.connectsAllowed.inc();
+        assertEquals(0L, m.connectsAllowed.get());
+        for (long c : m.connect.counts()) assertEquals(0L, c);
+    }
+}
@@ -0,0 +1,119 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import necesse.engine.commands.PermissionLevel;
+import necesse.engine.network.server.Server;
+import necesse.engine.network.server.ServerClient;
+import necesse.engine.world.World;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+class NameIndexTest {
+
+    @Test
+    void sources_resolveInOrder_andReportWhereFrom() {
+        HashMap<Long, String> saved = new HashMap<>();
+        saved.put(10L, "Shared");
+        saved.put(11L, "SavedOnly");
+        World world = mock(World.class);
+        when(world.getUsedPlayerNames()).thenReturn(saved);
+        Server server = mock(Server.class);
+        server.world = world;
+        ServerClient online = mock(ServerClient.class);
+        online.slot = 0;
+        online.authentication = 20L;
+        when(online.getName()).thenReturn("Shared");
+        when(online.getPermissionLevel()).thenReturn(PermissionLevel.USER);
+        when(online.getServer()).thenReturn(server);
+        when(server.getSlots()).thenReturn(1);
+        when(server.getClient(0)).thenReturn(online);
+        ClientRegistry clients = new ClientRegistry();
+        clients.onConnected(online);
+
+        NameIndex names = new NameIndex();
+        assertTrue(names.remember(30L, "Cached"));
+        assertFalse(names.remember(30L, "Cached"));
+
+        WhitelistManager.NameMatch m = names.find(server, clients, "shared");
+        assertEquals(20L, m.auth);
+        assertEquals(WhitelistManager.NameSource.ONLINE, m.source);
+        m = names.find(server, clients, "SAVEDONLY");
+        assertEquals(11L, m.auth);
+        assertEquals("SavedOnly", m.name);
+        assertEquals(WhitelistManager.NameSource.SAVED, m.source);
+        assertEquals(WhitelistManager.NameSource.CACHE, names.find(server, clients, "cached").source);
+        assertNull(names.find(server, clients, "nobody"));
+
+        assertEquals(WhitelistManager.NameSource.ONLINE, names.nameOf(server, clients, 20L).source);
+        assertEquals("Shared", names.nameOf(server, clients, 10L).name);
+        assertEquals(WhitelistManager.NameSource.CACHE, names.nameOf(server, clients, 30L).source);
+
+        // Once the player disconnects, the saved entry answers
+        when(server.getClient(0)).thenReturn(null);
+        m = names.find(server, clients, "Shared");
+        assertEquals(10L, m.auth);
+        assertEquals(WhitelistManager.NameSource.SAVED, m.source);
+
+        // Saved players added later are picked up
+        saved.put(12L, "Newcomer");
+        assertEquals(12L, names.find(server, clients, "newcomer").auth);
+    }
+
+    @Test
+    void manySavedPlayers_lookupsAreIndexed() {
+        AtomicInteger scans = new AtomicInteger();
+        HashMap<Long, String> saved = new HashMap<>() {
+            @Override
+            public Set<Map.Entry<Long, String>> entrySet() {
+                scans.incrementAndGet();
+                return super.entrySet();
+            }
+        };
+        for (long i = 0; i < 100_000; i++) saved.put(76561198000000000L + i, "Player" + i);
+        Server server = savedPlayersServer(saved);
+        ClientRegistry clients = new ClientRegistry();
+        NameIndex names = new NameIndex();
+
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(76561198000000000L + i * 7, names.find(server, clients, "PLAYER" + i * 7).auth);
+        }
+        assertEquals(1, scans.get(), "saved players are indexed once, not scanned per lookup");
+        // A new saved player triggers exactly one rebuild
+        saved.put(1L, "Late");
+        assertEquals(1L, names.find(server, clients, "late").auth);
+        assertEquals(1L, names.find(server, clients, "LATE").auth);
+        assertEquals(2, scans.get());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void manySavedPlayers_lookupTime(TestReporter reporter) {
+        HashMap<Long, String> saved = new HashMap<>();
+        for (long i = 0; i < 100_000; i++) saved.put(76561198000000000L + i, "Player" + i);
+        Server server = savedPlayersServer(saved);
+        ClientRegistry clients = new ClientRegistry();
+        NameIndex names = new NameIndex();
+        names.find(server, clients, "player0"); // build once
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) names.find(server, clients, "PLAYER" + i * 7);
+        long perLookupNs = (System.nanoTime() - start) / 10_000;
+        reporter.publishEntry("savedPlayers", String.valueOf(saved.size()));
+        reporter.publishEntry("nsPerLookup", String.valueOf(perLookupNs));
+    }
+
+    private static Server savedPlayersServer(HashMap<Long, String> saved) {
+        World world = mock(World.class);
+        when(world.getUsedPlayerNames()).thenReturn(saved);
+        Server server = mock(Server.class);
+        server.world = world;
+        return server;
+    }
+}
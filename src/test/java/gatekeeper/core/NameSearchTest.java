@@ -0,0 +1,109 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+class NameSearchTest {
+    private static final WhitelistManager.NameSource CACHE = WhitelistManager.NameSource.CACHE;
+
+    @Test
+    void ranksExactPrefixSubstringThenTypos() {
+        NameSearch search = new NameSearch();
+        search.add("butterflysky", 1L, CACHE);
+        search.add("Butter", 2L, CACHE);
+        search.add("ButterCup", 3L, CACHE);
+        search.add("PeanutButter", 4L, CACHE);
+        search.add("Buttre", 5L, CACHE);
+        search.add("Zed", 6L, CACHE);
+
+        List<NameSearch.Hit> hits = search.search("butter", 10);
+        assertEquals("Butter", hits.get(0).name);
+        assertEquals(NameSearch.EXACT, hits.get(0).kind);
+        assertEquals("ButterCup", hits.get(1).name); // shorter prefix match first
+        assertEquals("butterflysky", hits.get(2).name);
+        assertEquals("PeanutButter", hits.get(3).name);
+        assertEquals(NameSearch.SUBSTRING, hits.get(3).kind);
+        assertEquals("Buttre", hits.get(4).name);
+        assertEquals(NameSearch.FUZZY, hits.get(4).kind);
+        assertEquals(5, hits.size());
+
+        // Typo in a full name
+        hits = search.search("butterflysyk", 3);
+        assertEquals(1L, hits.get(0).auth);
+        assertEquals(2, hits.get(0).distance);
+
+        // Incremental: new names are searchable immediately, duplicates keep the first SteamID
+        search.add("Butterscotch", 7L, CACHE);
+        search.add("BUTTER", 99L, CACHE);
+        assertEquals(2L, search.search("BUTTER", 1).get(0).auth);
+        assertTrue(search.search("scotch", 5).stream().anyMatch(h -> h.auth == 7L));
+        assertEquals(1, search.search("zed", 5).size());
+        assertTrue(search.search("", 5).isEmpty());
+    }
+
+    @Test
+    void hundredThousandNames_prefixAndTypoQueriesFindCandidates() {
+        Random rnd = new Random(42);
+        String[] names = randomNames(rnd, 100_000);
+        NameSearch search = indexed(names);
+        for (int i = 0; i < 500; i++) {
+            String n = names[rnd.nextInt(names.length)];
+            String prefix = n.substring(0, 4);
+            List<NameSearch.Hit> hits = search.search(prefix, 10);
+            assertFalse(hits.isEmpty());
+            assertTrue(hits.size() <= 10);
+            // Prefix matches rank ahead of substring and fuzzy ones
+            assertTrue(hits.get(0).name.startsWith(prefix), hits.get(0).name);
+            assertFalse(search.search(typo(n), 10).isEmpty());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void hundredThousandNames_queryTime(TestReporter reporter) {
+        Random rnd = new Random(42);
+        String[] names = randomNames(rnd, 100_000);
+        NameSearch search = indexed(names);
+
+        // Warm up, then time prefix and misspelled queries
+        for (int i = 0; i < 2_000; i++) search.search(names[i].substring(0, 3), 10);
+        int queries = 2_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            String n = names[rnd.nextInt(names.length)];
+            search.search(i % 2 == 0 ? n.substring(0, 4) : typo(n), 10);
+        }
+        long perQueryUs = (System.nanoTime() - start) / queries / 1_000;
+        reporter.publishEntry("names", String.valueOf(names.length));
+        reporter.publishEntry("usPerQuery", String.valueOf(perQueryUs));
+    }
+
+    private static String[] randomNames(Random rnd, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 5 + rnd.nextInt(10);
+            for (int c = 0; c < len; c++) sb.append((char) ('a' + rnd.nextInt(26)));
+            names[i] = sb.toString();
+        }
+        return names;
+    }
+
+    private static NameSearch indexed(String[] names) {
+        NameSearch search = new NameSearch();
+        for (int i = 0; i < names.length; i++) search.add(names[i], i, CACHE);
+        return search;
+    }
+
+    /** One substituted character in the middle of the name. */
+    private static String typo(String name) {
+        char[] typo = name.toCharArray();
+        typo[typo.length / 2] = typo[typo.length / 2] == 'x' ? 'y' : 'x';
+        return new String(typo);
+    }
+}
@@ -0,0 +1,97 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class NetBlocklistTest {
+    @Test
+    void canonical_normalizesAndRejectsMalformedNetworks() {
+        assertEquals("203.0.113.0/24", NetBlocklist.canonical("203.0.113.77/24"));
+        assertEquals("198.51.100.7/32", NetBlocklist.canonical(" 198.51.100.7 "));
+        assertEquals("0.0.0.0/0", NetBlocklist.canonical("10.1.2.3/0"));
+        assertEquals("2001:db8::/32", NetBlocklist.canonical("2001:0DB8:ffff::1/32"));
+        assertEquals("2001:db8:0:1::/64", NetBlocklist.canonical("2001:db8:0:1:0:0:0:0/64"));
+        assertEquals("::1/128", NetBlocklist.canonical("::1"));
+        assertEquals("2001:db8::1:0:0:1/128", NetBlocklist.canonical("2001:db8:0:0:1::1"));
+        assertEquals("192.0.2.0/24", NetBlocklist.canonical("::ffff:192.0.2.9/120"));
+        assertEquals("64:ff9b::c000:200/120", NetBlocklist.canonical("64:ff9b::192.0.2.9/120"));
+        for (String bad : new String[]{"", "/24", "1.2.3/24", "1.2.3.4.5", "256.1.1.1", "1.2.3.4/33", "1.2.3.4/-1",
+                "1.2.3.4/", "2001:db8::/129", "1::2::3", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "12345::",
+                "1:2:3:4:5:6:7:8::", "example.com", "fe80::1%eth0/64", "1.2.3.4/2x"}) {
+            assertNull(NetBlocklist.canonical(bad), bad);
+        }
+    }
+
+    @Test
+    void lookup_matchesLongestPrefix_inTheFormsClientAddressesTake() {
+        NetBlocklist list = NetBlocklist.of(Arrays.asList("203.0.113.0/24", "203.0.113.128/25", "2001:db8::/32", "192.0.2.1"));
+        assertEquals(4, list.size());
+        assertEquals(1, list.match("203.0.113.200"));
+        assertEquals(0, list.match("/203.0.113.5:14159"));
+        assertEquals(0, list.match("some.host/203.0.113.5:14159"));
+        assertEquals(3, list.match("192.0.2.1:5000"));
+        assertEquals(-1, list.match("192.0.2.2"));
+        assertEquals(-1, list.match("203.0.112.255"));
+        assertEquals(2, list.match("2001:db8:1234::5"));
+        assertEquals(2, list.match("[2001:db8::5]:14159"));
+        assertEquals(2, list.match("2001:db8::5%eth0"));
+        assertEquals(-1, list.match("2001:db9::5"));
+        assertEquals(1, list.match("::ffff:203.0.113.129")); // IPv4-mapped
+        assertEquals(-1, list.match("Steam"));
+        assertEquals(-1, list.match(""));
+
+        assertTrue(list.hit("203.0.113.200:1"));
+        assertTrue(list.hit("203.0.113.201:1"));
+        assertTrue(list.hit("203.0.113.1:1"));
+        assertFalse(list.hit("198.51.100.1:1"));
+        assertFalse(list.hit(null));
+        assertEquals(1, list.hits(0));
+        assertEquals(2, list.hits(1));
+        assertEquals(3, list.totalHits());
+        assertFalse(NetBlocklist.EMPTY.hit("203.0.113.1"));
+    }
+
+    @Test
+    void withAndWithout_keepCountersOfRetainedPrefixes() {
+        NetBlocklist a = NetBlocklist.EMPTY.with("10.0.0.0/8");
+        assertSame(a, a.with("10.9.9.9/8"));
+        assertTrue(a.contains("10.1.1.1/8"));
+        a.hit("10.1.2.3");
+        NetBlocklist b = a.with("2001:db8::/32");
+        b.hit("10.4.5.6");
+        assertEquals(2, b.hits(0));
+        assertEquals(-1, a.match("2001:db8::1")); // the old list is unchanged
+        NetBlocklist c = b.without("10.0.0.0/8");
+        assertEquals(1, c.size());
+        assertEquals("2001:db8::/32", c.cidr(0));
+        assertEquals(-1, c.match("10.1.2.3"));
+        assertSame(c, c.without("10.0.0.0/8"));
+        assertSame(NetBlocklist.EMPTY, c.without("2001:db8::/32"));
+        assertThrows(IllegalArgumentException.class, () -> c.with("not-a-network"));
+    }
+
+    @Test
+    void lookup_overThousandsOfPrefixes_allocatesNothing() {
+        List<String> nets = new ArrayList<>();
+        for (int i = 0; i < 4_096; i++) {
+            nets.add("10." + (i >> 4) + "." + ((i & 15) << 4) + ".0/20");
+            nets.add("2001:db8:" + Integer.toHexString(i) + "::/48");
+        }
+        NetBlocklist list = NetBlocklist.of(nets);
+        String[] probes = {"/10.3.20.9:14159", "[2001:db8:7f::1]:14159", "198.51.100.1:14159", "2001:db9::1"};
+        for (int i = 0; i < 20_000; i++) list.hit(probes[i & 3]); // warm up
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        int blocked = 0;
+        for (int i = 0; i < 100_000; i++) if (list.hit(probes[i & 3])) blocked++;
+        long allocated = mx.getThreadAllocatedBytes(tid) - before;
+        assertEquals(50_000, blocked);
+        assertTrue(allocated < 1_024, "allocated " + allocated + " bytes");
+    }
+}
@@ -0,0 +1,70 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RecentAttemptsTest {
+
+    @Test
+    void ring_keepsLastN_oldestFirst() {
+        RecentAttempts recent = new RecentAttempts(3, 8);
+        long[] out = new long[1];
+        assertFalse(recent.lastAuth(out));
+        for (int i = 1; i <= 5; i++) recent.record(i * 10L, 100L + i, "p" + i, "10.0.0." + i);
+
+        List<WhitelistManager.Attempt> attempts = recent.attempts();
+        assertEquals(3, attempts.size());
+        assertEquals(103L, attempts.get(0).auth);
+        assertEquals(105L, attempts.get(2).auth);
+        assertEquals("10.0.0.5", attempts.get(2).address);
+        assertTrue(recent.lastAuth(out));
+        assertEquals(105L, out[0]);
+    }
+
+    @Test
+    void spammer_isAggregated_andDoesNotPushOthersOut() {
+        RecentAttempts recent = new RecentAttempts(4, 8);
+        recent.record(1L, 7L, "victim", "1.1.1.1");
+        for (int i = 0; i < 100; i++) recent.record(10L + i, 9L, i == 99 ? "spammer" : "", "2.2.2." + i);
+
+        List<WhitelistManager.Offender> offenders = recent.offenders();
+        assertEquals(2, offenders.size());
+        WhitelistManager.Offender victim = offenders.get(0);
+        assertEquals(7L, victim.auth);
+        assertEquals(1, victim.count);
+        WhitelistManager.Offender spammer = offenders.get(1);
+        assertEquals(9L, spammer.auth);
+        assertEquals(100, spammer.count);
+        assertEquals(10L, spammer.firstMs);
+        assertEquals(109L, spammer.lastMs);
+        assertEquals("spammer", spammer.name);
+        assertEquals("2.2.2.99", spammer.address);
+    }
+
+    @Test
+    void fullTable_evictsLeastRecentlySeen() {
+        RecentAttempts recent = new RecentAttempts(16, 4);
+        for (long auth = 1; auth <= 4; auth++) recent.record(auth, auth, null, null);
+        recent.record(10L, 1L, null, null); // auth 1 is now the most recent; 2 is the oldest
+        recent.record(11L, 5L, null, null);
+
+        List<WhitelistManager.Offender> offenders = recent.offenders();
+        assertEquals(4, offenders.size());
+        for (WhitelistManager.Offender o : offenders) assertNotEquals(2L, o.auth);
+        assertEquals(5L, offenders.get(3).auth);
+        assertEquals(1L, offenders.get(2).auth);
+        assertEquals(2, offenders.get(2).count);
+
+        // Churn through many auths; lookups and counts stay consistent after backward-shift deletes
+        for (long auth = 100; auth < 10_000; auth++) {
+            recent.record(auth, auth, null, null);
+            recent.record(auth, auth, null, null);
+        }
+        offenders = recent.offenders();
+        assertEquals(4, offenders.size());
+        for (WhitelistManager.Offender o : offenders) assertEquals(2, o.count);
+        assertEquals(9_999L, offenders.get(3).auth);
+    }
+}
@@ -0,0 +1,187 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import necesse.engine.network.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SharedWhitelistStoreTest {
+    private static final long BASE_ID = 76561198000000000L;
+    private static final int OPS_PER_WORKER = 2_000;
+
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-shared-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        tempDir.delete();
+    }
+
+    /**
+     * Adds {@value #OPS_PER_WORKER} SteamIDs of its own to a shared store,
+     * removing every third again, in randomly sized batches. Run in child JVMs
+     * and on threads by the test below.
+     */
+    static final class Worker {
+        public static void main(String[] args) throws IOException {
+            run(new File(args[0]), Integer.parseInt(args[1]));
+        }
+
+        static void run(File dir, int worker) throws IOException {
+            SharedWhitelistStore store = new SharedWhitelistStore(dir);
+            Random rnd = new Random(worker);
+            byte[] ops = new byte[16];
+            long[] values = new long[16];
+            int n = 0;
+            int batch = 1 + rnd.nextInt(8);
+            for (int i = 0; i < OPS_PER_WORKER; i++) {
+                long id = idFor(worker, i);
+                ops[n] = WhitelistJournal.OP_ADD;
+                values[n++] = id;
+                if (i % 3 == 0) {
+                    ops[n] = WhitelistJournal.OP_REMOVE;
+                    values[n++] = id;
+                }
+                if (n >= batch) {
+                    store.exchange(ops, values, n);
+                    n = 0;
+                    batch = 1 + rnd.nextInt(8);
+                }
+            }
+            store.exchange(ops, values, n);
+        }
+    }
+
+    private static long idFor(int worker, int i) { return BASE_ID + worker * 1_000_000L + i; }
+
+    private static long[] expected(int workers) {
+        List<Long> ids = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            for (int i = 0; i < OPS_PER_WORKER; i++) if (i % 3 != 0) ids.add(idFor(w, i));
+        }
+        long[] out = new long[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ids.get(i);
+        Arrays.sort(out);
+        return out;
+    }
+
+    @Test
+    void severalProcessesAndThreads_mutateConcurrently_andFollowersMergeIncrementally() throws Exception {
+        int processes = 3, threads = 2;
+        long opsPerWorker = OPS_PER_WORKER + (OPS_PER_WORKER + 2) / 3;
+
+        // The child JVMs need the store, this class and whatever the store links against
+        Set<String> cp = new LinkedHashSet<>();
+        for (Class<?> c : new Class<?>[]{SharedWhitelistStore.class, SharedWhitelistStoreTest.class, Server.class}) {
+            cp.add(new File(c.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        }
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<Process> children = new ArrayList<>();
+        for (int p = 0; p < processes; p++) {
+            children.add(new ProcessBuilder(java, "-cp", String.join(File.pathSeparator, cp),
+                    Worker.class.getName(), tempDir.getPath(), String.valueOf(p))
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.INHERIT).start());
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> local = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int worker = processes + t;
+            Thread th = new Thread(() -> {
+                try {
+                    Worker.run(tempDir, worker);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            th.start();
+            local.add(th);
+        }
+
+        // A follower that only polls, keeping its own copy from the deltas it gets
+        SharedWhitelistStore follower = new SharedWhitelistStore(tempDir);
+        LongHashSet followed = new LongHashSet();
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Process p : children) running |= p.isAlive();
+            for (Thread t : local) running |= t.isAlive();
+            WhitelistManager.FileDelta d = follower.exchange(new byte[0], new long[0], 0);
+            if (d == null) {
+                for (long id : follower.mirror().sorted) followed.add(id); // first exchange
+            } else {
+                for (long id : d.added) followed.add(id);
+                for (long id : d.removed) followed.remove(id);
+            }
+            Thread.sleep(5);
+        }
+        for (Process p : children) {
+            assertTrue(p.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, p.exitValue());
+        }
+        for (Thread t : local) t.join();
+        assertNull(failure.get());
+
+        long[] expected = expected(processes + threads);
+        WhitelistManager.FileDelta d = follower.exchange(new byte[0], new long[0], 0);
+        for (long id : d.added) followed.add(id);
+        for (long id : d.removed) followed.remove(id);
+        assertArrayEquals(expected, followed.toSortedArray());
+        // Every change got its own version, and a caught-up follower reads nothing more
+        assertEquals(opsPerWorker * (processes + threads), follower.seenVersion());
+        assertSame(WhitelistManager.FileDelta.NONE, follower.exchange(new byte[0], new long[0], 0));
+
+        SharedWhitelistStore.State fresh = new SharedWhitelistStore(tempDir).attach(new long[0]);
+        assertEquals(follower.seenVersion(), fresh.version);
+        assertArrayEquals(expected, fresh.sorted);
+        // Compacted along the way, so the file holds far fewer than one record per change
+        File file = new File(tempDir, SharedWhitelistStore.FILE_NAME);
+        assertTrue(file.length() < fresh.version * 13, "got " + file.length() + " bytes");
+    }
+
+    @Test
+    void tornAppend_isIgnoredAndOverwritten_andCorruptHeaderIsRejected() throws Exception {
+        SharedWhitelistStore a = new SharedWhitelistStore(tempDir);
+        SharedWhitelistStore.State seeded = a.attach(new long[]{1L, 2L, 3L});
+        assertEquals(3, seeded.version);
+        a.exchange(new byte[]{WhitelistJournal.OP_REMOVE}, new long[]{2L}, 1);
+
+        // Records written past the committed version, as after a crash mid-append
+        File file = new File(tempDir, SharedWhitelistStore.FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[]{WhitelistJournal.OP_ADD, 9, 9, 9});
+        }
+        SharedWhitelistStore b = new SharedWhitelistStore(tempDir);
+        assertNull(b.exchange(new byte[]{WhitelistJournal.OP_ADD}, new long[]{4L}, 1));
+        assertArrayEquals(new long[]{1L, 3L, 4L}, b.mirror().sorted);
+        assertEquals(5, b.seenVersion());
+        WhitelistManager.FileDelta d = a.exchange(new byte[0], new long[0], 0);
+        assertArrayEquals(new long[]{4L}, d.added);
+        assertEquals(0, d.removed.length);
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[0] = 'X';
+        Files.write(file.toPath(), bytes);
+        assertThrows(IOException.class, () -> new SharedWhitelistStore(tempDir).attach(new long[0]));
+    }
+}
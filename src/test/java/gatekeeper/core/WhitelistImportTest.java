@@ -0,0 +1,68 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WhitelistImportTest {
+    private static final long A = 76561198056903463L;
+    private static final long B = 76561197960265728L; // lowest individual SteamID64
+    private static final long C = 76561202255233023L; // highest
+
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-import-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        tempDir.delete();
+    }
+
+    private File write(String name, String content) throws Exception {
+        File f = new File(tempDir, name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    void csv_takesFirstNumericField_skipsHeaderAndComments() throws Exception {
+        File f = write("list.csv", "\uFEFFname,steamid\n"
+                + "# migrated from the old server\n"
+                + "butterflysky," + A + "\n"
+                + "\"" + B + "\";\"lowest\"\n"
+                + "\n"
+                + C + "\n"
+                + A + "\n"                       // duplicate
+                + "76561197960265727\n"          // just below the range
+                + "someone,STEAM_0:1:12345\n");  // no SteamID64
+        WhitelistImport r = new WhitelistImport().read(f);
+        assertArrayEquals(new long[]{B, A, C}, r.ids.toSortedArray());
+        assertEquals(1, r.duplicates);
+        assertEquals(2, r.invalid);
+    }
+
+    @Test
+    void json_readsArraysObjectsAndWhitelistJson() throws Exception {
+        WhitelistImport r = new WhitelistImport().read(write("bot.json",
+                "[{\"name\":\"x\",\"steamId\":\"" + A + "\",\"level\":3}, " + B + ", {\"steam_id\": 12}]"));
+        assertArrayEquals(new long[]{B, A}, r.ids.toSortedArray());
+        assertEquals(0, r.duplicates);
+        assertEquals(1, r.invalid);
+
+        r = new WhitelistImport().read(write("whitelist.json",
+                "{\n  \"enabled\": true,\n  \"lockdown\": false,\n  \"auth\": [" + A + ", " + C + ", " + A + "]\n}"));
+        assertArrayEquals(new long[]{A, C}, r.ids.toSortedArray());
+        assertEquals(1, r.duplicates);
+        assertEquals(0, r.invalid);
+    }
+}
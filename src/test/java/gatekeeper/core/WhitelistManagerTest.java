@@ -5,8 +5,20 @@ import static org.mockito.Mockito.*;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import necesse.engine.network.server.Server;
+import necesse.engine.network.server.ServerClient;
 import necesse.engine.world.World;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -33,11 +45,16 @@ class WhitelistManagerTest {
     }
 
     private Server mockServerForWorldPath(File worldPath) throws Exception {
-        World world = mock(World.class, withSettings().defaultAnswer(RETURNS_DEEP_STUBS));
+        return mockServerForWorldPath(worldPath, 123456789L);
+    }
+
+    private Server mockServerForWorldPath(File worldPath, long worldId) throws Exception {
+        // stubOnly: concurrency tests hit the mock millions of times; don't record invocations
+        World world = mock(World.class, withSettings().defaultAnswer(RETURNS_DEEP_STUBS).stubOnly());
         java.lang.reflect.Field fp = World.class.getDeclaredField("filePath");
         fp.setAccessible(true);
         fp.set(world, worldPath);
-        when(world.getUniqueID()).thenReturn(123456789L);
+        when(world.getUniqueID()).thenReturn(worldId);
         when(world.getUsedPlayerNames()).thenReturn(new HashMap<>());
         Server server = mock(Server.class, RETURNS_DEEP_STUBS);
         server.world = world;
@@ -72,6 +89,7 @@ class WhitelistManagerTest {
         mgr.setLockdown(server, true);
         mgr.addAuth(server, 100L);
         mgr.addAuth(server, 200L);
+        mgr.flush();
         // New manager should load same (round-trip)
         WhitelistManager mgr2 = new WhitelistManager();
         // Touch world-bound API to trigger load
@@ -110,6 +128,7 @@ class WhitelistManagerTest {
 
         // Saving should write a fresh valid JSON file
         mgr.setEnabled(server, true);
+        mgr.flush();
         File newCfg = new File(gk, "whitelist.json");
         assertTrue(newCfg.exists());
         String body = new String(java.nio.file.Files.readAllBytes(newCfg.toPath()), java.nio.charset.StandardCharsets.UTF_8);
@@ -123,6 +142,7 @@ class WhitelistManagerTest {
         WhitelistManager mgr = new WhitelistManager();
         mgr.setEnabled(server, true);
         mgr.addAuth(server, 999L);
+        mgr.flush();
 
         // Overwrite on disk with garbage
         File gk = new File(tempDir, "GateKeeper");
@@ -141,6 +161,14 @@ class WhitelistManagerTest {
         assertNotNull(names);
         boolean renamedFound = java.util.Arrays.stream(names).anyMatch(n -> n.startsWith("whitelist.json.broken-"));
         assertTrue(renamedFound);
+
+        // A fresh snapshot from memory takes the broken file's place
+        mgr.flush();
+        assertTrue(cfg.exists());
+        WhitelistManager restarted = new WhitelistManager();
+        assertTrue(restarted.isEnabled(server));
+        assertTrue(restarted.isWhitelisted(server, 999L, null));
+        assertFalse(restarted.isWhitelisted(server, 1_000L, null));
     }
 
     @Test
@@ -149,6 +177,7 @@ class WhitelistManagerTest {
         WhitelistManager mgr = new WhitelistManager();
         mgr.recordDeniedAttempt(server, 555L, "Test", "127.0.0.1");
         assertFalse(mgr.getRecentAttempts().isEmpty());
+        mgr.flush();
         File log = new File(new File(tempDir, "GateKeeper"), "denied_log.txt");
         assertTrue(log.exists());
         String body = new String(Files.readAllBytes(log.toPath()), java.nio.charset.StandardCharsets.UTF_8);
@@ -161,6 +190,7 @@ class WhitelistManagerTest {
         WhitelistManager mgr = new WhitelistManager();
         // Simulate a denied attempt which should also update the cache
         mgr.recordDeniedAttempt(server, 76561198056903463L, "butterflysky", "1.2.3.4");
+        mgr.flush();
 
         // New manager instance should load cache
         WhitelistManager mgr2 = new WhitelistManager();
@@ -177,16 +207,820 @@ class WhitelistManagerTest {
     void rateLimit_perAuthAndGlobal() throws Exception {
         WhitelistManager mgr = new WhitelistManager();
         long auth1 = 1L;
+        long t0 = 1_000_000L;
         // First time should notify
-        assertTrue(mgr.shouldNotify(auth1, 60_000L));
-        mgr.rememberNotify(auth1);
+        assertTrue(mgr.shouldNotify(auth1, 60_000L, t0));
+        mgr.rememberNotify(auth1, t0);
         // Immediately again should be blocked (global + per-auth)
-        assertFalse(mgr.shouldNotify(auth1, 60_000L));
+        assertFalse(mgr.shouldNotify(auth1, 60_000L, t0 + 10));
         // Different auth shortly after also blocked by global
-        assertFalse(mgr.shouldNotify(2L, 60_000L));
-        // Wait a bit beyond global interval
-        Thread.sleep(3100);
-        assertTrue(mgr.shouldNotify(2L, 60_000L));
+        assertFalse(mgr.shouldNotify(2L, 60_000L, t0 + 2_999));
+        // Just beyond the global interval: a new auth gets through, the first is still cooling down
+        assertTrue(mgr.shouldNotify(2L, 60_000L, t0 + 3_001));
+        assertFalse(mgr.shouldNotify(auth1, 60_000L, t0 + 3_001));
+        assertTrue(mgr.shouldNotify(auth1, 60_000L, t0 + 60_001));
+    }
+
+    @Test
+    void isWhitelisted_doesNotWaitOnManagerMonitor() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager();
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 42L);
+
+        // Simulate a slow save/list holding the monitor
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (mgr) {
+                held.countDown();
+                try { release.await(); } catch (InterruptedException ignore) {}
+            }
+        });
+        holder.start();
+        held.await();
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> f = reader.submit(() -> mgr.isWhitelisted(server, 42L, null)
+                    && !mgr.isWhitelisted(server, 7L, null)
+                    && mgr.isEnabled() && !mgr.isLockdown());
+            assertTrue(f.get(2, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            holder.join();
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    void isWhitelisted_readsKeepGoingDuringWritesAndSaves() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager();
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 42L);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicBoolean inconsistent = new AtomicBoolean(false);
+        AtomicLong reads = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int r = 0; r < 2; r++) {
+                pool.submit(() -> {
+                    while (writing.get()) {
+                        // 42 is never removed; 7 is never added
+                        if (!mgr.isWhitelisted(server, 42L, null) || mgr.isWhitelisted(server, 7L, null)) inconsistent.set(true);
+                        reads.incrementAndGet();
+                    }
+                });
+            }
+            Future<?> w1 = pool.submit(() -> { for (long a = 1000; a < 1200; a++) mgr.addAuth(server, a); });
+            Future<?> w2 = pool.submit(() -> { for (long a = 1000; a < 1200; a++) { mgr.removeAuth(server, a); mgr.setLockdown(server, (a & 1) == 0); } });
+            w1.get(30, TimeUnit.SECONDS);
+            w2.get(30, TimeUnit.SECONDS);
+        } finally {
+            writing.set(false);
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertFalse(inconsistent.get());
+        assertTrue(reads.get() > 0);
+        assertTrue(mgr.isWhitelisted(server, 42L, null));
+    }
+
+    @Test
+    void singleMutations_publishOverlaysThatMatchTheLiveSet() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        long[] bulk = new long[10_000];
+        for (int i = 0; i < bulk.length; i++) bulk[i] = 1_000L + i;
+        mgr.addAuths(server, bulk);
+        java.util.TreeSet<Long> ref = new java.util.TreeSet<>();
+        for (long id : bulk) ref.add(id);
+
+        // Enough single changes to outgrow the overlay several times, including re-adds of removed IDs
+        java.util.Random rnd = new java.util.Random(7);
+        for (int i = 0; i < 2_000; i++) {
+            long id = 500L + rnd.nextInt(11_000);
+            if (rnd.nextBoolean()) assertEquals(ref.add(id), mgr.addAuth(server, id));
+            else assertEquals(ref.remove(id), mgr.removeAuth(server, id));
+            assertEquals(ref.contains(id), mgr.isWhitelisted(server, id, null));
+            if (i % 250 == 0) assertEquals(new java.util.ArrayList<>(ref), mgr.listAuths(server));
+        }
+        assertEquals(ref.size(), mgr.countAuths(server));
+        assertEquals(new java.util.ArrayList<>(ref), mgr.listAuths(server));
+        for (long id = 500L; id < 11_500L; id++) assertEquals(ref.contains(id), mgr.isWhitelisted(server, id, null));
+
+        // What reaches disk is the same set
+        mgr.flush();
+        WhitelistManager restarted = new WhitelistManager(60_000L);
+        assertEquals(new java.util.ArrayList<>(ref), restarted.listAuths(server));
+    }
+
+    @Test
+    void mutations_areWriteBehind_andCoalescedOnFlush() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        // Long delay: nothing reaches disk until the explicit flush
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        for (long a = 1; a <= 500; a++) mgr.addAuth(server, a);
+        mgr.removeAuth(server, 250L);
+        File gk = new File(tempDir, "GateKeeper");
+        File cfg = new File(gk, "whitelist.json");
+        assertFalse(cfg.exists());
+
+        mgr.flush();
+        assertTrue(cfg.exists());
+        assertFalse(new File(gk, "whitelist.json.tmp").exists());
+        WhitelistManager mgr2 = new WhitelistManager();
+        assertEquals(499, mgr2.countAuths(server));
+        assertTrue(mgr2.isEnabled());
+        assertFalse(mgr2.isWhitelisted(server, 250L, null));
+    }
+
+    @Test
+    void reload_appliesDiskEdit_andReplaysJournal() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 4L);
+        mgr.flush();
+        mgr.addAuth(server, 5L); // in-game change, not yet compacted
+
+        File cfg = new File(new File(tempDir, "GateKeeper"), "whitelist.json");
+        Files.write(cfg.toPath(), "{\"enabled\": true, \"auth\": [6]}".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        assertTrue(mgr.reload(server, new StringBuilder()));
+        assertTrue(mgr.isWhitelisted(server, 6L, null));
+        assertTrue(mgr.isWhitelisted(server, 5L, null));
+        assertFalse(mgr.isWhitelisted(server, 4L, null));
+
+        // Reload folds the journal back into whitelist.json
+        mgr.flush();
+        WhitelistManager mgr2 = new WhitelistManager();
+        assertEquals(java.util.Arrays.asList(5L, 6L), mgr2.listAuths(server));
+    }
+
+    @Test
+    void journal_replayedOnLoad_beforeCompaction() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 1L);
+        mgr.addAuth(server, 2L);
+        mgr.removeAuth(server, 1L);
+        mgr.setLockdown(server, true);
+        mgr.flushJournal();
+
+        File gk = new File(tempDir, "GateKeeper");
+        assertFalse(new File(gk, "whitelist.json").exists());
+        assertTrue(new File(gk, "whitelist.journal").length() > 4);
+
+        WhitelistManager mgr2 = new WhitelistManager();
+        assertTrue(mgr2.isWhitelisted(server, 2L, null));
+        assertFalse(mgr2.isWhitelisted(server, 1L, null));
+        assertTrue(mgr2.isEnabled());
+        assertTrue(mgr2.isLockdown());
+    }
+
+    @Test
+    void journal_tornTailIsTruncated_notRenamed() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 77L);
+        mgr.flushJournal();
+
+        File gk = new File(tempDir, "GateKeeper");
+        File journal = new File(gk, "whitelist.journal");
+        long intact = journal.length();
+        // Simulate a crash halfway through appending an add record
+        Files.write(journal.toPath(), new byte[]{1, 0, 0, 0}, java.nio.file.StandardOpenOption.APPEND);
+
+        WhitelistManager mgr2 = new WhitelistManager();
+        assertTrue(mgr2.isWhitelisted(server, 77L, null));
+        assertTrue(mgr2.isEnabled());
+        assertEquals(intact, journal.length());
+        assertFalse(java.util.Arrays.stream(gk.list()).anyMatch(n -> n.contains(".broken-")));
+    }
+
+    @Test
+    void journal_compactsIntoSnapshotAfterThreshold() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        for (long a = 1; a <= WhitelistManager.COMPACT_AFTER_RECORDS; a++) mgr.addAuth(server, a);
+        mgr.flushJournal();
+
+        File gk = new File(tempDir, "GateKeeper");
+        assertTrue(new File(gk, "whitelist.json").exists());
+        assertEquals(4L, new File(gk, "whitelist.journal").length()); // header only
+        assertEquals(WhitelistManager.COMPACT_AFTER_RECORDS, new WhitelistManager().countAuths(server));
+    }
+
+    @Test
+    void nameCache_isDebounced_andWrittenOnFlush() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.getConfigDir(server); // bind world
+        for (int i = 0; i < 1_000; i++) mgr.recordDeniedAttempt(server, 1_000L + i, "bot" + i, null);
+        File cache = new File(new File(tempDir, "GateKeeper"), "name_cache.json");
+        assertFalse(cache.exists());
+        // Still resolvable in memory before any write
+        assertEquals(Long.valueOf(1_042L), mgr.findAuthByName(server, "BOT42"));
+
+        mgr.flush();
+        assertTrue(cache.exists());
+        WhitelistManager mgr2 = new WhitelistManager();
+        assertEquals("bot999", mgr2.getNameByAuth(server, 1_999L));
+    }
+
+    @Test
+    void sortedView_isSharedPerSnapshot_andBatchResolvesNames() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        for (long id = 50; id >= 1; id--) mgr.addAuth(server, id);
+        long[] sorted = mgr.sortedAuths(server);
+        assertEquals(50, sorted.length);
+        assertEquals(1L, sorted[0]);
+        assertEquals(50L, sorted[49]);
+        assertSame(sorted, mgr.sortedAuths(server)); // not re-sorted per call
+
+        mgr.addAuth(server, 0L);
+        long[] after = mgr.sortedAuths(server);
+        assertNotSame(sorted, after);
+        assertEquals(0L, after[0]);
+        mgr.removeAuth(server, 25L);
+        after = mgr.sortedAuths(server);
+        assertEquals(50, after.length);
+        assertTrue(Arrays.binarySearch(after, 25L) < 0);
+        for (int i = 1; i < after.length; i++) assertTrue(after[i - 1] < after[i]);
+
+        // Membership ignores whether the list is enforced; access does not
+        assertFalse(mgr.isEnabled());
+        assertTrue(mgr.isWhitelisted(server, 999L, null));
+        assertFalse(mgr.isListed(server, 999L));
+        assertFalse(mgr.isListed(server, 25L));
+        assertTrue(mgr.isListed(server, 0L));
+
+        mgr.rememberName(server, 3L, "Three");
+        mgr.rememberName(server, 5L, "Five");
+        WhitelistManager.NameMatch[] page = mgr.resolveAuths(server, after, 2, 7); // SteamIDs 2..6
+        assertEquals(5, page.length);
+        assertNull(page[0]);
+        assertEquals("Three", page[1].name);
+        assertEquals(WhitelistManager.NameSource.CACHE, page[1].source);
+        assertEquals("Five", page[3].name);
+        mgr.flush();
+    }
+
+    @Test
+    void importAuths_appliesOneBatch_andCompactsOnce() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.addAuth(server, WhitelistImport.STEAMID64_MIN + 5);
+        File gk = new File(tempDir, "GateKeeper");
+        StringBuilder csv = new StringBuilder("steamid,name\n");
+        for (int i = 0; i < 20_000; i++) csv.append(WhitelistImport.STEAMID64_MIN + i).append(",p").append(i).append('\n');
+        csv.append("123\n");
+        Files.write(new File(gk, "migrate.csv").toPath(), csv.toString().getBytes("UTF-8"));
+
+        int[] r = mgr.importAuths(server, "migrate.csv");
+        assertEquals(19_999, r[0]);
+        assertEquals(1, r[1]); // already whitelisted
+        assertEquals(1, r[2]);
+        assertEquals(20_000, mgr.countAuths(server));
+        assertTrue(mgr.isWhitelisted(server, WhitelistImport.STEAMID64_MIN + 19_999, null));
+
+        // A compaction was requested, so the writer rewrites whitelist.json once; journal back to its header
+        mgr.flushJournal();
+        assertEquals(4L, new File(gk, "whitelist.journal").length());
+        assertEquals(20_000, new WhitelistManager().countAuths(server));
+    }
+
+    @Test
+    void batch_appliesAtomically_andJournalsOnlyEffectiveOps() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 1L);
+        mgr.flushJournal();
+        File journal = new File(new File(tempDir, "GateKeeper"), "whitelist.journal");
+        long before = journal.length();
+
+        WhitelistBatch batch = mgr.batch(server);
+        assertEquals(0, batch.add(2L));
+        batch.add(1L);    // already present
+        batch.remove(3L); // absent
+        batch.remove(1L);
+        batch.add(4L);
+        assertArrayEquals(new boolean[]{true, false, false, true, true}, batch.commit());
+        assertThrows(IllegalStateException.class, batch::commit);
+        assertThrows(IllegalStateException.class, () -> batch.add(5L));
+
+        assertFalse(mgr.isWhitelisted(server, 1L, null));
+        assertTrue(mgr.isWhitelisted(server, 2L, null));
+        assertTrue(mgr.isWhitelisted(server, 4L, null));
+        mgr.flushJournal();
+        assertEquals(before + 3 * 13, journal.length()); // three records of op + SteamID + CRC
+
+        // Readers see a batch entirely or not at all
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger torn = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!stop.get()) {
+                long[] view = mgr.sortedAuths(server); // one published snapshot
+                boolean a = Arrays.binarySearch(view, 100L) >= 0;
+                boolean b = Arrays.binarySearch(view, 101L) >= 0;
+                if (a != b) torn.incrementAndGet();
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 2_000; i++) {
+            WhitelistBatch in = mgr.batch(server);
+            in.add(100L); in.add(101L);
+            in.commit();
+            WhitelistBatch out = mgr.batch(server);
+            out.remove(101L); out.remove(100L);
+            out.commit();
+        }
+        stop.set(true);
+        reader.join();
+        assertEquals(0, torn.get());
+        mgr.flush();
+    }
+
+    @Test
+    void export_runsOffThread_withFormatsAndFilters() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        HashMap<Long, String> saved = new HashMap<>();
+        saved.put(1L, "alice");
+        saved.put(2L, "bob, \"the builder\"");
+        when(server.world.getUsedPlayerNames()).thenReturn(saved);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.addAuth(server, 1L);
+        mgr.rememberName(server, 3L, "carol");   // known only from a denied attempt
+        mgr.rememberName(server, 1L, "alice2");  // saved name wins
+
+        // The manager lock is free while the export is written
+        java.util.concurrent.CompletableFuture<Integer> csv =
+                mgr.exportKnownPlayers(server, KnownPlayersExport.Format.CSV, KnownPlayersExport.Filter.ALL);
+        assertTrue(mgr.addAuth(server, 4L));
+        assertEquals(3, csv.get(10, TimeUnit.SECONDS).intValue());
+        File gk = new File(tempDir, "GateKeeper");
+        List<String> lines = Files.readAllLines(new File(gk, "known_players.csv").toPath());
+        assertEquals("steamid,name,whitelisted,source", lines.get(0));
+        assertTrue(lines.contains("1,alice,true,saved"));
+        assertTrue(lines.contains("2,\"bob, \"\"the builder\"\"\",false,saved"));
+        assertTrue(lines.contains("3,carol,false,cache"));
+        assertFalse(new File(gk, "known_players.csv.tmp").exists());
+
+        assertEquals(2, mgr.exportKnownPlayers(server, KnownPlayersExport.Format.JSONL,
+                KnownPlayersExport.Filter.NOT_WHITELISTED).get(10, TimeUnit.SECONDS).intValue());
+        lines = Files.readAllLines(new File(gk, "known_players.jsonl").toPath());
+        assertEquals(2, lines.size());
+        for (String line : lines) {
+            com.google.gson.JsonObject o = com.google.gson.JsonParser.parseString(line).getAsJsonObject();
+            assertFalse(o.get("whitelisted").getAsBoolean());
+        }
+        assertTrue(lines.stream().anyMatch(l -> l.contains("\"name\":\"bob, \\\"the builder\\\"\"")));
+
+        // Legacy blocking call keeps the original file and format
+        assertEquals(3, mgr.exportKnownPlayers(server));
+        assertEquals("# auth,name", Files.readAllLines(new File(gk, "known_players.txt").toPath()).get(0));
+        mgr.flush();
+    }
+
+    @Test
+    void worlds_areCachedPerId_andLeastRecentlyUsedIsFlushedOnEviction() throws Exception {
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        Server[] servers = new Server[WhitelistManager.WORLD_CACHE_MAX + 1];
+        for (int i = 0; i < servers.length; i++) {
+            File dir = new File(tempDir, "world" + i);
+            dir.mkdirs();
+            servers[i] = mockServerForWorldPath(dir, 1000L + i);
+        }
+        Server a = servers[0], b = servers[1];
+        mgr.setEnabled(a, true);
+        mgr.addAuth(a, 1L);
+        mgr.setEnabled(b, true);
+        mgr.addAuth(b, 2L);
+
+        // Switching back does not re-read the files: an edit on disk is not picked up
+        mgr.flush();
+        File aConfig = new File(new File(new File(tempDir, "world0"), "GateKeeper"), "whitelist.json");
+        Files.write(aConfig.toPath(), "{\"enabled\": true, \"auth\": [99]}".getBytes("UTF-8"));
+        assertTrue(mgr.isWhitelisted(a, 1L, null));
+        assertFalse(mgr.isWhitelisted(a, 99L, null));
+        assertFalse(mgr.isWhitelisted(a, 2L, null));
+        assertTrue(mgr.isWhitelisted(b, 2L, null));
+        assertFalse(mgr.isWhitelisted(b, 1L, null));
+        Files.write(aConfig.toPath(), "{\"enabled\": true, \"auth\": [1]}".getBytes("UTF-8"));
+
+        // Touch the rest so world0 becomes least recently used, then one more evicts it
+        for (int i = 1; i < servers.length; i++) mgr.addAuth(servers[i], 100L + i);
+        assertEquals(WhitelistManager.WORLD_CACHE_MAX, mgr.loadedWorldCount());
+        mgr.addAuth(b, 3L); // b stays loaded and current
+        // Evicted world0 is reloaded from disk with its journaled state intact
+        mgr.addAuth(a, 4L);
+        assertTrue(mgr.isWhitelisted(a, 1L, null));
+        assertTrue(mgr.isWhitelisted(a, 4L, null));
+        assertTrue(mgr.isWhitelisted(b, 3L, null));
+        mgr.flush();
+        assertEquals(2, new WhitelistManager().countAuths(a));
+        assertEquals(3, new WhitelistManager().countAuths(b));
+    }
+
+    @Test
+    void loadedWorldChecks_doNotTakeTheMonitor() throws Exception {
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        File d1 = new File(tempDir, "w1"), d2 = new File(tempDir, "w2");
+        d1.mkdirs();
+        d2.mkdirs();
+        Server a = mockServerForWorldPath(d1, 1L), b = mockServerForWorldPath(d2, 2L);
+        mgr.addAuth(a, 1L);
+        mgr.addAuth(b, 2L); // b is current
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (mgr) {
+                held.countDown();
+                try { release.await(); } catch (InterruptedException ignore) {}
+            }
+        });
+        holder.start();
+        held.await();
+        ExecutorService ex = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> f = ex.submit(() -> mgr.countAuths(a) + mgr.countAuths(b));
+            assertEquals(2, f.get(2, TimeUnit.SECONDS).intValue());
+        } finally {
+            release.countDown();
+            holder.join();
+            ex.shutdownNow();
+        }
+        mgr.flush();
+    }
+
+    @Test
+    void warmUp_loadsOffThread_andEarlyChecksWaitForIt() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        File gk = new File(tempDir, "GateKeeper");
+        gk.mkdirs();
+        StringBuilder json = new StringBuilder("{\"enabled\": true, \"auth\": [");
+        for (int i = 0; i < 200_000; i++) json.append(i == 0 ? "" : ",").append(WhitelistImport.STEAMID64_MIN + i);
+        Files.write(new File(gk, "whitelist.json").toPath(), json.append("]}").toString().getBytes("UTF-8"));
+
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        java.util.concurrent.CompletableFuture<Void> ready = mgr.warmUp(server);
+        // A check racing the warm-up sees the loaded whitelist, not an empty one
+        assertTrue(mgr.isWhitelisted(server, WhitelistImport.STEAMID64_MIN + 199_999, null));
+        assertFalse(mgr.isWhitelisted(server, 5L, null));
+        ready.get(10, TimeUnit.SECONDS);
+        assertTrue(mgr.warmUp(server).isDone()); // already loaded or loading finished
+
+        // Once warm, checks don't need the monitor even though nothing made the world current
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (mgr) {
+                held.countDown();
+                try { release.await(); } catch (InterruptedException ignore) {}
+            }
+        });
+        holder.start();
+        held.await();
+        ExecutorService ex = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> count = ex.submit(() -> mgr.countAuths(server));
+            assertEquals(200_000, count.get(2, TimeUnit.SECONDS).intValue());
+        } finally {
+            release.countDown();
+            holder.join();
+            ex.shutdownNow();
+        }
+        // Mutations use the warmed state
+        assertTrue(mgr.addAuth(server, 5L));
+        assertEquals(200_001, mgr.countAuths(server));
+        mgr.flush();
+    }
+
+    @Test
+    void binarySnapshot_replacesJson_survivesRestart_andSwitchesBack() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 76561198056903463L);
+        mgr.setBinarySnapshot(server, true);
+        mgr.addAuth(server, 76561198056903464L); // journaled after the switch
+        mgr.flush();
+        File gk = new File(tempDir, "GateKeeper");
+        assertTrue(new File(gk, "whitelist.bin").exists());
+        assertFalse(new File(gk, "whitelist.json").exists());
+
+        WhitelistManager restarted = new WhitelistManager(60_000L);
+        assertTrue(restarted.isBinarySnapshot(server));
+        assertTrue(restarted.isWhitelisted(server, 76561198056903464L, null));
+        assertFalse(restarted.isWhitelisted(server, 5L, null));
+        restarted.addAuth(server, 7L);
+        StringBuilder msg = new StringBuilder();
+        assertTrue(restarted.reload(server, msg));
+        assertTrue(msg.toString().contains("whitelist.bin"));
+        assertEquals(3, restarted.countAuths(server));
+
+        restarted.setBinarySnapshot(server, false);
+        restarted.flush();
+        assertTrue(new File(gk, "whitelist.json").exists());
+        assertFalse(new File(gk, "whitelist.bin").exists());
+        assertEquals(3, new WhitelistManager().countAuths(server));
+    }
+
+    @Test
+    void externalEdit_isHotReloadedAsDelta_andKicksRemovedPlayers() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        ServerClient[] slots = new ServerClient[4];
+        when(server.getSlots()).thenReturn(slots.length);
+        when(server.getClient(anyInt())).thenAnswer(inv -> slots[(Integer) inv.getArgument(0)]);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 1L);
+        mgr.addAuth(server, 2L);
+        mgr.flush(); // our own write must not be treated as an edit
+        mgr.addAuth(server, 3L); // in game, not compacted yet
+        ServerClient two = mock(ServerClient.class);
+        two.slot = 1;
+        two.authentication = 2L;
+        slots[1] = two;
+        mgr.getClientRegistry().onConnected(two);
+        WorldState w = mgr.loadedWorld(server);
+        if (w.watch != null) w.watch.cancel(); // the reload below is driven by hand
+
+        // Another world is current while the edit is applied, and stays current
+        File dirB = new File(tempDir, "other");
+        dirB.mkdirs();
+        Server other = mockServerForWorldPath(dirB, 2L);
+        mgr.addAuth(other, 9L);
+
+        File gk = new File(tempDir, "GateKeeper");
+        Files.write(new File(gk, "whitelist.json").toPath(),
+                "{\"enabled\": true, \"auth\": [1, 4]}".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        mgr.hotReload(w);
+        assertTrue(mgr.isWhitelisted(server, 4L, null));
+        assertFalse(mgr.isWhitelisted(server, 2L, null));
+        assertTrue(mgr.isWhitelisted(server, 1L, null));
+        assertTrue(mgr.isWhitelisted(server, 3L, null)); // the edit didn't know about it, so it stays
+        verify(server).disconnectClient(eq(two), any());
+        assertFalse(mgr.isEnabled()); // still the other world
+        assertTrue(mgr.isEnabled(server));
+
+        // Unchanged file: nothing to apply
+        mgr.hotReload(w);
+        verify(server, times(1)).disconnectClient(eq(two), any());
+
+        mgr.flush();
+        String log = new String(Files.readAllBytes(new File(gk, "admin_log.txt").toPath()), "UTF-8");
+        assertTrue(log.contains(",hot_reload,+1 -1, kicked 1"), log);
+        assertTrue(log.contains(",kick_on_remove,2,"), log);
+        WhitelistManager restarted = new WhitelistManager();
+        assertEquals(Arrays.asList(1L, 3L, 4L), restarted.listAuths(server));
+    }
+
+    @Test
+    void timedEntries_persist_expireWithAKick_andAPlainAddMakesThemPermanent() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        ServerClient[] slots = new ServerClient[4];
+        when(server.getSlots()).thenReturn(slots.length);
+        when(server.getClient(anyInt())).thenAnswer(inv -> slots[(Integer) inv.getArgument(0)]);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        // Deadlines far enough out that the real ticker never reaches them; expiry is driven below
+        long now = System.currentTimeMillis();
+        long week = now + 7 * 86_400_000L;
+        long hour = now + 3_600_000L;
+        assertArrayEquals(new boolean[]{true, true}, mgr.addAuthsUntil(server, new long[]{5L, 6L}, week));
+        assertFalse(mgr.addAuth(server, 6L)); // already there, but no longer timed
+        assertEquals(0L, mgr.getExpiry(server, 6L));
+        mgr.addAuthsUntil(server, new long[]{1L}, hour);
+        assertEquals(week, mgr.getExpiry(server, 5L));
+        assertEquals(2, mgr.countTimed(server));
+        ServerClient one = mock(ServerClient.class);
+        one.slot = 0;
+        one.authentication = 1L;
+        slots[0] = one;
+        mgr.getClientRegistry().onConnected(one);
+
+        // Expiries survive a restart, from the compacted snapshot
+        mgr.flush();
+        File gk = new File(tempDir, "GateKeeper");
+        assertEquals(week, WhitelistManager.readConfig(new File(gk, "whitelist.json")).expires.get(5L));
+        WhitelistManager restarted = new WhitelistManager(60_000L);
+        assertEquals(week, restarted.getExpiry(server, 5L));
+        assertEquals(0L, restarted.getExpiry(server, 6L));
+        assertEquals(hour, restarted.getExpiry(server, 1L));
+
+        WorldState w = mgr.loadedWorld(server);
+        assertEquals(0, mgr.expireDue(w, hour - 1L));
+        assertTrue(mgr.isWhitelisted(server, 1L, null));
+        verify(server, never()).disconnectClient(eq(one), any());
+        assertEquals(1, mgr.expireDue(w, hour));
+        assertFalse(mgr.isWhitelisted(server, 1L, null));
+        assertTrue(mgr.isWhitelisted(server, 5L, null));
+        assertEquals(1, mgr.countTimed(server));
+        verify(server).disconnectClient(eq(one), any());
+        mgr.flush();
+        String log = new String(Files.readAllBytes(new File(gk, "admin_log.txt").toPath()), "UTF-8");
+        assertTrue(log.contains(hour + ",expire,1"), log);
+        assertTrue(log.contains(",kick_on_remove,1,"), log);
+    }
+
+    @Test
+    void timedAdd_ofAPermanentMember_leavesItPermanent() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        assertTrue(mgr.addAuth(server, 7L));
+        long until = System.currentTimeMillis() + 7_200_000L;
+        assertArrayEquals(new boolean[]{false, true}, mgr.addAuthsUntil(server, new long[]{7L, 8L}, until));
+        assertEquals(0L, mgr.getExpiry(server, 7L));
+        assertEquals(until, mgr.getExpiry(server, 8L));
+        assertEquals(1, mgr.countTimed(server));
+
+        // Nothing is journaled for it either: a restart still has it permanent
+        mgr.flush();
+        WhitelistManager restarted = new WhitelistManager(60_000L);
+        assertTrue(restarted.isWhitelisted(server, 7L, null));
+        assertEquals(0L, restarted.getExpiry(server, 7L));
+        assertEquals(until, restarted.getExpiry(server, 8L));
+    }
+
+    @Test
+    void timedEntries_thatRanOutWhileUnloaded_areDroppedAtLoad() throws Exception {
+        File gk = new File(tempDir, "GateKeeper");
+        gk.mkdirs();
+        Files.write(new File(gk, "whitelist.json").toPath(),
+                "{\"enabled\": true, \"auth\": [1, 2], \"expires\": {\"1\": 1000, \"2\": 4102444800000}}"
+                        .getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        assertFalse(mgr.isWhitelisted(server, 1L, null));
+        assertTrue(mgr.isWhitelisted(server, 2L, null));
+        assertEquals(4102444800000L, mgr.getExpiry(server, 2L));
+        mgr.flush();
+        WhitelistConfig cfg = WhitelistManager.readConfig(new File(gk, "whitelist.json"));
+        assertArrayEquals(new long[]{2L}, cfg.auth);
+        assertEquals(Collections.singletonMap(2L, 4102444800000L), cfg.expires);
+    }
+
+    @Test
+    void blockedNetworks_arePerWorld_persisted_andCheckedWithoutTheWhitelist() throws Exception {
+        File dirB = new File(tempDir, "other");
+        dirB.mkdirs();
+        Server server = mockServerForWorldPath(tempDir, 1L), other = mockServerForWorldPath(dirB, 2L);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.addAuth(server, 42L);
+        assertTrue(mgr.blockNetwork(server, "203.0.113.9/24"));
+        assertFalse(mgr.blockNetwork(server, "203.0.113.0/24"));
+        assertTrue(mgr.blockNetwork(server, "2001:db8::/32"));
+        assertThrows(IllegalArgumentException.class, () -> mgr.blockNetwork(server, "203.0.113.0/33"));
+
+        // Whitelisted or not, and whether or not the whitelist is enabled
+        assertTrue(mgr.isBlockedNetwork(server, "/203.0.113.50:14159"));
+        assertFalse(mgr.isBlockedNetwork(server, "/198.51.100.50:14159"));
+        assertFalse(mgr.isBlockedNetwork(server, null));
+        assertFalse(mgr.isBlockedNetwork(other, "/203.0.113.50:14159"));
+        assertEquals(1, mgr.getBlockedNetworks(server).hits(0));
+
+        mgr.flush();
+        File file = new File(new File(tempDir, "GateKeeper"), "blocked_networks.json");
+        assertTrue(new String(Files.readAllBytes(file.toPath()), "UTF-8").contains("\"2001:db8::/32\""));
+        WhitelistManager restarted = new WhitelistManager(60_000L);
+        assertTrue(restarted.isBlockedNetwork(server, "[2001:db8::77]:14159"));
+        assertTrue(restarted.unblockNetwork(server, "2001:db8::/32"));
+        assertFalse(restarted.unblockNetwork(server, "2001:db8::/32"));
+        assertFalse(restarted.isBlockedNetwork(server, "[2001:db8::77]:14159"));
+        restarted.flush();
+        NetBlocklist reloaded = new WhitelistManager().getBlockedNetworks(server);
+        assertEquals(1, reloaded.size());
+        assertEquals("203.0.113.0/24", reloaded.cidr(0));
+    }
+
+    @Test
+    void metrics_countChecksAndSaves_andAreWrittenForPrometheus() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(60_000L);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 42L);
+        for (int i = 0; i < 10; i++) mgr.isWhitelisted(server, 42L + i, null);
+        mgr.recordDeniedAttempt(server, 7L, "raider", "/203.0.113.5:14159");
+        mgr.findAuthByName(server, "raider");
+        mgr.flush();
+        Metrics m = mgr.getMetrics();
+        assertEquals(10, sum(m.isWhitelisted.counts()));
+        assertEquals(1, sum(m.recordDenied.counts()));
+        assertEquals(1, sum(m.nameLookup.counts()));
+        assertTrue(sum(m.save.counts()) >= 1);
+        assertTrue(m.compactions.get() >= 1);
+
+        mgr.writeMetricsFile();
+        File prom = mgr.getMetricsFile(server);
+        assertEquals(new File(new File(tempDir, "GateKeeper"), "gatekeeper.prom"), prom);
+        String text = new String(Files.readAllBytes(prom.toPath()), "UTF-8");
+        assertTrue(text.contains("gatekeeper_is_whitelisted_seconds_count 10\n"), text);
+        assertTrue(text.contains("gatekeeper_whitelist_entries 1\n"), text);
+        assertTrue(text.contains("gatekeeper_whitelist_enabled 1\n"), text);
+    }
+
+    @Test
+    void metricsDisabled_recordNothing_andWriteNoFile() throws Exception {
+        Server server = mockServerForWorldPath(tempDir);
+        WhitelistManager mgr = new WhitelistManager(false);
+        mgr.setEnabled(server, true);
+        mgr.addAuth(server, 42L);
+        assertTrue(mgr.isWhitelisted(server, 42L, null));
+        mgr.flush();
+        assertEquals(0, sum(mgr.getMetrics().isWhitelisted.counts()));
+        assertEquals(0, mgr.getMetrics().compactions.get());
+        assertNull(mgr.getMetricsFile(server));
+    }
+
+    private static long sum(long[] counts) {
+        long n = 0;
+        for (long c : counts) n += c;
+        return n;
+    }
+
+    @Test
+    void sharedDirectory_propagatesChangesBetweenServers_butKeepsFlagsPerWorld() throws Exception {
+        File shared = new File(tempDir, "shared");
+        File dirA = new File(tempDir, "serverA"), dirB = new File(tempDir, "serverB");
+        dirA.mkdirs();
+        dirB.mkdirs();
+        Server a = mockServerForWorldPath(dirA, 1L), b = mockServerForWorldPath(dirB, 2L);
+        WhitelistManager ma = new WhitelistManager(60_000L), mb = new WhitelistManager(60_000L);
+        ma.addAuth(a, 1L);
+        ma.addAuth(a, 2L);
+        mb.addAuth(b, 9L);
+
+        // The first server seeds the empty store; the next adopts it
+        ma.setSharedDirectory(shared);
+        mb.setSharedDirectory(shared);
+        assertEquals(Arrays.asList(1L, 2L), mb.listAuths(b));
+
+        ma.setEnabled(a, true);
+        mb.addAuth(b, 3L);
+        mb.removeAuth(b, 1L);
+        mb.syncSharedNow();
+        ma.syncSharedNow();
+        assertEquals(Arrays.asList(2L, 3L), ma.listAuths(a));
+        assertEquals(4L, ma.getSharedVersion());
+        assertTrue(ma.isWhitelisted(a, 3L, null));
+        assertTrue(mb.isWhitelisted(b, 7L, null)); // b's whitelist is still disabled
+
+        // A server that was down catches up from the store, not its stale local files
+        mb.flush();
+        ma.removeAuth(a, 2L);
+        ma.flush();
+        WhitelistManager restarted = new WhitelistManager(60_000L);
+        restarted.setSharedDirectory(shared);
+        assertEquals(Collections.singletonList(3L), restarted.listAuths(b));
+        restarted.flush();
+        // Its own files were brought in line too
+        assertArrayEquals(new long[]{3L}, WhitelistManager.readConfig(new File(new File(dirB, "GateKeeper"), "whitelist.json")).auth);
+        assertTrue(new String(Files.readAllBytes(new File(new File(dirB, "GateKeeper"), "admin_log.txt").toPath()), "UTF-8")
+                .contains(",shared_attach,+0 -1"));
+    }
+
+    @Test
+    void notifyState_isBoundedAndExpires() throws Exception {
+        WhitelistManager mgr = new WhitelistManager();
+        long t0 = 1_000_000L;
+        for (long auth = 1; auth <= 100_000; auth++) mgr.rememberNotify(auth, t0);
+        assertEquals(WhitelistManager.NOTIFY_STATE_MAX, mgr.notifyStateSize());
+        // Most recent SteamIDs are the ones kept
+        long pastGlobal = t0 + 3_100L;
+        assertFalse(mgr.shouldNotify(100_000L, 60_000L, pastGlobal));
+        assertTrue(mgr.shouldNotify(1L, 60_000L, pastGlobal));
+        // Entries older than the cooldown are pruned
+        assertTrue(mgr.shouldNotify(100_000L, 10L, pastGlobal + 20L));
+        assertEquals(0, mgr.notifyStateSize());
+    }
+
+    @Test
+    void digest_summarizesSuppressedDenials() throws Exception {
+        WhitelistManager mgr = new WhitelistManager();
+        assertNull(mgr.takeDigest());
+        assertTrue(mgr.addToDigest("alpha"));
+        for (int i = 0; i < 10; i++) assertFalse(mgr.addToDigest(i % 2 == 0 ? "alpha" : "beta"));
+        assertFalse(mgr.addToDigest(null));
+        String msg = mgr.takeDigest();
+        assertTrue(msg.contains("12 blocked in last "), msg);
+        assertTrue(msg.contains(": alpha, beta, <unknown> — "), msg);
+        assertNull(mgr.takeDigest());
+
+        // A new window opens, and only a handful of names are kept
+        assertTrue(mgr.addToDigest("p0"));
+        for (int i = 1; i < 1_000; i++) mgr.addToDigest("p" + i);
+        msg = mgr.takeDigest();
+        assertTrue(msg.contains("1000 blocked"), msg);
+        assertTrue(msg.contains("p0, p1, p2, p3, p4… "), msg);
     }
 
     // Online resolution relies on reading final fields in game classes.
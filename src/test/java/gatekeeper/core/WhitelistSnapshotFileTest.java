@@ -0,0 +1,152 @@
+package gatekeeper.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+class WhitelistSnapshotFileTest {
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-snapshot-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        tempDir.delete();
+    }
+
+    private static long[] steamIds(int n, long seed) {
+        LongHashSet set = new LongHashSet(n);
+        Random rnd = new Random(seed);
+        while (set.size() < n) set.add(WhitelistImport.STEAMID64_MIN + (rnd.nextLong() >>> 34));
+        return set.toSortedArray();
+    }
+
+    @Test
+    void roundTrip_keepsIdsAndFlags_andIsCompact() throws Exception {
+        long[] ids = {Long.MIN_VALUE, -1L, 0L, 1L, 76561197960265728L, 76561198056903463L, Long.MAX_VALUE};
+        File f = new File(tempDir, WhitelistSnapshotFile.FILE_NAME);
+        WhitelistSnapshotFile.write(f, true, false, ids);
+        LongHashSet read = new LongHashSet();
+        int flags = WhitelistSnapshotFile.read(f, read);
+        assertEquals(WhitelistSnapshotFile.FLAG_ENABLED, flags);
+        assertArrayEquals(ids, read.toSortedArray());
+
+        // Large enough to be memory-mapped; a dense list takes a few bytes per SteamID
+        long[] many = steamIds(200_000, 7);
+        WhitelistSnapshotFile.write(f, false, true, many);
+        assertTrue(f.length() < many.length * 5L, "got " + f.length() + " bytes");
+        read = new LongHashSet();
+        assertEquals(WhitelistSnapshotFile.FLAG_LOCKDOWN, WhitelistSnapshotFile.read(f, read));
+        assertArrayEquals(many, read.toSortedArray());
+    }
+
+    @Test
+    void expiries_roundTripAfterTheIds_andOnlySetTheirFlag() throws Exception {
+        long[] ids = steamIds(5_000, 11);
+        Map<Long, Long> expiries = new HashMap<>();
+        for (int i = 0; i < ids.length; i += 7) expiries.put(ids[i], 1_767_225_600_000L + i * 60_000L);
+        File f = new File(tempDir, WhitelistSnapshotFile.FILE_NAME);
+        WhitelistSnapshotFile.write(f, true, false, ids, expiries);
+        LongHashSet read = new LongHashSet();
+        Map<Long, Long> readExpiries = new HashMap<>();
+        int flags = WhitelistSnapshotFile.read(f, read, readExpiries);
+        assertEquals(WhitelistSnapshotFile.FLAG_ENABLED | WhitelistSnapshotFile.FLAG_EXPIRIES, flags);
+        assertArrayEquals(ids, read.toSortedArray());
+        assertEquals(expiries, readExpiries);
+        // Readers that don't ask for expiries still get the SteamIDs
+        read = new LongHashSet();
+        WhitelistSnapshotFile.read(f, read);
+        assertEquals(ids.length, read.size());
+    }
+
+    @Test
+    void corruptOrTruncatedFiles_areRejected() throws Exception {
+        File f = new File(tempDir, WhitelistSnapshotFile.FILE_NAME);
+        byte[] good = WhitelistSnapshotFile.encode(true, true, steamIds(1_000, 3));
+
+        byte[] flipped = good.clone();
+        flipped[flipped.length / 2] ^= 0x10;
+        Files.write(f.toPath(), flipped);
+        assertThrows(IOException.class, () -> WhitelistSnapshotFile.read(f, new LongHashSet()));
+
+        Files.write(f.toPath(), java.util.Arrays.copyOf(good, good.length - 3));
+        assertThrows(IOException.class, () -> WhitelistSnapshotFile.read(f, new LongHashSet()));
+
+        Files.write(f.toPath(), "{\"enabled\": true}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> WhitelistSnapshotFile.read(f, new LongHashSet()));
+    }
+
+    @Test
+    void largeList_binaryLoadsTheSameSetAsJson_inAQuarterOfTheBytes() throws Exception {
+        long[] ids = steamIds(500_000, 11);
+        File json = writeJson(ids);
+        File bin = new File(tempDir, WhitelistSnapshotFile.FILE_NAME);
+        WhitelistSnapshotFile.write(bin, true, false, ids);
+
+        WorldState viaJson = new WorldState(1L, null);
+        WhitelistManager.applyConfig(viaJson, WhitelistManager.readConfig(json));
+        WorldState viaBin = new WorldState(1L, null);
+        WhitelistSnapshotFile.read(bin, viaBin.authIds);
+        assertArrayEquals(ids, viaJson.authIds.toSortedArray());
+        assertArrayEquals(ids, viaBin.authIds.toSortedArray());
+        assertTrue(bin.length() * 4 < json.length());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void binaryLoad_vsJson(TestReporter reporter) throws Exception {
+        long[] ids = steamIds(500_000, 11);
+        File json = writeJson(ids);
+        File bin = new File(tempDir, WhitelistSnapshotFile.FILE_NAME);
+        WhitelistSnapshotFile.write(bin, true, false, ids);
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long[] jsonCost = null, binCost = null;
+        for (int round = 0; round < 5; round++) { // the last round is measured, after warm-up
+            long a0 = mx.getThreadAllocatedBytes(tid), t0 = System.nanoTime();
+            WorldState viaJson = new WorldState(1L, null);
+            WhitelistManager.applyConfig(viaJson, WhitelistManager.readConfig(json));
+            long t1 = System.nanoTime(), a1 = mx.getThreadAllocatedBytes(tid);
+            WorldState viaBin = new WorldState(1L, null);
+            WhitelistSnapshotFile.read(bin, viaBin.authIds);
+            long t2 = System.nanoTime(), a2 = mx.getThreadAllocatedBytes(tid);
+            jsonCost = new long[]{(t1 - t0) / 1_000_000, a1 - a0};
+            binCost = new long[]{(t2 - t1) / 1_000_000, a2 - a1};
+        }
+        reporter.publishEntry("steamIds", String.valueOf(ids.length));
+        reporter.publishEntry("jsonKiB", String.valueOf(json.length() / 1024));
+        reporter.publishEntry("jsonMs", String.valueOf(jsonCost[0]));
+        reporter.publishEntry("jsonAllocatedKiB", String.valueOf(jsonCost[1] / 1024));
+        reporter.publishEntry("binaryKiB", String.valueOf(bin.length() / 1024));
+        reporter.publishEntry("binaryMs", String.valueOf(binCost[0]));
+        reporter.publishEntry("binaryAllocatedKiB", String.valueOf(binCost[1] / 1024));
+    }
+
+    private File writeJson(long[] ids) throws IOException {
+        WhitelistConfig cfg = new WhitelistConfig();
+        cfg.enabled = true;
+        cfg.auth = ids;
+        File json = new File(tempDir, "whitelist.json");
+        Files.write(json.toPath(), new GsonBuilder().setPrettyPrinting().create().toJson(cfg).getBytes(StandardCharsets.UTF_8));
+        return json;
+    }
+}
@@ -0,0 +1,152 @@
+package gatekeeper.core.events;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import gatekeeper.core.Metrics;
+import gatekeeper.core.WhitelistManager;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import necesse.engine.commands.PermissionLevel;
+import necesse.engine.events.ServerClientConnectedEvent;
+import necesse.engine.network.server.Server;
+import necesse.engine.network.server.ServerClient;
+import necesse.engine.world.World;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WhitelistConnectionListenerTest {
+    private File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("gk-listener-").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (tempDir != null && tempDir.exists()) deleteRec(tempDir);
+    }
+
+    private static void deleteRec(File f) {
+        if (f.isDirectory()) for (File c : f.listFiles()) deleteRec(c);
+        f.delete();
+    }
+
+    private static Server mockServer(File worldPath, long worldId) throws Exception {
+        World world = mock(World.class, RETURNS_DEEP_STUBS);
+        java.lang.reflect.Field fp = World.class.getDeclaredField("filePath");
+        fp.setAccessible(true);
+        fp.set(world, worldPath);
+        when(world.getUniqueID()).thenReturn(worldId);
+        when(world.getUsedPlayerNames()).thenReturn(new HashMap<>());
+        Server server = mock(Server.class, RETURNS_DEEP_STUBS);
+        server.world = world;
+        return server;
+    }
+
+    private static ServerClient mockClient(Server server, int slot, long auth, String name) {
+        ServerClient c = mock(ServerClient.class);
+        c.slot = slot;
+        c.authentication = auth;
+        when(c.getName()).thenReturn(name);
+        when(c.getPermissionLevel()).thenReturn(PermissionLevel.USER);
+        when(c.getServer()).thenReturn(server);
+        return c;
+    }
+
+    private static ServerClientConnectedEvent connected(ServerClient c) throws Exception {
+        ServerClientConnectedEvent event = mock(ServerClientConnectedEvent.class);
+        java.lang.reflect.Field f = ServerClientConnectedEvent.class.getField("client");
+        f.setAccessible(true);
+        f.set(event, c);
+        return event;
+    }
+
+    @Test
+    void warmedUpWorld_isEnforcedBeforeItBecomesCurrent() throws Exception {
+        Server server = mockServer(tempDir, 1L);
+        WhitelistManager setup = new WhitelistManager();
+        setup.setEnabled(server, true);
+        setup.addAuth(server, 1_000L);
+        setup.flush();
+
+        // Fresh start: the world is loaded by warm-up only, so no world is current yet
+        WhitelistManager mgr = new WhitelistManager();
+        mgr.warmUp(server).get();
+        assertFalse(mgr.isEnabled());
+        assertTrue(mgr.isEnabled(server));
+        assertFalse(mgr.isLockdown(server));
+
+        WhitelistConnectionListener listener = new WhitelistConnectionListener(mgr);
+        try {
+            ServerClient stranger = mockClient(server, 0, 2_000L, "stranger");
+            listener.onEvent(connected(stranger));
+            verify(server).disconnectClient(same(stranger), any());
+            assertEquals(1, mgr.getMetrics().connectsDenied.get());
+
+            ServerClient member = mockClient(server, 1, 1_000L, "member");
+            listener.onEvent(connected(member));
+            verify(server, never()).disconnectClient(same(member), any());
+            assertEquals(1, mgr.getMetrics().connectsAllowed.get());
+        } finally {
+            listener.dispose();
+            mgr.flush();
+        }
+    }
+
+    @Test
+    void listedAdmin_joiningAWarmedUpWorld_hasTheirNameCachedInThatWorld() throws Exception {
+        Server server = mockServer(tempDir, 1L);
+        WhitelistManager setup = new WhitelistManager();
+        setup.setEnabled(server, true);
+        setup.addAuth(server, 1_000L);
+        setup.flush();
+
+        WhitelistManager mgr = new WhitelistManager();
+        mgr.warmUp(server).get();
+        WhitelistConnectionListener listener = new WhitelistConnectionListener(mgr);
+        try {
+            ServerClient admin = mockClient(server, 0, 1_000L, "boss");
+            when(admin.getPermissionLevel()).thenReturn(PermissionLevel.ADMIN);
+            listener.onEvent(connected(admin));
+            assertEquals(1, mgr.getMetrics().connectsPrivileged.get());
+        } finally {
+            listener.dispose();
+            mgr.flush();
+        }
+        assertEquals("boss", new WhitelistManager().getNameByAuth(server, 1_000L));
+    }
+
+    @Test
+    void reconnectStorm_throttledConnectsSkipTheAuditAndNotifyWork() throws Exception {
+        Server server = mockServer(tempDir, 1L);
+        WhitelistManager mgr = new WhitelistManager();
+        mgr.setEnabled(server, true);
+        WhitelistConnectionListener listener = new WhitelistConnectionListener(mgr);
+        try {
+            ServerClient bot = mockClient(server, 0, 2_000L, "bot");
+            int connects = 200;
+            for (int i = 0; i < connects; i++) listener.onEvent(connected(bot));
+
+            Metrics m = mgr.getMetrics();
+            long denied = m.connectsDenied.get();
+            long throttled = m.connectsThrottled.get();
+            // Every connect is kicked; only the bucket's burst goes down the full deny path
+            verify(server, times(connects)).disconnectClient(same(bot), any());
+            assertEquals(connects, denied + throttled);
+            assertTrue(throttled > 0);
+            assertTrue(denied <= 10, "denied " + denied);
+            assertEquals(throttled, mgr.getConnectionThrottle().throttledByAuth());
+            // Throttled connects are neither recorded nor announced
+            assertEquals(denied, mgr.getRecentAttempts().size());
+            assertEquals(denied, mgr.countAuditAttempts(server, 2_000L, 0L));
+            assertEquals(1, m.notifications.get());
+        } finally {
+            listener.dispose();
+            mgr.flush();
+        }
+    }
+}